@@ -0,0 +1,77 @@
+package pl.put.poznan.transformer.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Porównanie wyników JMH (format JSON) z wynikami wzorcowymi.
+ * <p>
+ * Wyniki są parowane po nazwie benchmarku, trybie i parametrach. Wynik jest regresją, jeśli jest gorszy od wzorca
+ * o więcej niż dopuszczalny próg, także po uwzględnieniu błędu pomiaru obu wyników: dla przepustowości gorszy
+ * znaczy mniejszy, dla czasu operacji - większy. Benchmarki bez odpowiednika we wzorcu są pomijane.
+ * </p>
+ */
+public final class BaselineComparison {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BaselineComparison() {
+    }
+
+    /**
+     * Porównuje wyniki z wzorcem.
+     *
+     * @param baseline Plik z wynikami wzorcowymi.
+     * @param current Plik z bieżącymi wynikami.
+     * @param threshold Dopuszczalne względne pogorszenie (np. {@code 0.10} dla 10%).
+     * @return Opisy regresji; pusta lista, jeśli ich nie ma.
+     * @throws IOException Jeśli nie udało się odczytać plików.
+     */
+    public static List<String> compare(File baseline, File current, double threshold) throws IOException {
+        Map<String, JsonNode> baselineScores = scores(baseline);
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : scores(current).entrySet()) {
+            JsonNode expected = baselineScores.get(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            JsonNode actual = entry.getValue();
+            double expectedScore = expected.path("score").asDouble();
+            double actualScore = actual.path("score").asDouble();
+            double error = error(expected) + error(actual);
+            boolean higherIsBetter = entry.getKey().contains("[thrpt]");
+            boolean regression = higherIsBetter
+                    ? actualScore + error < expectedScore * (1 - threshold)
+                    : actualScore - error > expectedScore * (1 + threshold);
+            if (regression) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s", entry.getKey(), expectedScore, actualScore,
+                        actual.path("scoreUnit").asText()));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Odczytuje główne metryki z pliku wyników, indeksowane nazwą benchmarku, trybem i parametrami.
+     */
+    private static Map<String, JsonNode> scores(File file) throws IOException {
+        Map<String, JsonNode> scores = new HashMap<>();
+        for (JsonNode result : objectMapper.readTree(file)) {
+            String key = result.path("benchmark").asText() + " [" + result.path("mode").asText() + "] "
+                    + result.path("params");
+            scores.put(key, result.path("primaryMetric"));
+        }
+        return scores;
+    }
+
+    private static double error(JsonNode metric) {
+        double error = metric.path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
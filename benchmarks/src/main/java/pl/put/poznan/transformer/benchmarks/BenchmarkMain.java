@@ -0,0 +1,67 @@
+package pl.put.poznan.transformer.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Uruchamia benchmarki i porównuje wyniki z zapisanym wzorcem.
+ * <p>
+ * Argumenty wiersza poleceń są przekazywane do JMH (np. {@code -p corpus=SMALL,MEDIUM}, {@code -wi 1}).
+ * Domyślnie włączany jest profiler {@code gc}, a wyniki są zapisywane w formacie JSON do pliku
+ * {@code jmh-result.json} (lub wskazanego przez {@code -rff}). Właściwości systemowe:
+ * </p>
+ * <ul>
+ *     <li>{@code -Dbaseline=plik.json} - porównuje wyniki z wzorcem i kończy działanie kodem 1 przy regresji,</li>
+ *     <li>{@code -Dthreshold=0.10} - dopuszczalne pogorszenie wyniku względem wzorca (domyślnie 10%).</li>
+ * </ul>
+ * <p>
+ * Wzorzec to po prostu plik wyników z wcześniejszego uruchomienia na tej samej maszynie.
+ * </p>
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Główna metoda.
+     *
+     * @param args Argumenty JMH.
+     * @throws Exception Jeśli uruchomienie benchmarków lub odczyt wyników się nie powiedzie.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(ProcessorBenchmark.class.getSimpleName());
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (commandLine.getResultFormat().hasValue() || commandLine.getResult().hasValue()) {
+            options.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON));
+        } else {
+            options.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+        }
+        String result = commandLine.getResult().orElse("jmh-result.json");
+        new Runner(options.build()).run();
+
+        String baseline = System.getProperty("baseline");
+        if (baseline != null) {
+            double threshold = Double.parseDouble(System.getProperty("threshold", "0.10"));
+            List<String> regressions = BaselineComparison.compare(new File(baseline), new File(result), threshold);
+            if (!regressions.isEmpty()) {
+                System.out.println("Regresje względem wzorca " + baseline + ":");
+                regressions.forEach(regression -> System.out.println("  " + regression));
+                System.exit(1);
+            }
+            System.out.println("Brak regresji względem wzorca " + baseline);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package pl.put.poznan.transformer.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generowane dokumenty JSON, na których mierzone są procesory.
+ * <p>
+ * Dokumenty są generowane deterministycznie (stałe ziarno), więc wyniki kolejnych uruchomień są porównywalne.
+ * Wariant dokumentu ({@code variant = true}) różni się od podstawowego jedną wartością w środku dokumentu
+ * i służy jako wzorzec dla porównań.
+ * </p>
+ */
+public enum Corpus {
+    /**
+     * Pojedynczy rekord (ok. 300 B).
+     */
+    SMALL {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            record(json, 0, new Random(SEED), variant);
+        }
+    },
+    /**
+     * Tablica rekordów o rozmiarze ok. 100 kB.
+     */
+    MEDIUM {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            records(json, 100 * 1024, variant);
+        }
+    },
+    /**
+     * Tablica rekordów o rozmiarze ok. 100 MB.
+     */
+    LARGE {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            records(json, 100 * 1024 * 1024, variant);
+        }
+    },
+    /**
+     * Obiekty zagnieżdżone na głębokość 1000 poziomów.
+     */
+    DEEP {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            int depth = 1000;
+            for (int i = 0; i < depth; i++) {
+                json.append("{\"level\":").append(variant && i == depth / 2 ? -i : i).append(",\"name\":\"node-")
+                        .append(i).append("\",\"child\":");
+            }
+            json.append("null");
+            json.append("}".repeat(depth));
+        }
+    },
+    /**
+     * Jeden obiekt z 50 000 pól.
+     */
+    WIDE {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            int fields = 50_000;
+            json.append('{');
+            for (int i = 0; i < fields; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("\"field-").append(i).append("\":").append(variant && i == fields / 2 ? -i : i);
+            }
+            json.append('}');
+        }
+    },
+    /**
+     * Tablica 2 000 000 liczb.
+     */
+    ARRAY {
+        @Override
+        void write(StringBuilder json, boolean variant) {
+            int elements = 2_000_000;
+            json.append('[');
+            for (int i = 0; i < elements; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(variant && i == elements / 2 ? -i : i);
+            }
+            json.append(']');
+        }
+    };
+
+    private static final long SEED = 42;
+    private static final String[] CITIES = {"Poznań", "Warszawa", "Kraków", "Gdańsk", "Wrocław"};
+
+    /**
+     * Generuje dokument.
+     *
+     * @param variant Czy wygenerować wariant różniący się jedną wartością.
+     * @return Dokument JSON.
+     */
+    public String generate(boolean variant) {
+        StringBuilder json = new StringBuilder();
+        write(json, variant);
+        return json.toString();
+    }
+
+    abstract void write(StringBuilder json, boolean variant);
+
+    private static void records(StringBuilder json, int size, boolean variant) {
+        Random random = new Random(SEED);
+        json.append('[');
+        int count = 0;
+        while (json.length() < size) {
+            if (count > 0) {
+                json.append(',');
+            }
+            record(json, count++, random, false);
+        }
+        json.append(']');
+        if (variant) {
+            int middle = json.indexOf("\"id\":" + count / 2 + ",");
+            json.replace(middle, middle + 5, "\"id\":-");
+        }
+    }
+
+    private static void record(StringBuilder json, int id, Random random, boolean variant) {
+        json.append("{\"id\":").append(id)
+                .append(",\"name\":\"user-").append(id)
+                .append("\",\"email\":\"user-").append(id).append(variant ? "@example.org" : "@example.com")
+                .append("\",\"active\":").append(random.nextBoolean())
+                .append(",\"score\":").append(random.nextInt(100_000) / 100.0)
+                .append(",\"tags\":[\"tag-").append(random.nextInt(10)).append("\",\"tag-").append(random.nextInt(10))
+                .append("\"],\"address\":{\"city\":\"").append(CITIES[random.nextInt(CITIES.length)])
+                .append("\",\"zip\":\"").append(10_000 + random.nextInt(90_000))
+                .append("\"}}");
+    }
+}
@@ -0,0 +1,89 @@
+package pl.put.poznan.transformer.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.put.poznan.transformer.logic.BaseJsonProcessor;
+import pl.put.poznan.transformer.logic.Compare;
+import pl.put.poznan.transformer.logic.FilterExclude;
+import pl.put.poznan.transformer.logic.FilterInclude;
+import pl.put.poznan.transformer.logic.JsonProcessor;
+import pl.put.poznan.transformer.logic.Minify;
+import pl.put.poznan.transformer.logic.Prettify;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+
+/**
+ * Benchmarki procesorów JSON na generowanych dokumentach ({@link Corpus}).
+ * <p>
+ * Mierzona jest przepustowość (operacje na sekundę) oraz rozkład czasu pojedynczej operacji (percentyle w trybie
+ * {@link Mode#SampleTime}). Tempo alokacji podaje profiler {@code gc}, włączany domyślnie przez
+ * {@link BenchmarkMain}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ProcessorBenchmark {
+    /**
+     * Właściwości zachowywane przez {@link FilterInclude}; pasują do rekordów, obiektów zagnieżdżonych i szerokich.
+     */
+    static final String[] INCLUDE = {"[*].name", "[*].address.city", "name", "child.level", "field-1"};
+    /**
+     * Właściwości usuwane przez {@link FilterExclude}.
+     */
+    static final String[] EXCLUDE = {"**.email", "[*].tags", "field-2"};
+
+    @Param({"SMALL", "MEDIUM", "LARGE", "DEEP", "WIDE", "ARRAY"})
+    public Corpus corpus;
+
+    @Param({"minify", "prettify", "include", "exclude", "compare"})
+    public String processor;
+
+    private String json;
+    private JsonProcessor jsonProcessor;
+
+    /**
+     * Generuje dokument i tworzy procesor (poza pomiarem).
+     *
+     * @throws JsonProcessingException Jeśli wygenerowany dokument jest nieprawidłowy.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        json = corpus.generate(false);
+        jsonProcessor = switch (processor) {
+            case "minify" -> new Minify(new BaseJsonProcessor());
+            case "prettify" -> new Prettify(new BaseJsonProcessor());
+            case "include" -> new FilterInclude(new BaseJsonProcessor(), INCLUDE);
+            case "exclude" -> new FilterExclude(new BaseJsonProcessor(), EXCLUDE);
+            case "compare" -> new Compare(jsonReader.readTree(corpus.generate(true)))::process;
+            default -> throw new IllegalArgumentException("Nieznany procesor: " + processor);
+        };
+    }
+
+    /**
+     * Przetwarza dokument w formie tekstowej, tak jak robią to endpointy kontrolera.
+     *
+     * @return Wynik przetwarzania (zwracany, aby JIT nie usunął obliczeń).
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    @Benchmark
+    public String process() throws JsonProcessingException {
+        return jsonProcessor.process(json);
+    }
+}
@@ -1,7 +1,16 @@
 package pl.put.poznan.transformer.app;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Główna klasa aplikacji JSON Transformer.
@@ -15,17 +24,63 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  */
 @SpringBootApplication(scanBasePackages = {"pl.put.poznan.transformer.rest"})
 public class JsonTransformerApplication {
-    
+    private static final Logger logger = LoggerFactory.getLogger(JsonTransformerApplication.class);
+
+    /**
+     * Włącza obsługę żądań w wątkach wirtualnych (jeden wątek na żądanie) zamiast w puli wątków Tomcata.
+     * <p>
+     * Tryb jest włączany właściwością {@code transformer.virtual-threads=true} i wymaga uruchomienia na Javie 21
+     * lub nowszej; fabryka wykonawcy jest wyszukiwana w czasie działania, więc aplikacja kompiluje się i działa
+     * także na starszych wersjach (wtedy zostaje domyślna pula wątków). Liczbę jednocześnie przetwarzanych danych
+     * ogranicza wtedy {@code AdmissionControlFilter}, a nie rozmiar puli.
+     * </p>
+     *
+     * @param enabled Czy używać wątków wirtualnych.
+     * @return Konfiguracja wykonawcy żądań Tomcata.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor(@Value("${transformer.virtual-threads:false}") boolean enabled) {
+        return protocolHandler -> {
+            if (!enabled) {
+                return;
+            }
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor == null) {
+                logger.warn("Wątki wirtualne wymagają Javy 21 lub nowszej - używana jest domyślna pula wątków");
+                return;
+            }
+            protocolHandler.setExecutor(executor);
+            logger.info("Żądania są obsługiwane w wątkach wirtualnych");
+        };
+    }
+
+    /**
+     * Tworzy wykonawcę uruchamiającego każde zadanie w nowym wątku wirtualnym.
+     *
+     * @return Wykonawca lub {@code null}, jeśli środowisko uruchomieniowe nie obsługuje wątków wirtualnych.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
 
     /**
      * Główna metoda aplikacji.
      * <p>
-     * Inicjalizuje kontekst Spring Boot i uruchamia aplikację.
+     * Inicjalizuje kontekst Spring Boot i uruchamia aplikację. Jeśli pierwszym argumentem jest {@code batch},
+     * zamiast serwera uruchamiane jest przetwarzanie wsadowe plików ({@link JsonTransformerBatch}).
      * </p>
      *
      * @param args Argumenty wiersza poleceń przekazywane do aplikacji.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("batch")) {
+            JsonTransformerBatch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SpringApplication.run(JsonTransformerApplication.class, args);
     }
 }
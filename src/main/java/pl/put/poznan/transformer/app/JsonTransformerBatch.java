@@ -0,0 +1,289 @@
+package pl.put.poznan.transformer.app;
+
+import pl.put.poznan.transformer.logic.JsonLines;
+import pl.put.poznan.transformer.logic.JsonPipeline;
+import pl.put.poznan.transformer.logic.JsonProcessor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Wsadowe przetwarzanie plików JSON z dysku lokalnego, bez serwera HTTP.
+ * <p>
+ * Uruchamiane przez {@code java -jar aplikacja.jar batch [--threads N] <wejście> <wyjście> <operacja>...}.
+ * Wejście to plik albo katalog - wtedy przetwarzane są wszystkie pliki {@code *.json} i {@code *.ndjson}
+ * w nim i w podkatalogach, a wyniki są zapisywane w katalogu wyjściowym pod tymi samymi ścieżkami względnymi.
+ * Operacje są wykonywane w podanej kolejności: {@code minify}, {@code prettify} (opcjonalnie z opcjami
+ * formatowania, np. {@code prettify=indent=tab,sortKeys}), {@code include=a,b.c}, {@code exclude=a,**.d}
+ * (jak w {@link JsonPipeline}).
+ * </p>
+ * <p>
+ * Pliki są czytane przez odwzorowanie w pamięci ({@link FileChannel#map}) w oknach po {@value #WINDOW_SIZE}
+ * bajtów, więc odczyt nie kopiuje danych przez bufory strumieni, a wynik jest zapisywany bezpośrednio do kanału
+ * pliku wyjściowego. Każdy plik jest przetwarzany strumieniowo (NDJSON - rekord po rekordzie), a pliki są
+ * przetwarzane równolegle. Na końcu wypisywane jest podsumowanie z przepustowością; kod wyjścia {@code 1}
+ * oznacza, że co najmniej jednego pliku nie udało się przetworzyć (jego niekompletny wynik jest usuwany).
+ * </p>
+ */
+public final class JsonTransformerBatch {
+    /**
+     * Rozmiar okna odwzorowania pliku w pamięci (pliki większe są odwzorowywane kolejnymi oknami).
+     */
+    static final long WINDOW_SIZE = 1L << 30;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Wynik przetworzenia jednego pliku.
+     *
+     * @param input Plik wejściowy.
+     * @param inputBytes Rozmiar pliku wejściowego.
+     * @param outputBytes Rozmiar pliku wynikowego.
+     * @param error Opis błędu lub {@code null}, jeśli plik został przetworzony.
+     */
+    record FileResult(Path input, long inputBytes, long outputBytes, String error) {
+    }
+
+    private JsonTransformerBatch() {
+    }
+
+    /**
+     * Uruchamia przetwarzanie wsadowe.
+     *
+     * @param args Argumenty wiersza poleceń (bez słowa {@code batch}).
+     */
+    public static void main(String[] args) {
+        System.exit(run(System.out, args));
+    }
+
+    /**
+     * Przetwarza pliki zgodnie z argumentami i wypisuje podsumowanie.
+     *
+     * @param out Strumień, do którego wypisywane są błędy i podsumowanie.
+     * @param args Argumenty wiersza poleceń (bez słowa {@code batch}).
+     * @return Kod wyjścia: {@code 0} - sukces, {@code 1} - błędy przetwarzania plików, {@code 2} - błędne argumenty.
+     */
+    public static int run(PrintStream out, String... args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> positional = new ArrayList<>(Arrays.asList(args));
+        if (positional.size() >= 2 && positional.get(0).equals("--threads")) {
+            try {
+                threads = Integer.parseInt(positional.get(1));
+            } catch (NumberFormatException e) {
+                threads = 0;
+            }
+            positional = positional.subList(2, positional.size());
+        }
+        if (positional.size() < 3 || threads < 1) {
+            out.println("Użycie: batch [--threads N] <wejście> <wyjście> <operacja>...");
+            out.println("Operacje: minify, prettify[=opcja,...], include=właściwość,..., exclude=właściwość,...");
+            return 2;
+        }
+        Path input = Path.of(positional.get(0));
+        Path output = Path.of(positional.get(1));
+        JsonProcessor processor;
+        try {
+            processor = JsonPipeline.compile(positional.subList(2, positional.size()).stream()
+                    .map(JsonTransformerBatch::step)
+                    .collect(Collectors.toList()));
+        } catch (IllegalArgumentException e) {
+            out.println("Nieprawidłowa operacja: " + e.getMessage());
+            return 2;
+        }
+
+        long start = System.nanoTime();
+        List<FileResult> results;
+        try {
+            results = process(processor, input, output, threads);
+        } catch (IOException e) {
+            out.println("Nie udało się odczytać wejścia: " + e.getMessage());
+            return 2;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long inputBytes = 0;
+        long outputBytes = 0;
+        long errors = 0;
+        for (FileResult result : results) {
+            inputBytes += result.inputBytes();
+            outputBytes += result.outputBytes();
+            if (result.error() != null) {
+                errors++;
+                out.println("Błąd: " + result.input() + ": " + result.error());
+            }
+        }
+        out.printf("Przetworzono %d plików (błędy: %d), %.1f MB -> %.1f MB w %.2f s (%.1f MB/s)%n",
+                results.size(), errors, inputBytes / 1e6, outputBytes / 1e6, seconds,
+                seconds > 0 ? inputBytes / 1e6 / seconds : 0);
+        return errors > 0 ? 1 : 0;
+    }
+
+    /**
+     * Zamienia argument operacji ({@code nazwa} lub {@code nazwa=właściwość,...}) na krok potoku.
+     */
+    private static JsonPipeline.Step step(String operation) {
+        int separator = operation.indexOf('=');
+        if (separator < 0) {
+            return new JsonPipeline.Step(operation, null);
+        }
+        return new JsonPipeline.Step(operation.substring(0, separator),
+                List.of(operation.substring(separator + 1).split(",")));
+    }
+
+    /**
+     * Przetwarza plik lub wszystkie pliki JSON w katalogu, równolegle.
+     *
+     * @param processor Procesor JSON (bezpieczny wątkowo).
+     * @param input Plik lub katalog wejściowy.
+     * @param output Plik lub katalog wyjściowy (dla pojedynczego pliku może to być istniejący katalog).
+     * @param threads Liczba wątków.
+     * @return Wyniki dla wszystkich plików, w kolejności ścieżek.
+     * @throws IOException Jeśli nie udało się odczytać zawartości katalogu wejściowego.
+     */
+    static List<FileResult> process(JsonProcessor processor, Path input, Path output, int threads) throws IOException {
+        List<Path[]> files = new ArrayList<>();
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> paths = Files.walk(input)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> path.toString().endsWith(".json") || path.toString().endsWith(".ndjson"))
+                        .sorted()
+                        .forEach(path -> files.add(new Path[]{path, output.resolve(input.relativize(path).toString())}));
+            }
+        } else {
+            files.add(new Path[]{input, Files.isDirectory(output) ? output.resolve(input.getFileName().toString()) : output});
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>();
+            for (Path[] file : files) {
+                futures.add(executor.submit(() -> processFile(processor, file[0], file[1])));
+            }
+            List<FileResult> results = new ArrayList<>();
+            for (Future<FileResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Przerwano przetwarzanie", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Przetwarza jeden plik: odczyt przez odwzorowanie w pamięci, zapis przez kanał pliku wyjściowego.
+     * <p>Błędy przetwarzania są zwracane w wyniku, a niekompletny plik wynikowy jest usuwany.</p>
+     */
+    private static FileResult processFile(JsonProcessor processor, Path input, Path output) {
+        long inputBytes = 0;
+        try {
+            if (Files.exists(output) && Files.isSameFile(input, output)) {
+                return new FileResult(input, Files.size(input), 0, "plik wynikowy jest plikiem wejściowym");
+            }
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            try (FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ);
+                 FileChannel outputChannel = FileChannel.open(output, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                inputBytes = inputChannel.size();
+                InputStream in = new MappedInputStream(inputChannel);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(outputChannel), BUFFER_SIZE);
+                if (input.toString().endsWith(".ndjson")) {
+                    JsonLines.process(processor, in, out, "Nieprawidłowy format JSON");
+                } else {
+                    processor.process(in, out);
+                }
+                out.flush();
+                return new FileResult(input, inputBytes, outputChannel.size(), null);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(output);
+            } catch (IOException ignored) {
+                // niekompletny wynik zostaje na dysku; błąd pliku wejściowego jest ważniejszy
+            }
+            return new FileResult(input, inputBytes, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Strumień czytający plik przez kolejne okna odwzorowane w pamięci.
+     */
+    static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private ByteBuffer window;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureWindow()) {
+                return -1;
+            }
+            position++;
+            return window.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!ensureWindow()) {
+                return -1;
+            }
+            int n = Math.min(length, window.remaining());
+            window.get(buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return window == null ? 0 : window.remaining();
+        }
+
+        /**
+         * Odwzorowuje kolejne okno pliku, jeśli bieżące zostało przeczytane.
+         *
+         * @return {@code false}, jeśli osiągnięto koniec pliku.
+         */
+        private boolean ensureWindow() throws IOException {
+            if (window != null && window.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            return true;
+        }
+    }
+}
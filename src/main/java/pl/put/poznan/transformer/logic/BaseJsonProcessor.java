@@ -1,18 +1,59 @@
 package pl.put.poznan.transformer.logic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Podstawowa implementacja procesora JSON.
  * <p>
- * Klasa ta implementuje interfejs {@link JsonProcessor} i zapewnia podstawową funkcjonalność przetwarzania JSON-ów.
+ * Klasa ta implementuje interfejs {@link JsonTreeProcessor} i zapewnia podstawową funkcjonalność przetwarzania JSON-ów.
  * W tej wersji metoda {@link #process(String)} zwraca po prostu przekazany JSON w formie tekstowej, bez żadnych modyfikacji.
- * Jest to baza, z której mogą być dziedziczone bardziej zaawansowane klasy procesorów JSON, np. {@link Compare}.
+ * Jest to baza, z której mogą być dziedziczone bardziej zaawansowane klasy procesorów JSON, np. {@link JsonProcessorDecorator}.
  * </p>
  */
-public class BaseJsonProcessor implements JsonProcessor {
-    public static final ObjectMapper objectMapper = new ObjectMapper();
+public class BaseJsonProcessor implements JsonTreeProcessor {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * Wspólny obiekt czytający drzewa JSON (niezmienny, bezpieczny wątkowo).
+     */
+    public static final ObjectReader jsonReader = objectMapper.reader();
+    /**
+     * Wspólny obiekt zapisujący JSON w postaci zwartej (niezmienny, bezpieczny wątkowo).
+     */
+    public static final ObjectWriter jsonWriter = objectMapper.writer();
+    /**
+     * Wspólny obiekt zapisujący JSON z wcięciami i nowymi liniami (niezmienny, bezpieczny wątkowo).
+     */
+    public static final ObjectWriter prettyJsonWriter = objectMapper.writerWithDefaultPrettyPrinter();
+    private static volatile ProcessingObserver observer = ProcessingObserver.NONE;
+
+    /**
+     * Rejestruje obserwatora etapów przetwarzania, wspólnego dla wszystkich procesorów.
+     *
+     * @param observer Obserwator; {@code null} przywraca {@link ProcessingObserver#NONE}.
+     */
+    public static void setObserver(ProcessingObserver observer) {
+        BaseJsonProcessor.observer = observer != null ? observer : ProcessingObserver.NONE;
+    }
+
+    /**
+     * Zwraca zarejestrowanego obserwatora etapów przetwarzania.
+     *
+     * @return Bieżący obserwator (nigdy {@code null}).
+     */
+    protected static ProcessingObserver observer() {
+        return observer;
+    }
+
     /**
      * Procesuje dany JSON w formie tekstowej.
      *
@@ -27,4 +68,81 @@ public class BaseJsonProcessor implements JsonProcessor {
     public String process(String json) throws JsonProcessingException {
         return json;
     }
+
+    /**
+     * Zwraca przekazane drzewo JSON bez zmian.
+     *
+     * @param json Drzewo JSON, które ma zostać przetworzone.
+     * @return To samo drzewo JSON.
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    @Override
+    public JsonNode process(JsonNode json) throws JsonProcessingException {
+        return json;
+    }
+
+    /**
+     * Zwraca parser wejściowy bez zmian - tokeny dokumentu nie są modyfikowane.
+     *
+     * @param parser Parser dokumentu wejściowego.
+     * @return Ten sam parser.
+     */
+    @Override
+    public JsonParser process(JsonParser parser) throws IOException {
+        return parser;
+    }
+
+    /**
+     * Przepisuje strumień wejściowy do wyjściowego bez parsowania.
+     *
+     * @param input Strumień z JSON-em wejściowym.
+     * @param output Strumień wyjściowy.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia.
+     */
+    @Override
+    public void process(InputStream input, OutputStream output) throws IOException {
+        input.transferTo(output);
+    }
+
+    /**
+     * Tworzy parser strumieniowy dla danego wejścia, który nie zamyka strumienia po zakończeniu.
+     *
+     * @param input Strumień z JSON-em (UTF-8).
+     * @return Nowy parser ustawiony przed pierwszym tokenem.
+     * @throws IOException Jeśli nie udało się utworzyć parsera.
+     */
+    protected static JsonParser createParser(InputStream input) throws IOException {
+        return objectMapper.getFactory().createParser(input).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    /**
+     * Tworzy generator strumieniowy dla danego wyjścia, który nie zamyka strumienia po zakończeniu.
+     * <p>Generator nie domyka niekompletnej struktury przy zamknięciu i nie wywołuje {@code flush()} na strumieniu,
+     * dzięki czemu po błędzie w trakcie przetwarzania wywołujący może jeszcze wycofać niezatwierdzoną odpowiedź.</p>
+     *
+     * @param output Strumień wyjściowy.
+     * @return Nowy generator zapisujący JSON w kodowaniu UTF-8.
+     * @throws IOException Jeśli nie udało się utworzyć generatora.
+     */
+    protected static JsonGenerator createGenerator(OutputStream output) throws IOException {
+        return objectMapper.getFactory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    /**
+     * Kopiuje wszystkie tokeny z parsera do generatora, token po tokenie.
+     * <p>Zużycie pamięci nie zależy od rozmiaru dokumentu - w danej chwili przetwarzany jest tylko jeden token.</p>
+     *
+     * @param parser Źródło tokenów.
+     * @param generator Cel, do którego tokeny są zapisywane.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub zapisu.
+     */
+    protected static void copyTokens(JsonParser parser, JsonGenerator generator) throws IOException {
+        while (parser.nextToken() != null) {
+            generator.copyCurrentEvent(parser);
+        }
+        generator.flush();
+    }
 }
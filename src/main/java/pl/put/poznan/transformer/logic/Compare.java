@@ -1,19 +1,31 @@
 package pl.put.poznan.transformer.logic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 
-import java.util.Iterator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
 
 /**
- * Dekorator do porównywania dwóch JSON-ów.
+ * Porównanie dwóch JSON-ów.
  * <p>
  * Klasa ta umożliwia porównanie dwóch obiektów JSON i wypisanie różnic pomiędzy nimi.
- * Jej działanie opiera się na rekursywnym porównaniu struktury obiektów JSON, zarówno na poziomie
- * pól, jak i wartości.
+ * Jej działanie opiera się na strukturalnym porównaniu dokumentów ({@link JsonDiff}), zarówno na poziomie
+ * pól obiektów, jak i elementów tablic. Różnice mogą być zwrócone jako raport tekstowy lub jako JSON Patch.
+ * Bardzo duże dokumenty można porównać bez budowania drzew, zapisując je na taśmach {@link JsonTape}
+ * ({@link #report(JsonTape, JsonTape)}, {@link #patch(JsonTape, JsonTape, OutputStream)}).
  * </p>
+ * <p>Wynikiem porównania nie jest dokument JSON, więc klasa nie jest procesorem ({@link JsonProcessor}) i nie może
+ * być owijana dekoratorami ani łączona w potok.</p>
  */
-public class Compare extends BaseJsonProcessor {
+public class Compare {
     private final JsonNode json2;
     /**
      * Konstruktor klasy Compare.
@@ -34,42 +46,128 @@ public class Compare extends BaseJsonProcessor {
      * @return Różnice między JSON-ami w formacie tekstowym, lub komunikat "Brak różnic." w przypadku braku różnic.
      * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-ów.
      */
-    @Override
     public String process(String json1) throws JsonProcessingException {
-        String json2String = objectMapper.writeValueAsString(json2);
-
-        JsonNode tree1 = objectMapper.readTree(json1);
-        JsonNode tree2 = objectMapper.readTree(json2String);
-
-        StringBuilder differences = new StringBuilder();
-        compareNodes(tree1, tree2, differences, "");
-        return !differences.isEmpty() ? differences.toString() : "Brak różnic.";
+        return report(jsonReader.readTree(json1));
+    }
+    /**
+     * Porównuje sparsowany JSON z JSON-em {@code json2} i zwraca raport różnic.
+     *
+     * @param json1 Pierwszy JSON do porównania (w formie drzewa).
+     * @return Różnice między JSON-ami w formacie tekstowym, lub komunikat "Brak różnic." w przypadku braku różnic.
+     */
+    public String report(JsonNode json1) {
+        return report(JsonDiff.diff(json1, json2));
+    }
+    /**
+     * Zwraca raport tekstowy dla wyznaczonych już różnic (np. z porównania z {@link ReferenceStore}).
+     *
+     * <p>Dla każdej różnicy raport zawiera jej ścieżkę, wartość oczekiwaną (z pierwszego dokumentu) i właściwą
+     * (z drugiego). Brakująca wartość jest opisywana jako "brak".</p>
+     *
+     * @param differences Lista różnic zwrócona przez {@link JsonDiff}.
+     * @return Raport różnic lub komunikat "Brak różnic." w przypadku braku różnic.
+     */
+    public static String report(List<JsonDiff.Difference> differences) {
+        StringBuilder report = new StringBuilder();
+        for (JsonDiff.Difference difference : differences) {
+            report.append("Różnica w: ").append(difference.path())
+                    .append("\nOczekiwane: ").append(describe(difference.oldValue()))
+                    .append("\nWłaściwe: ").append(describe(difference.newValue())).append("\n\n");
+        }
+        return !report.isEmpty() ? report.toString() : "Brak różnic.";
+    }
+    /**
+     * Porównuje JSON odczytany ze strumienia z JSON-em {@code json2} i zapisuje raport różnic do strumienia wyjściowego.
+     *
+     * @param input Strumień z pierwszym JSON-em (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany raport (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub przetwarzania JSON-ów.
+     */
+    public void process(InputStream input, OutputStream output) throws IOException {
+        String result = process(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        output.write(result.getBytes(StandardCharsets.UTF_8));
     }
     /**
-     * Rekursywnie porównuje dwa obiekty JSON i zapisuje różnice.
+     * Wyznacza różnice między JSON-em {@code json1} a {@code json2} w formacie JSON Patch (RFC 6902).
      *
-     * <p>Ta metoda sprawdza, czy dwa węzły JSON są różne. Jeśli są to obiekty, metoda iteruje po ich polach
-     * i porównuje je rekurencyjnie. W przypadku znalezienia różnicy, zapisuje szczegóły w obiekcie
-     * StringBuilder. W przeciwnym razie przechodzi do porównania kolejnych poziomów struktury JSON.</p>
+     * @param json1 Pierwszy JSON do porównania.
+     * @return Tablica operacji JSON Patch przekształcających {@code json1} w {@code json2}.
+     */
+    public JsonNode patch(JsonNode json1) {
+        return JsonDiff.toPatch(JsonDiff.diff(json1, json2));
+    }
+    /**
+     * Porównuje dwa dokumenty zapisane na taśmach ({@link JsonTape}) i zwraca raport różnic w tej samej postaci
+     * co {@link #report(JsonNode)}. Dokumenty nie są zamieniane na drzewa - porównanie wykonuje {@link JsonTapeDiff},
+     * a do raportu kopiowane są z taśm tylko różniące się wartości.
      *
-     * @param node1 Pierwszy węzeł JSON do porównania.
-     * @param node2 Drugi węzeł JSON do porównania.
-     * @param differences StringBuilder, który zbiera różnice między JSON-ami.
-     * @param path Ścieżka, która wskazuje, które pole w strukturze JSON jest aktualnie porównywane.
+     * @param json1 Taśma pierwszego JSON-a.
+     * @param json2 Taśma drugiego JSON-a.
+     * @return Raport różnic lub komunikat "Brak różnic." w przypadku braku różnic.
+     * @throws IOException Jeśli któraś z taśm jest pusta albo nie udało się odczytać wartości.
      */
-    private void compareNodes(JsonNode node1, JsonNode node2, StringBuilder differences, String path) {
-        if (!node1.equals(node2)) {
-            if (node1.isObject() && node2.isObject()) {
-                Iterator<String> fieldNames = node1.fieldNames();
-                while (fieldNames.hasNext()) {
-                    String fieldName = fieldNames.next();
-                    compareNodes(node1.get(fieldName), node2.get(fieldName), differences, path + "/" + fieldName);
+    public static String report(JsonTape json1, JsonTape json2) throws IOException {
+        StringBuilder report = new StringBuilder();
+        for (JsonTapeDiff.Difference difference : JsonTapeDiff.diff(json1, json2)) {
+            report.append("Różnica w: ").append(difference.path())
+                    .append("\nOczekiwane: ").append(describe(json1, difference.source()))
+                    .append("\nWłaściwe: ").append(describe(json2, difference.target())).append("\n\n");
+        }
+        return !report.isEmpty() ? report.toString() : "Brak różnic.";
+    }
+    /**
+     * Porównuje dwa dokumenty zapisane na taśmach ({@link JsonTape}) i zapisuje do strumienia różnice w formacie
+     * JSON Patch (RFC 6902), takie same jak {@link #patch(JsonNode)} dla drzew tych dokumentów. Wartości operacji
+     * są kopiowane z taśmy drugiego dokumentu token po tokenie.
+     * <p>Strumień nie jest zamykany - należy do wywołującego.</p>
+     *
+     * @param json1 Taśma pierwszego JSON-a.
+     * @param json2 Taśma drugiego JSON-a.
+     * @param output Strumień, do którego zostanie zapisana tablica operacji (UTF-8).
+     * @throws IOException Jeśli któraś z taśm jest pusta albo wystąpi błąd zapisu.
+     */
+    public static void patch(JsonTape json1, JsonTape json2, OutputStream output) throws IOException {
+        List<JsonTapeDiff.Difference> differences = JsonTapeDiff.diff(json1, json2);
+        try (JsonGenerator generator = BaseJsonProcessor.createGenerator(output)) {
+            generator.writeStartArray();
+            for (JsonTapeDiff.Difference difference : differences) {
+                generator.writeStartObject();
+                generator.writeStringField("op", difference.operation().patchName());
+                generator.writeStringField("path", difference.path().toString());
+                if (difference.operation() != JsonDiff.Operation.REMOVE) {
+                    generator.writeFieldName("value");
+                    json2.copy(difference.target(), generator);
                 }
-            } else {
-                differences.append("Różnica w: ").append(path)
-                        .append("\nOczekiwane: ").append(node1)
-                        .append("\nWłaściwe: ").append(node2).append("\n\n");
+                generator.writeEndObject();
             }
+            generator.writeEndArray();
+        }
+    }
+    /**
+     * Zwraca opis wartości z taśmy do raportu różnic.
+     *
+     * @param tape Taśma dokumentu.
+     * @param index Indeks pierwszego tokenu wartości lub {@code -1}, jeśli wartość nie występuje w dokumencie.
+     * @return Zwarta postać JSON wartości lub "brak".
+     * @throws IOException Jeśli nie udało się odczytać wartości.
+     */
+    private static String describe(JsonTape tape, int index) throws IOException {
+        if (index < 0) {
+            return "brak";
+        }
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try (JsonGenerator generator = BaseJsonProcessor.createGenerator(value)) {
+            tape.copy(index, generator);
         }
+        return value.toString(StandardCharsets.UTF_8);
+    }
+    /**
+     * Zwraca opis wartości do raportu różnic.
+     *
+     * @param node Wartość JSON lub {@code null}, jeśli wartość nie występuje w dokumencie.
+     * @return Tekstowa postać wartości lub "brak".
+     */
+    private static String describe(JsonNode node) {
+        return node == null ? "brak" : node.toString();
     }
 }
@@ -0,0 +1,229 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formaty zapisu dokumentów o modelu danych JSON: tekstowy JSON oraz binarne Smile, CBOR i MessagePack.
+ * <p>
+ * Wszystkie formaty są czytane i zapisywane przez Jacksona jako ten sam strumień tokenów, więc procesory JSON
+ * działają na nich bez zmian - format dotyczy tylko parsowania wejścia i zapisu wyniku ({@link #process}).
+ * Formaty binarne są zwykle mniejsze i szybsze w parsowaniu niż tekst, dlatego nadają się do wymiany danych
+ * między usługami.
+ * </p>
+ */
+public enum DataFormat {
+    /**
+     * Tekstowy JSON (UTF-8).
+     */
+    JSON(DataFormat.JSON_VALUE, new ObjectMapper()),
+    /**
+     * Binarny format Smile.
+     */
+    SMILE(DataFormat.SMILE_VALUE, new ObjectMapper(new SmileFactory())),
+    /**
+     * Binarny format CBOR (RFC 8949).
+     */
+    CBOR(DataFormat.CBOR_VALUE, new ObjectMapper(new CBORFactory())),
+    /**
+     * Binarny format MessagePack.
+     */
+    MSGPACK(DataFormat.MSGPACK_VALUE, new ObjectMapper(new MessagePackFactory()));
+
+    public static final String JSON_VALUE = "application/json";
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String CBOR_VALUE = "application/cbor";
+    public static final String MSGPACK_VALUE = "application/x-msgpack";
+
+    private final String mediaType;
+    private final ObjectMapper mapper;
+
+    DataFormat(String mediaType, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Zwraca typ MIME formatu.
+     *
+     * @return Typ MIME, np. {@code application/cbor}.
+     */
+    public String mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Zwraca format o podanym typie MIME.
+     *
+     * @param mediaType Typ MIME, np. wartość nagłówka {@code Content-Type}; parametry (np. {@code charset})
+     *                  i wielkość liter nie mają znaczenia.
+     * @return Format albo pusty wynik, jeśli typ nie odpowiada żadnemu formatowi.
+     */
+    public static Optional<DataFormat> of(String mediaType) {
+        int parameters = mediaType.indexOf(';');
+        String type = (parameters < 0 ? mediaType : mediaType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+        for (DataFormat format : values()) {
+            if (format.mediaType.equals(type)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Tworzy parser strumieniowy dla danego wejścia, który nie zamyka strumienia po zakończeniu.
+     *
+     * @param input Strumień z dokumentem w tym formacie.
+     * @return Nowy parser ustawiony przed pierwszym tokenem.
+     * @throws IOException Jeśli nie udało się utworzyć parsera.
+     */
+    public JsonParser createParser(InputStream input) throws IOException {
+        JsonParser parser = factory().createParser(input).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return this == MSGPACK ? new MessagePackParser(parser) : parser;
+    }
+
+    /**
+     * Tworzy generator strumieniowy dla danego wyjścia, który nie zamyka strumienia po zakończeniu
+     * (z tymi samymi ustawieniami co {@link BaseJsonProcessor#createGenerator}).
+     *
+     * @param output Strumień wyjściowy.
+     * @return Nowy generator zapisujący dokument w tym formacie.
+     * @throws IOException Jeśli nie udało się utworzyć generatora.
+     */
+    public JsonGenerator createGenerator(OutputStream output) throws IOException {
+        return factory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    private JsonFactory factory() {
+        return mapper.getFactory();
+    }
+
+    /**
+     * Przetwarza dokument procesorem JSON, czytając go w jednym formacie i zapisując wynik w drugim.
+     * <p>Dla JSON-a po obu stronach używany jest tryb strumieniowy procesora ({@link JsonProcessor#process(InputStream,
+     * OutputStream)}). Dla formatów binarnych procesor dostaje parser formatu wejścia i generator formatu wyniku
+     * ({@link JsonProcessor#process(JsonParser, JsonGenerator)}), więc np. filtry pomijają odrzucane poddrzewa
+     * na poziomie tokenów tak samo jak dla JSON-a. Drzewo dokumentu jest budowane tylko dla procesorów drzewowych
+     * spoza hierarchii {@link BaseJsonProcessor}, które nie mają własnego trybu strumieniowego; wynik w formacie
+     * JSON jest wtedy serializowany przez procesor ({@link JsonTreeProcessor#serialize}).</p>
+     *
+     * @param processor Procesor JSON.
+     * @param inputFormat Format wejścia.
+     * @param input Strumień z dokumentem wejściowym.
+     * @param outputFormat Format wyniku.
+     * @param output Strumień, do którego zostanie zapisany wynik.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub dokument jest nieprawidłowy.
+     */
+    public static void process(JsonProcessor processor, DataFormat inputFormat, InputStream input,
+                               DataFormat outputFormat, OutputStream output) throws IOException {
+        if (inputFormat == JSON && outputFormat == JSON) {
+            processor.process(input, output);
+            return;
+        }
+        if (!(processor instanceof JsonTreeProcessor treeProcessor) || processor instanceof BaseJsonProcessor) {
+            try (JsonParser parser = inputFormat.createParser(input);
+                 JsonGenerator generator = outputFormat.createGenerator(output)) {
+                processor.process(parser, generator);
+            }
+            return;
+        }
+        JsonNode json;
+        try (JsonParser parser = inputFormat.createParser(input)) {
+            json = inputFormat.mapper.readTree(parser);
+        }
+        if (json == null) {
+            throw new IOException("Brak dokumentu wejściowego");
+        }
+        JsonNode result = treeProcessor.process(json);
+        if (outputFormat == JSON) {
+            output.write(treeProcessor.serialize(result).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        try (JsonGenerator generator = outputFormat.createGenerator(output)) {
+            outputFormat.mapper.writeTree(generator, result);
+        }
+    }
+
+    /**
+     * Przepisuje dokument z jednego formatu do drugiego token po tokenie, bez budowania drzewa.
+     *
+     * @param inputFormat Format wejścia.
+     * @param input Strumień z dokumentem wejściowym.
+     * @param outputFormat Format wyniku.
+     * @param output Strumień, do którego zostanie zapisany dokument.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub dokument jest nieprawidłowy.
+     */
+    public static void convert(DataFormat inputFormat, InputStream input, DataFormat outputFormat,
+                               OutputStream output) throws IOException {
+        try (JsonParser parser = inputFormat.createParser(input);
+             JsonGenerator generator = outputFormat.createGenerator(output)) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Brak dokumentu wejściowego");
+            }
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * Parser MessagePack zwracający kanoniczne nazwy pól ({@link FieldNames}), bo parser MessagePack nie ma tablicy
+     * symboli i tworzy nowy napis dla każdego klucza. Koniec danych po wartości najwyższego poziomu kończy
+     * dokument ({@code null}) tak jak w pozostałych formatach - parser MessagePack zgłasza wtedy wyjątek.
+     */
+    private static final class MessagePackParser extends JsonParserDelegate {
+        private MessagePackParser(JsonParser parser) {
+            super(parser);
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            try {
+                return delegate.nextToken();
+            } catch (JsonEOFException e) {
+                if (delegate.currentToken() != null && delegate.getParsingContext().inRoot()) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public String nextFieldName() throws IOException {
+            return FieldNames.canonical(delegate.nextFieldName());
+        }
+
+        @Override
+        public String getCurrentName() throws IOException {
+            return FieldNames.canonical(delegate.getCurrentName());
+        }
+
+        @Override
+        public String currentName() throws IOException {
+            return FieldNames.canonical(delegate.currentName());
+        }
+
+        @Override
+        public String getText() throws IOException {
+            return delegate.currentToken() == JsonToken.FIELD_NAME
+                    ? FieldNames.canonical(delegate.getText()) : delegate.getText();
+        }
+    }
+}
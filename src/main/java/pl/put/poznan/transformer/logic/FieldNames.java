@@ -0,0 +1,76 @@
+package pl.put.poznan.transformer.logic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wspólna tablica symboli nazw pól, trwała między żądaniami.
+ * <p>
+ * Parsery Jacksona dla JSON-a, Smile i CBOR kanonizują nazwy pól we wspólnej tablicy symboli swojej fabryki:
+ * ta sama nazwa jest w każdym żądaniu tym samym (internowanym) obiektem {@code String}, więc jej skrót jest liczony
+ * raz, a porównanie w mapach ({@link PathMatcher}, pola obiektów w {@link JsonDiff}) kończy się na porównaniu
+ * referencji. Ta klasa zapewnia to samo dla nazw spoza tych parserów: wyrażeń ścieżkowych, pól dokumentów
+ * MessagePack (którego parser tworzy nowy napis dla każdego klucza) i pól dodawanych przez JSON Patch.
+ * Zwracane symbole są internowane, więc są tymi samymi obiektami, co nazwy z parserów Jacksona.
+ * </p>
+ * <p>
+ * Tablica jest ograniczona: po zapełnieniu bieżącej generacji staje się ona poprzednią, a poprzednia jest
+ * porzucana. Nazwy używane stale są przenoszone do nowej generacji przy pierwszym odczycie, a dowolnie duży zbiór
+ * różnych kluczy (np. wysłany celowo) zajmuje najwyżej dwie generacje. Bardzo długie nazwy nie są kanonizowane.
+ * Metody są bezpieczne wątkowo i nie blokują (poza rzadką zmianą generacji).
+ * </p>
+ */
+public final class FieldNames {
+    /**
+     * Maksymalna liczba nazw w jednej generacji.
+     */
+    private static final int MAX_ENTRIES = 8192;
+    /**
+     * Najdłuższa kanonizowana nazwa.
+     */
+    private static final int MAX_LENGTH = 256;
+
+    private static volatile Map<String, String> current = new ConcurrentHashMap<>();
+    private static volatile Map<String, String> previous = new ConcurrentHashMap<>();
+
+    private FieldNames() {
+    }
+
+    /**
+     * Zwraca kanoniczny obiekt nazwy pola.
+     *
+     * @param name Nazwa pola (może być {@code null}).
+     * @return Równa nazwa, ta sama dla wszystkich równych nazw (dopóki nie zostanie usunięta z tablicy),
+     * lub przekazana nazwa, jeśli jest {@code null} albo zbyt długa.
+     */
+    public static String canonical(String name) {
+        if (name == null || name.length() > MAX_LENGTH) {
+            return name;
+        }
+        Map<String, String> table = current;
+        String symbol = table.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        symbol = previous.get(name);
+        if (symbol == null) {
+            symbol = name.intern();
+        }
+        if (table.size() >= MAX_ENTRIES) {
+            table = rotate(table);
+        }
+        String existing = table.putIfAbsent(symbol, symbol);
+        return existing != null ? existing : symbol;
+    }
+
+    /**
+     * Zaczyna nową generację, jeśli nie zrobił tego już inny wątek.
+     */
+    private static synchronized Map<String, String> rotate(Map<String, String> full) {
+        if (current == full) {
+            previous = full;
+            current = new ConcurrentHashMap<>();
+        }
+        return current;
+    }
+}
@@ -1,9 +1,21 @@
 package pl.put.poznan.transformer.logic;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * Dekorator do filtrowania JSON (usuwanie określonych właściwości).
  * <p>
@@ -11,37 +23,177 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * Używa innego procesora JSON (przekazanego w konstruktorze) do przetworzenia JSON-a, a następnie usuwa określone właściwości
  * z tego obiektu na podstawie tablicy właściwości przekazanej w konstruktorze.
  * </p>
+ * <p>
+ * Właściwości mogą być wyrażeniami ścieżkowymi ({@link PathMatcher}), np. {@code user.details.email},
+ * {@code items[*].price} lub {@code **.password}. Dokument jest przechodzony raz; poddrzewa bez usuwanych
+ * właściwości są współdzielone z wejściem, a nowe są tylko obiekty i tablice leżące na ścieżkach do usuniętych
+ * wartości. Usuwane poddrzewa nie są ani kopiowane, ani przechodzone.
+ * </p>
+ * <p>
+ * Tryb strumieniowy ({@link #process(InputStream, OutputStream)}, a dla formatów binarnych
+ * {@link #process(JsonParser, JsonGenerator)} wywoływane przez {@link DataFormat#process}) filtruje tokeny parsera
+ * bez budowania drzewa dokumentu: usuwane poddrzewa są pomijane bez materializacji, a pozostałe tokeny trafiają
+ * bezpośrednio do generatora.
+ * </p>
  */
-public class FilterExclude extends BaseJsonProcessor {
-    private final JsonProcessor processor;
-    private final String[] properties;
+public class FilterExclude extends JsonProcessorDecorator {
+    private final PathMatcher matcher;
     /**
      * Konstruktor klasy FilterExclude.
      *
      * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a.
-     * @param properties Tablica nazw właściwości (pol), które mają zostać usunięte z przetwarzanego JSON-a.
+     * @param properties Tablica nazw właściwości (pol) lub wyrażeń ścieżkowych, które mają zostać usunięte z przetwarzanego JSON-a.
+     * @throws IllegalArgumentException Jeśli któreś z wyrażeń jest niepoprawne.
      */
     public FilterExclude(JsonProcessor processor, String[] properties) {
-        this.processor = processor;
-        this.properties = properties;
+        super(processor);
+        this.matcher = new PathMatcher(properties);
+    }
+    /**
+     * Strumieniowo filtruje JSON, kopiując przepuszczone tokeny bezpośrednio do generatora.
+     *
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany przefiltrowany JSON (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = createParser(input);
+             JsonGenerator generator = createGenerator(output)) {
+            process(parser, generator);
+        }
+    }
+    /**
+     * Filtruje tokeny odczytywane z parsera (np. z taśmy {@link JsonTape}), kopiując przepuszczone
+     * bezpośrednio do generatora.
+     *
+     * @param input Parser ustawiony przed pierwszym tokenem dokumentu wejściowego.
+     * @param generator Generator, do którego zostanie zapisany przefiltrowany JSON.
+     * @throws IOException Jeśli wystąpi błąd odczytu, zapisu lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(JsonParser input, JsonGenerator generator) throws IOException {
+        JsonParser parser = processor.process(input);
+        Deque<Frame> path = new ArrayDeque<>();
+        if (parser.nextToken() != null) {
+            exclude(parser, generator, matcher.root(), path);
+        }
+        while (!path.isEmpty()) {
+            JsonToken token = parser.nextToken();
+            Frame frame = path.peek();
+            if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                path.pop();
+                generator.copyCurrentEvent(parser);
+            } else if (token == JsonToken.FIELD_NAME) {
+                PathMatcher.State state = frame.state.field(parser.getCurrentName());
+                if (state.matched()) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                } else {
+                    generator.copyCurrentEvent(parser);
+                    parser.nextToken();
+                    exclude(parser, generator, state, path);
+                }
+            } else {
+                PathMatcher.State state = frame.state.index(frame.index++);
+                if (state.matched()) {
+                    parser.skipChildren();
+                } else {
+                    exclude(parser, generator, state, path);
+                }
+            }
+        }
+        generator.flush();
     }
     /**
-     * Przetwarza dany JSON, usuwając określone właściwości.
-     * <p>Metoda najpierw przetwarza JSON za pomocą innego procesora przekazanego w konstruktorze,
-     * a następnie usuwa wszystkie wskazane właściwości z obiektu JSON. Na końcu zwraca zaktualizowany JSON
-     * bez usuniętych właściwości.</p>
+     * Zapisuje wartość, na której stoi parser i która sama nie jest usuwana: kopiuje ją w całości, jeśli nic
+     * w niej nie jest usuwane, a w przeciwnym razie zapisuje początek kontenera i odkłada go na ścieżkę.
      *
-     * @param json JSON w formie tekstowej (String), który ma zostać przetworzony.
-     * @return Zaktualizowany JSON w formie tekstowej (String) z usuniętymi właściwościami.
-     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     * @param parser Parser ustawiony na pierwszym tokenie wartości.
+     * @param generator Generator wyniku.
+     * @param state Stan dopasowania dla wartości.
+     * @param path Kontenery od bieżącego do korzenia.
+     * @throws IOException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    private static void exclude(JsonParser parser, JsonGenerator generator, PathMatcher.State state,
+                                Deque<Frame> path) throws IOException {
+        if (state.isEmpty() || !parser.currentToken().isStructStart()) {
+            generator.copyCurrentStructure(parser);
+        } else {
+            generator.copyCurrentEvent(parser);
+            path.push(new Frame(state));
+        }
+    }
+    /**
+     * Kontener na ścieżce od korzenia do bieżącego miejsca w strumieniu tokenów.
+     */
+    private static final class Frame {
+        private final PathMatcher.State state;
+        private int index;
+
+        private Frame(PathMatcher.State state) {
+            this.state = state;
+        }
+    }
+    /**
+     * Zwraca dokument bez dopasowanych właściwości.
+     *
+     * @param json Drzewo JSON zwrócone przez procesor wewnętrzny.
+     * @return Dokument JSON bez usuniętych właściwości.
      */
     @Override
-    public String process(String json) throws JsonProcessingException {
-        JsonNode jsonNode = objectMapper.readTree(processor.process(json));
-        ObjectNode filteredNode = jsonNode.deepCopy();
-        for (String property : properties) {
-            filteredNode.remove(property);
+    protected JsonNode transform(JsonNode json) {
+        return exclude(json, matcher.root());
+    }
+    /**
+     * Zwraca poddrzewo bez dopasowanych właściwości.
+     *
+     * @param node Węzeł dokumentu, który nie jest usuwany.
+     * @param state Stan dopasowania dla tego węzła.
+     * @return Ten sam węzeł, jeśli nic w nim nie jest usuwane, lub nowy kontener bez usuniętych potomków.
+     */
+    private static JsonNode exclude(JsonNode node, PathMatcher.State state) {
+        if (state.isEmpty() || !node.isContainerNode()) {
+            return node;
+        }
+        JsonNode[] values = new JsonNode[node.size()];
+        boolean changed = false;
+        int i = 0;
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                PathMatcher.State fieldState = state.field(field.getKey());
+                values[i] = fieldState.matched() ? null : exclude(field.getValue(), fieldState);
+                changed |= values[i++] != field.getValue();
+            }
+            if (!changed) {
+                return node;
+            }
+            ObjectNode filteredNode = JsonNodeFactory.instance.objectNode();
+            fields = node.fields();
+            for (i = 0; fields.hasNext(); i++) {
+                String name = fields.next().getKey();
+                if (values[i] != null) {
+                    filteredNode.set(name, values[i]);
+                }
+            }
+            return filteredNode;
+        }
+        for (JsonNode element : node) {
+            PathMatcher.State elementState = state.index(i);
+            values[i] = elementState.matched() ? null : exclude(element, elementState);
+            changed |= values[i++] != element;
+        }
+        if (!changed) {
+            return node;
+        }
+        ArrayNode filteredNode = JsonNodeFactory.instance.arrayNode();
+        for (JsonNode value : values) {
+            if (value != null) {
+                filteredNode.add(value);
+            }
         }
-        return objectMapper.writeValueAsString(filteredNode);
+        return filteredNode;
     }
 }
@@ -1,9 +1,21 @@
 package pl.put.poznan.transformer.logic;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * Dekorator do filtrowania JSON (zachowanie określonych właściwości).
  * <p>
@@ -11,39 +23,197 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * Używa innego procesora JSON (przekazanego w konstruktorze) do przetworzenia JSON-a, a następnie filtruje właściwości
  * na podstawie tablicy nazw właściwości przekazanej w konstruktorze, zachowując tylko te, które znajdują się w tej tablicy.
  * </p>
+ * <p>
+ * Właściwości mogą być wyrażeniami ścieżkowymi ({@link PathMatcher}), np. {@code user.details.email},
+ * {@code items[*].price} lub {@code **.id}. Dokument jest przechodzony raz; zachowane poddrzewa są dołączane
+ * do wyniku bez kopiowania, a kopiowane są tylko obiekty i tablice leżące na ścieżkach do nich.
+ * </p>
+ * <p>
+ * Tryb strumieniowy ({@link #process(InputStream, OutputStream)}, a dla formatów binarnych
+ * {@link #process(JsonParser, JsonGenerator)} wywoływane przez {@link DataFormat#process}) filtruje tokeny parsera
+ * bez budowania drzewa dokumentu: odrzucane poddrzewa są pomijane bez materializacji, a zachowane tokeny trafiają
+ * bezpośrednio do generatora. Obiekty i tablice leżące na ścieżkach do dopasowanych wartości są zapisywane
+ * dopiero przy pierwszym dopasowaniu, więc pamięć zależy tylko od głębokości dokumentu.
+ * </p>
  */
-public class FilterInclude extends BaseJsonProcessor {
-    private final JsonProcessor processor;
-    private final String[] properties;
+public class FilterInclude extends JsonProcessorDecorator {
+    private final PathMatcher matcher;
     /**
      * Konstruktor klasy FilterInclude.
      *
      * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a.
-     * @param properties Tablica nazw właściwości (pol), które mają zostać zachowane w przetwarzanym JSON-ie.
+     * @param properties Tablica nazw właściwości (pol) lub wyrażeń ścieżkowych, które mają zostać zachowane w przetwarzanym JSON-ie.
+     * @throws IllegalArgumentException Jeśli któreś z wyrażeń jest niepoprawne.
      */
     public FilterInclude(JsonProcessor processor, String[] properties) {
-        this.processor = processor;
-        this.properties = properties;
+        super(processor);
+        this.matcher = new PathMatcher(properties);
     }
     /**
-     * Przetwarza dany JSON, zachowując tylko określone właściwości.
-     * <p>Metoda najpierw przetwarza JSON za pomocą innego procesora przekazanego w konstruktorze,
-     * a następnie filtruje obiekt JSON, zachowując tylko właściwości, które znajdują się w tablicy {@code properties}.
-     * Na końcu zwraca zaktualizowany JSON zawierający tylko te właściwości.</p>
+     * Tworzy nowy dokument zawierający tylko dopasowane właściwości.
      *
-     * @param json JSON w formie tekstowej (String), który ma zostać przetworzony.
-     * @return Zaktualizowany JSON w formie tekstowej (String), zawierający tylko zachowane właściwości.
-     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     * @param json Drzewo JSON zwrócone przez procesor wewnętrzny.
+     * @return Nowy obiekt JSON z zachowanymi właściwościami.
      */
     @Override
-    public String process(String json) throws JsonProcessingException {
-        JsonNode jsonNode = objectMapper.readTree(processor.process(json));
-        ObjectNode filteredNode = objectMapper.createObjectNode();
-        for (String property : properties) {
-            if (jsonNode.has(property)) {
-                filteredNode.set(property, jsonNode.get(property));
+    protected JsonNode transform(JsonNode json) {
+        JsonNode filteredNode = include(json, matcher.root());
+        return filteredNode != null ? filteredNode : JsonNodeFactory.instance.objectNode();
+    }
+    /**
+     * Strumieniowo filtruje JSON, kopiując przepuszczone tokeny bezpośrednio do generatora.
+     *
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany przefiltrowany JSON (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = createParser(input);
+             JsonGenerator generator = createGenerator(output)) {
+            process(parser, generator);
+        }
+    }
+    /**
+     * Filtruje tokeny odczytywane z parsera (np. z taśmy {@link JsonTape}), kopiując przepuszczone
+     * bezpośrednio do generatora.
+     *
+     * @param input Parser ustawiony przed pierwszym tokenem dokumentu wejściowego.
+     * @param generator Generator, do którego zostanie zapisany przefiltrowany JSON.
+     * @throws IOException Jeśli wystąpi błąd odczytu, zapisu lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(JsonParser input, JsonGenerator generator) throws IOException {
+        JsonParser parser = processor.process(input);
+        Deque<Frame> path = new ArrayDeque<>();
+        boolean written = false;
+        if (parser.nextToken() != null) {
+            written = include(parser, generator, matcher.root(), null, path);
+        }
+        while (!path.isEmpty()) {
+            JsonToken token = parser.nextToken();
+            Frame frame = path.peek();
+            if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                path.pop();
+                if (frame.written) {
+                    generator.copyCurrentEvent(parser);
+                }
+            } else if (token == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                written |= include(parser, generator, frame.state.field(name), name, path);
+            } else {
+                written |= include(parser, generator, frame.state.index(frame.index++), null, path);
             }
         }
-        return objectMapper.writeValueAsString(filteredNode);
+        if (!written) {
+            generator.writeStartObject();
+            generator.writeEndObject();
+        }
+        generator.flush();
+    }
+    /**
+     * Obsługuje wartość, na której stoi parser: kopiuje ją, jeśli jest dopasowana, pomija, jeśli nic w niej nie
+     * może zostać dopasowane, a w pozostałych przypadkach odkłada kontener na ścieżkę bez zapisywania go.
+     *
+     * @param parser Parser ustawiony na pierwszym tokenie wartości.
+     * @param generator Generator wyniku.
+     * @param state Stan dopasowania dla wartości.
+     * @param name Nazwa pola, pod którym leży wartość, lub {@code null} dla elementu tablicy i korzenia.
+     * @param path Kontenery od bieżącego do korzenia.
+     * @return {@code true}, jeśli wartość została zapisana.
+     * @throws IOException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    private static boolean include(JsonParser parser, JsonGenerator generator, PathMatcher.State state, String name,
+                                   Deque<Frame> path) throws IOException {
+        if (state.matched()) {
+            Iterator<Frame> pending = path.descendingIterator();
+            while (pending.hasNext()) {
+                Frame frame = pending.next();
+                if (!frame.written) {
+                    if (frame.name != null) {
+                        generator.writeFieldName(frame.name);
+                    }
+                    if (frame.object) {
+                        generator.writeStartObject();
+                    } else {
+                        generator.writeStartArray();
+                    }
+                    frame.written = true;
+                }
+            }
+            if (name != null) {
+                generator.writeFieldName(name);
+            }
+            generator.copyCurrentStructure(parser);
+            return true;
+        }
+        if (state.isEmpty() || !parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+        } else {
+            path.push(new Frame(state, name, parser.currentToken() == JsonToken.START_OBJECT));
+        }
+        return false;
+    }
+    /**
+     * Zwraca część poddrzewa pasującą do wyrażeń.
+     *
+     * @param node Węzeł dokumentu.
+     * @param state Stan dopasowania dla tego węzła.
+     * @return Dopasowany węzeł (bez kopiowania), nowy kontener z dopasowanymi potomkami
+     * lub {@code null}, jeśli nic w poddrzewie nie pasuje.
+     */
+    private static JsonNode include(JsonNode node, PathMatcher.State state) {
+        if (state.matched()) {
+            return node;
+        }
+        if (state.isEmpty()) {
+            return null;
+        }
+        if (node.isObject()) {
+            ObjectNode filteredNode = null;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode value = include(field.getValue(), state.field(field.getKey()));
+                if (value != null) {
+                    if (filteredNode == null) {
+                        filteredNode = JsonNodeFactory.instance.objectNode();
+                    }
+                    filteredNode.set(field.getKey(), value);
+                }
+            }
+            return filteredNode;
+        }
+        if (node.isArray()) {
+            ArrayNode filteredNode = null;
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode value = include(node.get(i), state.index(i));
+                if (value != null) {
+                    if (filteredNode == null) {
+                        filteredNode = JsonNodeFactory.instance.arrayNode();
+                    }
+                    filteredNode.add(value);
+                }
+            }
+            return filteredNode;
+        }
+        return null;
+    }
+    /**
+     * Kontener na ścieżce od korzenia do bieżącego miejsca w strumieniu tokenów.
+     */
+    private static final class Frame {
+        private final PathMatcher.State state;
+        private final String name;
+        private final boolean object;
+        private int index;
+        private boolean written;
+
+        private Frame(PathMatcher.State state, String name, boolean object) {
+            this.state = state;
+            this.name = name;
+            this.object = object;
+        }
     }
 }
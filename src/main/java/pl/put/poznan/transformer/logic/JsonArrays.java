@@ -0,0 +1,238 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
+
+/**
+ * Równoległe przetwarzanie dużych tablic JSON najwyższego poziomu.
+ * <p>
+ * Wątek wywołujący przegląda wejście bajt po bajcie (śledząc tylko stos nawiasów i granice napisów, bez pełnego
+ * parsowania, ale odrzucając niedopasowane nawiasy i dane po zamykającym nawiasie tablicy) i dzieli tablicę na bloki elementów o rozmiarze ok. {@value #CHUNK_SIZE} bajtów. Parsowanie
+ * i przetwarzanie bloków odbywa się w puli wątków, a wyniki są zapisywane w kolejności wejścia jako elementy
+ * tablicy wynikowej (w postaci zwartej).
+ * </p>
+ * <p>
+ * Każdy element jest przetwarzany procesorem jako osobny dokument (jak rekord NDJSON), więc np. wyrażenia ścieżkowe
+ * filtrów odnoszą się do elementu, a nie do całej tablicy. Dla {@link Minify} wynik jest identyczny jak przy
+ * przetwarzaniu całego dokumentu. Wejście, które nie jest tablicą, jest przetwarzane sekwencyjnie.
+ * </p>
+ */
+public final class JsonArrays {
+    /**
+     * Docelowy rozmiar bloku elementów (w bajtach).
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    private JsonArrays() {
+    }
+
+    /**
+     * Przetwarza elementy tablicy najwyższego poziomu równolegle, zachowując ich kolejność.
+     * <p>Strumienie nie są zamykane - należą do wywołującego.</p>
+     *
+     * @param processor Bezpieczny wątkowo procesor JSON stosowany do każdego elementu.
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisana tablica wynikowa (UTF-8).
+     * @param executor Pula wątków przetwarzających bloki.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub JSON jest nieprawidłowy.
+     */
+    public static void process(JsonProcessor processor, InputStream input, OutputStream output,
+                               ExecutorService executor) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = input.read(buffer);
+        int position = 0;
+        while (position < length && isWhitespace(buffer[position])) {
+            position++;
+        }
+        if (position >= length || buffer[position] != '[') {
+            InputStream prefix = new ByteArrayInputStream(buffer, 0, Math.max(length, 0));
+            processor.process(new SequenceInputStream(prefix, input), output);
+            return;
+        }
+        position++;
+
+        boolean[] written = new boolean[1];
+        OrderedTasks<byte[]> tasks = new OrderedTasks<>(executor, WINDOW, result -> {
+            if (result.length > 0) {
+                output.write(written[0] ? ',' : '[');
+                output.write(result);
+                written[0] = true;
+            }
+        });
+        Chunk chunk = new Chunk();
+        byte[] brackets = new byte[64];
+        brackets[0] = '[';
+        int depth = 1;
+        boolean inString = false;
+        boolean escape = false;
+        while (depth > 0) {
+            if (position == length) {
+                length = input.read(buffer);
+                position = 0;
+                if (length < 0) {
+                    throw new EOFException("Nieoczekiwany koniec tablicy JSON");
+                }
+                continue;
+            }
+            byte b = buffer[position++];
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '[' || b == '{') {
+                if (depth == brackets.length) {
+                    brackets = Arrays.copyOf(brackets, depth * 2);
+                }
+                brackets[depth++] = b;
+            } else if (b == ']' || b == '}') {
+                if (brackets[--depth] != (b == ']' ? '[' : '{')) {
+                    throw new IOException("Niedopasowany nawias w tablicy JSON");
+                }
+                if (depth == 0) {
+                    break;
+                }
+            } else if (b == ',' && depth == 1 && chunk.size() >= CHUNK_SIZE) {
+                submit(tasks, processor, chunk);
+                continue;
+            }
+            chunk.add(b);
+        }
+        requireEnd(input, buffer, position, length);
+        submit(tasks, processor, chunk);
+        tasks.finish();
+        if (!written[0]) {
+            output.write('[');
+        }
+        output.write(']');
+        output.flush();
+    }
+
+    private static void submit(OrderedTasks<byte[]> tasks, JsonProcessor processor, Chunk chunk) throws IOException {
+        if (chunk.hasContent()) {
+            byte[] elements = chunk.toArray();
+            tasks.submit(() -> process(processor, elements));
+        }
+        chunk.reset();
+    }
+
+    /**
+     * Przetwarza blok elementów w jednym wątku puli.
+     *
+     * @param processor Procesor JSON.
+     * @param elements Elementy bloku ujęte w nawiasy kwadratowe.
+     * @return Przetworzone elementy rozdzielone przecinkami (UTF-8).
+     * @throws IOException Jeśli któryś z elementów jest nieprawidłowy.
+     */
+    private static byte[] process(JsonProcessor processor, byte[] elements) throws IOException {
+        StringBuilder output = new StringBuilder(elements.length);
+        try (JsonParser parser = jsonReader.createParser(elements)) {
+            parser.nextToken();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new EOFException("Nieoczekiwany koniec tablicy JSON");
+                }
+                JsonNode element = jsonReader.readTree(parser);
+                if (output.length() > 0) {
+                    output.append(',');
+                }
+                if (processor instanceof JsonTreeProcessor treeProcessor) {
+                    output.append(treeProcessor.serialize(treeProcessor.process(element)));
+                } else {
+                    output.append(processor.process(jsonWriter.writeValueAsString(element)));
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new IOException("Nieprawidłowy element tablicy JSON");
+            }
+        }
+        return output.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sprawdza, czy po tablicy do końca wejścia występują wyłącznie białe znaki.
+     *
+     * @param input Strumień wejściowy.
+     * @param buffer Bufor z nieprzejrzaną jeszcze częścią wejścia.
+     * @param position Pozycja pierwszego bajtu po tablicy.
+     * @param length Liczba bajtów w buforze.
+     * @throws IOException Jeśli po tablicy występują inne dane lub wystąpi błąd odczytu.
+     */
+    private static void requireEnd(InputStream input, byte[] buffer, int position, int length) throws IOException {
+        while (length >= 0) {
+            for (; position < length; position++) {
+                if (!isWhitespace(buffer[position])) {
+                    throw new IOException("Nieoczekiwane dane po tablicy JSON");
+                }
+            }
+            length = input.read(buffer);
+            position = 0;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Bajty bieżącego bloku elementów, ujęte w nawiasy kwadratowe, aby blok był samodzielnym dokumentem.
+     */
+    private static final class Chunk {
+        private byte[] bytes = new byte[BUFFER_SIZE];
+        private int size = 1;
+        private boolean content;
+
+        private Chunk() {
+            bytes[0] = '[';
+        }
+
+        private void add(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = b;
+            content |= !isWhitespace(b);
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean hasContent() {
+            return content;
+        }
+
+        private byte[] toArray() {
+            byte[] array = Arrays.copyOf(bytes, size + 1);
+            array[size] = ']';
+            return array;
+        }
+
+        private void reset() {
+            size = 1;
+            content = false;
+        }
+    }
+}
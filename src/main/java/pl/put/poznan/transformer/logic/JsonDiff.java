@@ -0,0 +1,503 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Silnik różnic strukturalnych między dwoma dokumentami JSON.
+ * <p>
+ * Porównuje obiekty pole po polu (wykrywając pola dodane, usunięte i zmienione), a tablice wyrównuje
+ * najdłuższym wspólnym podciągiem (LCS) elementów, dzięki czemu wstawienie jednego elementu nie jest
+ * raportowane jako zmiana wszystkich kolejnych. Wynik jest listą operacji zgodnych z JSON Patch (RFC 6902),
+ * które zastosowane kolejno przekształcają pierwszy dokument w drugi.
+ * </p>
+ * <p>
+ * Ścieżki są budowane leniwie: poddrzewa, które okazują się równe, nie tworzą żadnych obiektów ścieżek,
+ * a tekstowa postać ścieżki (JSON Pointer) powstaje dopiero przy odczycie różnicy.
+ * </p>
+ * <p>
+ * Różne poddrzewa są rozpoznawane w czasie stałym przez porównanie skrótów strukturalnych ({@link JsonHashes})
+ * policzonych jednym przejściem po każdym z dokumentów; równość przy równych skrótach jest potwierdzana
+ * porównaniem struktury, które kończy zejście w dane poddrzewo, więc duże, prawie identyczne dokumenty są
+ * porównywane w czasie liniowym. Liczenie skrótów, potwierdzanie równości i porównanie działają iteracyjnie,
+ * bez rekurencji.
+ * </p>
+ */
+public final class JsonDiff {
+    /**
+     * Maksymalny rozmiar tablicy LCS (liczba komórek); dla większych tablic elementy są wyrównywane po indeksach.
+     */
+    private static final long MAX_LCS_CELLS = 1_000_000;
+
+    private final List<Difference> differences = new ArrayList<>();
+    private final Deque<Task> tasks = new ArrayDeque<>();
+    private final JsonHashes sourceHashes;
+    private final JsonHashes targetHashes;
+
+    private JsonDiff(JsonHashes sourceHashes, JsonHashes targetHashes) {
+        this.sourceHashes = sourceHashes;
+        this.targetHashes = targetHashes;
+    }
+
+    /**
+     * Para różnych kontenerów (obiektów lub tablic) oczekująca na porównanie.
+     */
+    private record Task(JsonNode source, JsonNode target, Path path) {
+    }
+
+    /**
+     * Rodzaj operacji JSON Patch.
+     */
+    public enum Operation {
+        ADD, REMOVE, REPLACE;
+
+        /**
+         * Zwraca nazwę operacji w formacie JSON Patch.
+         *
+         * @return Nazwa operacji, np. {@code "replace"}.
+         */
+        public String patchName() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Pojedyncza różnica między dokumentami.
+     *
+     * @param operation Rodzaj operacji.
+     * @param path Ścieżka do zmienionego miejsca.
+     * @param oldValue Wartość w pierwszym dokumencie ({@code null} dla {@link Operation#ADD}).
+     * @param newValue Wartość w drugim dokumencie ({@code null} dla {@link Operation#REMOVE}).
+     */
+    public record Difference(Operation operation, Path path, JsonNode oldValue, JsonNode newValue) {
+    }
+
+    /**
+     * Niezmienna ścieżka w dokumencie, przechowywana jako lista segmentów powiązanych z rodzicem.
+     * <p>Tekst JSON Pointer jest tworzony dopiero w {@link #toString()}.</p>
+     */
+    public static final class Path {
+        private static final Path ROOT = new Path(null, null, -1);
+
+        private final Path parent;
+        private final String field;
+        private final int index;
+
+        private Path(Path parent, String field, int index) {
+            this.parent = parent;
+            this.field = field;
+            this.index = index;
+        }
+
+        /**
+         * Zwraca ścieżkę do korzenia dokumentu.
+         *
+         * @return Ścieżka pusta.
+         */
+        public static Path root() {
+            return ROOT;
+        }
+
+        /**
+         * Zwraca ścieżkę do pola obiektu.
+         *
+         * @param field Nazwa pola.
+         * @return Ścieżka do pola.
+         */
+        public Path field(String field) {
+            return new Path(this, field, -1);
+        }
+
+        /**
+         * Zwraca ścieżkę do elementu tablicy.
+         *
+         * @param index Indeks elementu.
+         * @return Ścieżka do elementu.
+         */
+        public Path index(int index) {
+            return new Path(this, null, index);
+        }
+
+        /**
+         * Zwraca ścieżkę w formacie JSON Pointer (RFC 6901), np. {@code /items/0/price}.
+         *
+         * @return Tekstowa postać ścieżki; pusty tekst dla korzenia.
+         */
+        @Override
+        public String toString() {
+            Deque<Path> segments = new ArrayDeque<>();
+            for (Path path = this; path.parent != null; path = path.parent) {
+                segments.push(path);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (Path segment : segments) {
+                builder.append('/');
+                if (segment.field == null) {
+                    builder.append(segment.index);
+                } else {
+                    builder.append(segment.field.replace("~", "~0").replace("/", "~1"));
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Wyznacza różnice między dwoma dokumentami.
+     *
+     * @param source Pierwszy dokument (stan oczekiwany).
+     * @param target Drugi dokument (stan właściwy).
+     * @return Lista różnic w kolejności, w jakiej należy je zastosować jako JSON Patch.
+     */
+    public static List<Difference> diff(JsonNode source, JsonNode target) {
+        return diff(source, JsonHashes.of(source), target, JsonHashes.of(target));
+    }
+
+    /**
+     * Wyznacza różnice między dwoma dokumentami, korzystając z wcześniej policzonych skrótów poddrzew.
+     *
+     * @param source Pierwszy dokument (stan oczekiwany).
+     * @param sourceHashes Skróty poddrzew pierwszego dokumentu.
+     * @param target Drugi dokument (stan właściwy).
+     * @param targetHashes Skróty poddrzew drugiego dokumentu.
+     * @return Lista różnic w kolejności, w jakiej należy je zastosować jako JSON Patch.
+     */
+    public static List<Difference> diff(JsonNode source, JsonHashes sourceHashes, JsonNode target, JsonHashes targetHashes) {
+        return diff(source, sourceHashes, target, targetHashes, Path.root());
+    }
+
+    /**
+     * Wyznacza różnice między dwoma fragmentami większych dokumentów, umieszczonymi pod wskazaną ścieżką.
+     *
+     * @param source Fragment pierwszego dokumentu.
+     * @param target Fragment drugiego dokumentu.
+     * @param path Ścieżka do fragmentów; ścieżki różnic zaczynają się od niej.
+     * @return Lista różnic w kolejności, w jakiej należy je zastosować jako JSON Patch.
+     */
+    public static List<Difference> diff(JsonNode source, JsonNode target, Path path) {
+        return diff(source, JsonHashes.of(source), target, JsonHashes.of(target), path);
+    }
+
+    private static List<Difference> diff(JsonNode source, JsonHashes sourceHashes, JsonNode target, JsonHashes targetHashes,
+                                         Path path) {
+        JsonDiff diff = new JsonDiff(sourceHashes, targetHashes);
+        if (!diff.same(source, target)) {
+            diff.compare(source, target, path);
+        }
+        while (!diff.tasks.isEmpty()) {
+            Task task = diff.tasks.pop();
+            if (task.source().isObject()) {
+                diff.compareObjects(task.source(), task.target(), task.path());
+            } else {
+                diff.compareArrays(task.source(), task.target(), task.path());
+            }
+        }
+        return diff.differences;
+    }
+
+    /**
+     * Zamienia listę różnic na dokument JSON Patch (RFC 6902).
+     *
+     * @param differences Lista różnic zwrócona przez {@link #diff(JsonNode, JsonNode)}.
+     * @return Tablica operacji JSON Patch.
+     */
+    public static ArrayNode toPatch(List<Difference> differences) {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        for (Difference difference : differences) {
+            ObjectNode operation = patch.addObject();
+            operation.put("op", difference.operation().patchName());
+            operation.put("path", difference.path().toString());
+            if (difference.operation() != Operation.REMOVE) {
+                operation.set("value", difference.newValue());
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * Stosuje JSON Patch złożony z operacji {@code add}, {@code remove} i {@code replace} (takich, jakie zwraca
+     * {@link #toPatch}) do kopii dokumentu.
+     *
+     * @param document Dokument źródłowy; nie jest modyfikowany.
+     * @param patch Tablica operacji JSON Patch.
+     * @return Nowy dokument po zastosowaniu wszystkich operacji.
+     * @throws IllegalArgumentException Jeśli operacja jest nieobsługiwana albo jej ścieżka nie istnieje w dokumencie.
+     */
+    public static JsonNode apply(JsonNode document, JsonNode patch) {
+        JsonNode result = document.deepCopy();
+        for (JsonNode operation : patch) {
+            String op = operation.path("op").asText();
+            JsonPointer pointer = JsonPointer.compile(operation.path("path").asText());
+            JsonNode value = operation.get("value");
+            if (pointer.matches()) {
+                if (op.equals("remove") || value == null) {
+                    throw new IllegalArgumentException("Nieprawidłowa operacja na korzeniu dokumentu: " + operation);
+                }
+                result = value.deepCopy();
+                continue;
+            }
+            JsonNode parent = result.at(pointer.head());
+            String field = pointer.last().getMatchingProperty();
+            if (parent instanceof ObjectNode object && (op.equals("add") || object.has(field))) {
+                switch (op) {
+                    case "add", "replace" -> object.set(FieldNames.canonical(field), required(value, operation).deepCopy());
+                    case "remove" -> object.remove(field);
+                    default -> throw new IllegalArgumentException("Nieobsługiwana operacja: " + operation);
+                }
+            } else if (parent instanceof ArrayNode array) {
+                int index = field.equals("-") ? array.size() : pointer.last().getMatchingIndex();
+                int size = op.equals("add") ? array.size() + 1 : array.size();
+                if (index < 0 || index >= size) {
+                    throw new IllegalArgumentException("Nieprawidłowy indeks: " + operation);
+                }
+                switch (op) {
+                    case "add" -> array.insert(index, required(value, operation).deepCopy());
+                    case "replace" -> array.set(index, required(value, operation).deepCopy());
+                    case "remove" -> array.remove(index);
+                    default -> throw new IllegalArgumentException("Nieobsługiwana operacja: " + operation);
+                }
+            } else {
+                throw new IllegalArgumentException("Ścieżka nie istnieje w dokumencie: " + operation);
+            }
+        }
+        return result;
+    }
+
+    private static JsonNode required(JsonNode value, JsonNode operation) {
+        if (value == null) {
+            throw new IllegalArgumentException("Brak wartości operacji: " + operation);
+        }
+        return value;
+    }
+
+    /**
+     * Sprawdza, czy poddrzewa są równe: różne skróty rozstrzygają od razu, a równe są potwierdzane porównaniem
+     * struktury ({@link JsonHashes#equal}).
+     *
+     * @param source Węzeł z pierwszego dokumentu.
+     * @param target Węzeł z drugiego dokumentu.
+     * @return {@code true}, jeśli poddrzewa są równe.
+     */
+    private boolean same(JsonNode source, JsonNode target) {
+        return JsonHashes.equal(source, sourceHashes, target, targetHashes);
+    }
+
+    /**
+     * Porównuje dwa węzły. Różne wartości proste lub węzły różnych typów są zapisywane od razu jako zamiana,
+     * a pary kontenerów trafiają na stos zadań. Ścieżka jest tworzona dopiero, gdy węzły okażą się różne.
+     * <p>Operacje kontenera są zapisywane przed operacjami jego potomków, a indeksy potomków w tablicach odnoszą
+     * się do stanu po wszystkich operacjach kontenera, więc kolejność przetwarzania zadań zachowuje poprawność
+     * wynikowego JSON Patch.</p>
+     *
+     * @param source Węzeł z pierwszego dokumentu.
+     * @param target Węzeł z drugiego dokumentu.
+     * @param parent Ścieżka do rodzica porównywanych węzłów.
+     * @param field Nazwa pola w rodzicu lub {@code null} dla elementu tablicy.
+     * @param index Indeks elementu w tablicy (gdy {@code field} jest {@code null}).
+     */
+    private void compare(JsonNode source, JsonNode target, Path parent, String field, int index) {
+        if (same(source, target)) {
+            return;
+        }
+        compare(source, target, field != null ? parent.field(field) : parent.index(index));
+    }
+
+    /**
+     * Zapisuje różnicę między dwoma różnymi węzłami lub planuje porównanie ich zawartości.
+     *
+     * @param source Węzeł z pierwszego dokumentu.
+     * @param target Węzeł z drugiego dokumentu.
+     * @param path Ścieżka do porównywanych węzłów.
+     */
+    private void compare(JsonNode source, JsonNode target, Path path) {
+        if ((source.isObject() && target.isObject()) || (source.isArray() && target.isArray())) {
+            tasks.push(new Task(source, target, path));
+        } else {
+            differences.add(new Difference(Operation.REPLACE, path, source, target));
+        }
+    }
+
+    /**
+     * Porównuje pola dwóch obiektów: usunięte, zmienione, a następnie dodane.
+     *
+     * @param source Obiekt z pierwszego dokumentu.
+     * @param target Obiekt z drugiego dokumentu.
+     * @param path Ścieżka do obiektów.
+     */
+    private void compareObjects(JsonNode source, JsonNode target, Path path) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode targetValue = target.get(field.getKey());
+            if (targetValue == null) {
+                differences.add(new Difference(Operation.REMOVE, path.field(field.getKey()), field.getValue(), null));
+            } else {
+                compare(field.getValue(), targetValue, path, field.getKey(), -1);
+            }
+        }
+        fields = target.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!source.has(field.getKey())) {
+                differences.add(new Difference(Operation.ADD, path.field(field.getKey()), null, field.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Porównuje dwie tablice, wyrównując elementy najdłuższym wspólnym podciągiem.
+     * <p>Wspólny początek i koniec tablic są pomijane przed wyznaczeniem LCS. Niedopasowane elementy pomiędzy
+     * kolejnymi dopasowaniami są łączone w pary (i porównywane), a nadmiarowe elementy są usuwane lub dodawane.
+     * Indeksy w ścieżkach uwzględniają wcześniejsze operacje, tak jak wymaga JSON Patch.</p>
+     *
+     * @param source Tablica z pierwszego dokumentu.
+     * @param target Tablica z drugiego dokumentu.
+     * @param path Ścieżka do tablic.
+     */
+    private void compareArrays(JsonNode source, JsonNode target, Path path) {
+        int sourceEnd = source.size();
+        int targetEnd = target.size();
+        int start = 0;
+        while (start < sourceEnd && start < targetEnd && same(source.get(start), target.get(start))) {
+            start++;
+        }
+        while (sourceEnd > start && targetEnd > start && same(source.get(sourceEnd - 1), target.get(targetEnd - 1))) {
+            sourceEnd--;
+            targetEnd--;
+        }
+        int[][] matches = align(source, start, sourceEnd, target, start, targetEnd);
+
+        int sourceIndex = start;
+        int targetIndex = start;
+        int position = start;
+        for (int[] match : matches) {
+            position = compareGap(source, sourceIndex, match[0], target, targetIndex, match[1], path, position);
+            sourceIndex = match[0] + 1;
+            targetIndex = match[1] + 1;
+            position++;
+        }
+        compareGap(source, sourceIndex, sourceEnd, target, targetIndex, targetEnd, path, position);
+    }
+
+    /**
+     * Zapisuje różnice dla niedopasowanego fragmentu tablic.
+     *
+     * @param source Tablica z pierwszego dokumentu.
+     * @param sourceFrom Początek fragmentu w pierwszej tablicy (włącznie).
+     * @param sourceTo Koniec fragmentu w pierwszej tablicy (wyłącznie).
+     * @param target Tablica z drugiego dokumentu.
+     * @param targetFrom Początek fragmentu w drugiej tablicy (włącznie).
+     * @param targetTo Koniec fragmentu w drugiej tablicy (wyłącznie).
+     * @param path Ścieżka do tablic.
+     * @param position Indeks początku fragmentu w tablicy po zastosowaniu wcześniejszych operacji.
+     * @return Indeks za fragmentem w tablicy po zastosowaniu operacji tego fragmentu.
+     */
+    private int compareGap(JsonNode source, int sourceFrom, int sourceTo, JsonNode target, int targetFrom, int targetTo,
+                           Path path, int position) {
+        int sourceLength = sourceTo - sourceFrom;
+        int targetLength = targetTo - targetFrom;
+        int paired = Math.min(sourceLength, targetLength);
+        for (int i = 0; i < paired; i++) {
+            compare(source.get(sourceFrom + i), target.get(targetFrom + i), path, null, position + i);
+        }
+        for (int i = paired; i < sourceLength; i++) {
+            differences.add(new Difference(Operation.REMOVE, path.index(position + paired), source.get(sourceFrom + i), null));
+        }
+        for (int i = paired; i < targetLength; i++) {
+            differences.add(new Difference(Operation.ADD, path.index(position + i), null, target.get(targetFrom + i)));
+        }
+        return position + targetLength;
+    }
+
+    /**
+     * Wyznacza pary indeksów elementów równych w obu tablicach (najdłuższy wspólny podciąg).
+     * <p>Elementy są najpierw zamieniane na identyfikatory klas równości (grupowane według skrótów poddrzew,
+     * a w obrębie skrótu rozróżniane porównaniem struktury), więc tablica LCS porównuje liczby, a nie całe poddrzewa. Jeśli tablica LCS przekroczyłaby {@link #MAX_LCS_CELLS}, zwracana
+     * jest pusta lista i elementy są porównywane po indeksach.</p>
+     *
+     * @return Pary {@code {indeksŹródła, indeksCelu}} w kolejności rosnącej.
+     */
+    private int[][] align(JsonNode source, int sourceFrom, int sourceTo, JsonNode target, int targetFrom, int targetTo) {
+        int n = sourceTo - sourceFrom;
+        int m = targetTo - targetFrom;
+        if (n == 0 || m == 0 || (long) (n + 1) * (m + 1) > MAX_LCS_CELLS) {
+            return new int[0][];
+        }
+        EqualityClasses classes = new EqualityClasses();
+        int[] a = new int[n];
+        int[] b = new int[m];
+        for (int i = 0; i < n; i++) {
+            a[i] = classes.id(source.get(sourceFrom + i), sourceHashes);
+        }
+        for (int j = 0; j < m; j++) {
+            b[j] = classes.id(target.get(targetFrom + j), targetHashes);
+        }
+        int[][] lengths = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lengths[i][j] = a[i] == b[j] ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        int[][] matches = new int[lengths[0][0]][];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (a[i] == b[j]) {
+                matches[count++] = new int[]{sourceFrom + i, targetFrom + j};
+                i++;
+                j++;
+            } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Klasy równości elementów tablic: grupowane według skrótu poddrzewa i rozróżniane w obrębie skrótu
+     * porównaniem struktury.
+     */
+    private static final class EqualityClasses {
+        private final Map<Long, List<Member>> byHash = new HashMap<>();
+        private int count;
+
+        /**
+         * Zwraca identyfikator klasy równości elementu, dodając nową klasę, jeśli element nie jest równy żadnemu
+         * wcześniejszemu elementowi o tym samym skrócie.
+         *
+         * @param node Element tablicy.
+         * @param hashes Skróty dokumentu, do którego należy element.
+         * @return Identyfikator klasy równości.
+         */
+        private int id(JsonNode node, JsonHashes hashes) {
+            List<Member> members = byHash.computeIfAbsent(hashes.get(node), hash -> new ArrayList<>(1));
+            for (Member member : members) {
+                if (JsonHashes.equal(member.node(), member.hashes(), node, hashes)) {
+                    return member.id();
+                }
+            }
+            members.add(new Member(node, hashes, count));
+            return count++;
+        }
+    }
+
+    /**
+     * Przedstawiciel klasy równości elementów tablic.
+     */
+    private record Member(JsonNode node, JsonHashes hashes, int id) {
+    }
+}
@@ -0,0 +1,185 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Skróty strukturalne wszystkich poddrzew dokumentu JSON.
+ * <p>
+ * Skróty są liczone w jednym przejściu od liści do korzenia, iteracyjnie (z jawnym stosem), więc głębokie
+ * zagnieżdżenie nie powoduje przepełnienia stosu wywołań. Równe poddrzewa (w sensie {@link JsonNode#equals})
+ * mają równe skróty; skrót obiektu nie zależy od kolejności pól, a skrót tablicy - zależy.
+ * </p>
+ * <p>
+ * Skróty wartości prostych i nazw pól są liczone 64-bitową funkcją z ich tekstu (nie z 32-bitowego
+ * {@code hashCode()}). Różne skróty dowodzą, że poddrzewa są różne, więc porównanie różnych poddrzew kończy się
+ * zwykle na porównaniu dwóch liczb. Równe skróty nie są jednak dowodem równości - {@link #equal} potwierdza ją
+ * porównaniem struktury, odrzucając po drodze pary dzieci o różnych skrótach.
+ * </p>
+ */
+public final class JsonHashes {
+    /**
+     * Znacznik na stosie oznaczający, że dzieci węzła leżącego pod nim zostały już przetworzone.
+     */
+    private static final JsonNode EXIT = MissingNode.getInstance();
+
+    private final Map<JsonNode, Long> hashes;
+
+    private JsonHashes(Map<JsonNode, Long> hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * Liczy skróty wszystkich poddrzew dokumentu.
+     *
+     * @param root Korzeń dokumentu.
+     * @return Skróty poddrzew dokumentu.
+     */
+    public static JsonHashes of(JsonNode root) {
+        Map<JsonNode, Long> hashes = new IdentityHashMap<>();
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            JsonNode node = stack.pop();
+            if (node == EXIT) {
+                node = stack.pop();
+                hashes.put(node, containerHash(node, hashes));
+            } else if (node.isContainerNode() && node.size() > 0) {
+                stack.push(node);
+                stack.push(EXIT);
+                for (JsonNode child : node) {
+                    stack.push(child);
+                }
+            } else if (node.isContainerNode()) {
+                hashes.put(node, containerHash(node, hashes));
+            } else {
+                hashes.put(node, mix(node.getNodeType().ordinal() * 0x9E3779B97F4A7C15L + hash(node.asText())));
+            }
+        }
+        return new JsonHashes(hashes);
+    }
+
+    /**
+     * Zwraca skrót poddrzewa.
+     *
+     * @param node Węzeł należący do dokumentu, dla którego policzono skróty.
+     * @return Skrót poddrzewa o korzeniu w danym węźle.
+     */
+    public long get(JsonNode node) {
+        return hashes.get(node);
+    }
+
+    /**
+     * Zwraca liczbę różnych węzłów w dokumencie.
+     *
+     * @return Liczba węzłów.
+     */
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Sprawdza, czy dwa poddrzewa są równe (w sensie {@link JsonNode#equals}). Różne skróty kończą porównanie
+     * od razu, a przy równych skrótach struktura jest porównywana iteracyjnie (z jawnym stosem), z odrzucaniem
+     * par dzieci o różnych skrótach.
+     *
+     * @param source Węzeł pierwszego dokumentu.
+     * @param sourceHashes Skróty poddrzew pierwszego dokumentu.
+     * @param target Węzeł drugiego dokumentu.
+     * @param targetHashes Skróty poddrzew drugiego dokumentu.
+     * @return {@code true}, jeśli poddrzewa są równe.
+     */
+    public static boolean equal(JsonNode source, JsonHashes sourceHashes, JsonNode target, JsonHashes targetHashes) {
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(target);
+        stack.push(source);
+        while (!stack.isEmpty()) {
+            JsonNode first = stack.pop();
+            JsonNode second = stack.pop();
+            if (first == second) {
+                continue;
+            }
+            if (sourceHashes.get(first) != targetHashes.get(second) || first.getNodeType() != second.getNodeType()
+                    || first.size() != second.size()) {
+                return false;
+            }
+            if (first.isObject()) {
+                Iterator<Map.Entry<String, JsonNode>> fields = first.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    JsonNode value = second.get(field.getKey());
+                    if (value == null) {
+                        return false;
+                    }
+                    stack.push(value);
+                    stack.push(field.getValue());
+                }
+            } else if (first.isArray()) {
+                for (int i = 0; i < first.size(); i++) {
+                    stack.push(second.get(i));
+                    stack.push(first.get(i));
+                }
+            } else if (!first.equals(second)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Liczy skrót kontenera ze skrótów jego dzieci, które są już policzone.
+     *
+     * @param node Obiekt lub tablica JSON.
+     * @param hashes Policzone dotąd skróty.
+     * @return Skrót kontenera.
+     */
+    private static long containerHash(JsonNode node, Map<JsonNode, Long> hashes) {
+        long hash;
+        if (node.isObject()) {
+            hash = 0x6A09E667F3BCC908L;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                hash += mix(hash(field.getKey()) * 0xC2B2AE3D27D4EB4FL ^ hashes.get(field.getValue()));
+            }
+        } else {
+            hash = 0xBB67AE8584CAA73BL;
+            for (JsonNode child : node) {
+                hash = hash * 31 + hashes.get(child);
+            }
+        }
+        return mix(hash + node.size());
+    }
+
+    /**
+     * Liczy 64-bitowy skrót napisu (FNV-1a po znakach UTF-16).
+     *
+     * @param text Napis.
+     * @return Skrót napisu.
+     */
+    static long hash(String text) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash + text.length());
+    }
+
+    /**
+     * Miesza bity skrótu (funkcja końcowa SplitMix64).
+     *
+     * @param value Wartość wejściowa.
+     * @return Wymieszana wartość.
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,538 @@
+package pl.put.poznan.transformer.logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Asynchroniczne zadania przetwarzania bardzo dużych dokumentów, z wynikami zapisywanymi na dysk.
+ * <p>
+ * Zadanie dostaje identyfikator od razu po przyjęciu, a przetwarzanie odbywa się w ograniczonej puli wątków,
+ * więc długie operacje nie zajmują połączenia HTTP ani wątku kontenera. Dokumenty przesłane w treści żądania są
+ * najpierw kopiowane do pliku tymczasowego (treść żądania nie jest dostępna po jego zakończeniu); pliki lokalne
+ * są czytane bezpośrednio, ale tylko z katalogu wskazanego w konfiguracji. Wynik jest zapisywany do pliku
+ * w katalogu zadań, a nie do pamięci, i można go pobrać jako strumień.
+ * </p>
+ * <p>
+ * Postęp zadania to liczba bajtów wejścia odczytanych przez procesor (wejście czytane jako taśma {@link JsonTape}
+ * jest liczone w całości po jej zbudowaniu). Liczba zadań oczekujących i wykonywanych
+ * jest ograniczona - nadmiarowe zadanie jest odrzucane jeszcze przed skopiowaniem treści. Zadania zakończone
+ * są usuwane razem z plikami po upływie czasu życia, liczonego od zakończenia.
+ * </p>
+ * <p>
+ * Wszystkie metody są bezpieczne wątkowo.
+ * </p>
+ */
+public final class JsonJobs implements Closeable {
+    private final Path directory;
+    private final boolean temporaryDirectory;
+    private final Path inputDirectory;
+    private final int capacity;
+    private final long ttlMillis;
+    private final BiConsumer<String, Throwable> failures;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Stan zadania.
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * Stan zadania widoczny dla klienta.
+     *
+     * @param id Identyfikator zadania.
+     * @param operation Nazwa operacji, np. {@code prettify}.
+     * @param state Stan zadania.
+     * @param bytesProcessed Liczba bajtów wejścia odczytanych przez procesor.
+     * @param bytesTotal Łączny rozmiar wejścia w bajtach.
+     * @param resultBytes Rozmiar zapisanego wyniku w bajtach.
+     * @param error Komunikat o błędzie, jeśli zadanie się nie powiodło.
+     */
+    public record Status(String id, String operation, State state, long bytesProcessed, long bytesTotal,
+                         long resultBytes, String error) {
+    }
+
+    /**
+     * Liczniki zadań.
+     *
+     * @param pending Liczba zadań oczekujących i wykonywanych.
+     * @param completed Liczba zadań zakończonych powodzeniem.
+     * @param failed Liczba zadań zakończonych błędem.
+     * @param diskBytes Łączny rozmiar plików zadań (kopii wejścia i wyników) w bajtach.
+     */
+    public record Stats(int pending, long completed, long failed, long diskBytes) {
+    }
+
+    /**
+     * Wejście zadania: dokument w treści żądania albo ścieżka pliku lokalnego.
+     *
+     * @param body Strumień z dokumentem (kopiowany do pliku tymczasowego przy przyjęciu zadania) lub {@code null}.
+     * @param path Ścieżka pliku względem katalogu plików wejściowych lub {@code null}.
+     */
+    public record Source(InputStream body, String path) {
+        /**
+         * Wejście z treści żądania.
+         *
+         * @param body Strumień z dokumentem.
+         * @return Wejście zadania.
+         */
+        public static Source body(InputStream body) {
+            return new Source(body, null);
+        }
+
+        /**
+         * Wejście z pliku lokalnego.
+         *
+         * @param path Ścieżka pliku względem katalogu plików wejściowych.
+         * @return Wejście zadania.
+         */
+        public static Source file(String path) {
+            return new Source(null, path);
+        }
+    }
+
+    /**
+     * Przetwarzanie wykonywane przez zadanie.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Przetwarza wejścia i zapisuje wynik.
+         *
+         * @param inputs Wejścia, w kolejności podanej przy przyjęciu zadania.
+         * @param output Strumień pliku wyniku.
+         * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub dokument jest nieprawidłowy.
+         */
+        void run(List<Input> inputs, OutputStream output) throws IOException;
+    }
+
+    /**
+     * Plik wejściowy wykonywanego zadania (kopia treści żądania albo plik lokalny). Zadanie czyta go strumieniem
+     * albo - dla bardzo dużych dokumentów JSON - jako taśmę {@link JsonTape} odwzorowaną z pliku w pamięci.
+     */
+    public static final class Input {
+        private final Path path;
+        private final AtomicLong processed;
+        private InputStream stream;
+
+        private Input(Path path, AtomicLong processed) {
+            this.path = path;
+            this.processed = processed;
+        }
+
+        /**
+         * Zwraca strumień wejścia; odczytane bajty są liczone jako postęp zadania. Strumień zamyka zadanie.
+         *
+         * @return Strumień wejścia (ten sam przy kolejnych wywołaniach).
+         * @throws IOException Jeśli nie udało się otworzyć pliku.
+         */
+        public InputStream stream() throws IOException {
+            if (stream == null) {
+                stream = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)), processed);
+            }
+            return stream;
+        }
+
+        /**
+         * Buduje taśmę dokumentu z pliku odwzorowanego w pamięci; cały plik jest liczony jako postęp zadania.
+         *
+         * @return Taśma dokumentu.
+         * @throws IOException Jeśli nie udało się odczytać pliku, jest on większy niż 2 GB lub dokument jest
+         *                     nieprawidłowy.
+         */
+        public JsonTape tape() throws IOException {
+            JsonTape tape = JsonTape.map(path);
+            processed.addAndGet(Files.size(path));
+            return tape;
+        }
+
+        private void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Konstruktor klasy JsonJobs.
+     *
+     * @param directory Katalog plików zadań lub {@code null} dla nowego katalogu tymczasowego.
+     * @param inputDirectory Katalog, z którego można czytać pliki lokalne, lub {@code null}, jeśli zadania mogą
+     *                       przetwarzać tylko treść żądań.
+     * @param threads Liczba wątków wykonujących zadania.
+     * @param capacity Maksymalna liczba zadań oczekujących i wykonywanych jednocześnie.
+     * @param ttlMillis Czas przechowywania zakończonego zadania i jego wyniku w milisekundach.
+     * @param failures Powiadamiany o każdym zadaniu zakończonym błędem (nazwa operacji i wyjątek).
+     * @throws IOException Jeśli nie udało się utworzyć katalogu zadań lub katalog plików wejściowych nie istnieje.
+     */
+    public JsonJobs(Path directory, Path inputDirectory, int threads, int capacity, long ttlMillis,
+                    BiConsumer<String, Throwable> failures) throws IOException {
+        if (threads <= 0 || capacity < threads || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Nieprawidłowa konfiguracja zadań");
+        }
+        this.temporaryDirectory = directory == null;
+        this.directory = temporaryDirectory ? Files.createTempDirectory("json-jobs") : Files.createDirectories(directory);
+        this.inputDirectory = inputDirectory == null ? null : inputDirectory.toRealPath();
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.failures = failures;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "json-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json-job-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, ttlMillis / 4);
+        cleaner.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Przyjmuje nowe zadanie: kopiuje dokumenty z treści żądania na dysk i kolejkuje przetwarzanie.
+     *
+     * @param operation Nazwa operacji (widoczna w stanie zadania i przekazywana przy błędzie).
+     * @param sources Wejścia zadania.
+     * @param task Przetwarzanie wejść.
+     * @param error Komunikat o błędzie widoczny w stanie zadania, jeśli przetwarzanie się nie powiedzie.
+     * @return Stan przyjętego zadania.
+     * @throws RejectedExecutionException Jeśli osiągnięto limit zadań.
+     * @throws IllegalArgumentException Jeśli ścieżka pliku lokalnego jest niedozwolona.
+     * @throws IOException Jeśli nie udało się skopiować treści żądania, któreś z wejść jest puste lub plik lokalny
+     *                     nie istnieje.
+     */
+    public Status submit(String operation, List<Source> sources, Task task, String error) throws IOException {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Osiągnięto limit zadań");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), operation, task, error);
+        try {
+            for (Source source : sources) {
+                if (source.body() == null) {
+                    job.inputs.add(local(source.path()));
+                    continue;
+                }
+                InputFile input = new InputFile(directory.resolve(job.id + "." + job.inputs.size() + ".in"), true);
+                job.inputs.add(input);
+                Files.copy(source.body(), input.path());
+            }
+            for (InputFile input : job.inputs) {
+                long size = Files.size(input.path());
+                if (size == 0) {
+                    throw new IOException("Brak dokumentu wejściowego");
+                }
+                job.total += size;
+            }
+            jobs.put(job.id, job);
+            job.future = workers.submit(job);
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(job.id);
+            job.release();
+            throw e;
+        }
+        return job.status();
+    }
+
+    /**
+     * Zwraca stan zadania.
+     *
+     * @param id Identyfikator zadania.
+     * @return Stan zadania.
+     * @throws NoSuchElementException Jeśli zadanie nie istnieje (lub zostało już usunięte).
+     */
+    public Status status(String id) {
+        return job(id).status();
+    }
+
+    /**
+     * Otwiera wynik zakończonego zadania do odczytu.
+     *
+     * @param id Identyfikator zadania.
+     * @return Strumień z wynikiem (zamykany przez wywołującego).
+     * @throws NoSuchElementException Jeśli zadanie nie istnieje.
+     * @throws IllegalStateException Jeśli zadanie nie zakończyło się powodzeniem.
+     * @throws IOException Jeśli nie udało się otworzyć pliku wyniku (np. usuniętego w międzyczasie).
+     */
+    public InputStream result(String id) throws IOException {
+        Job job = job(id);
+        if (job.state != State.DONE) {
+            throw new IllegalStateException("Zadanie nie jest zakończone: " + job.state);
+        }
+        try {
+            return Files.newInputStream(job.resultPath());
+        } catch (NoSuchFileException e) {
+            throw new NoSuchElementException(id);
+        }
+    }
+
+    /**
+     * Usuwa zadanie i jego pliki, przerywając je, jeśli jeszcze trwa.
+     *
+     * @param id Identyfikator zadania.
+     * @return Czy zadanie istniało.
+     */
+    public boolean remove(String id) {
+        Job job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.future != null && job.future.cancel(true)) {
+            job.release();
+        }
+        delete(job.resultPath());
+        return true;
+    }
+
+    /**
+     * Usuwa zadania zakończone dawniej niż czas życia. Wywoływana okresowo.
+     */
+    public void expire() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt == 0 || now - job.finishedAt < ttlMillis) {
+                return false;
+            }
+            delete(job.resultPath());
+            return true;
+        });
+    }
+
+    /**
+     * Zwraca liczniki zadań.
+     *
+     * @return Liczniki zadań i rozmiar ich plików.
+     */
+    public Stats stats() {
+        long diskBytes = 0;
+        for (Job job : jobs.values()) {
+            diskBytes += job.resultBytes();
+            for (InputFile input : job.inputs) {
+                if (input.temporary()) {
+                    diskBytes += input.size();
+                }
+            }
+        }
+        return new Stats(pending.get(), completed.get(), failed.get(), diskBytes);
+    }
+
+    /**
+     * Przerywa wszystkie zadania i usuwa ich pliki (oraz katalog tymczasowy, jeśli został utworzony przez tę klasę).
+     */
+    @Override
+    public void close() {
+        cleaner.shutdownNow();
+        workers.shutdownNow();
+        for (String id : List.copyOf(jobs.keySet())) {
+            remove(id);
+        }
+        if (temporaryDirectory) {
+            delete(directory);
+        }
+    }
+
+    private Job job(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new NoSuchElementException(id);
+        }
+        return job;
+    }
+
+    /**
+     * Sprawdza, czy plik lokalny leży w katalogu plików wejściowych (także po rozwinięciu dowiązań).
+     */
+    private InputFile local(String path) throws IOException {
+        if (inputDirectory == null) {
+            throw new IllegalArgumentException("Przetwarzanie plików lokalnych jest wyłączone");
+        }
+        Path file = inputDirectory.resolve(path).toRealPath();
+        if (!file.startsWith(inputDirectory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Niedozwolona ścieżka pliku: " + path);
+        }
+        return new InputFile(file, false);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // plik zostanie w katalogu zadań; nie wpływa to na inne zadania
+        }
+    }
+
+    /**
+     * Plik wejściowy zadania.
+     *
+     * @param path Ścieżka pliku.
+     * @param temporary Czy plik jest kopią treści żądania, usuwaną po zakończeniu zadania.
+     */
+    private record InputFile(Path path, boolean temporary) {
+        private long size() {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Zadanie w kolejce. Pola zmieniane przez wątek roboczy są ulotne, bo stan czytają wątki żądań.
+     */
+    private final class Job implements Runnable {
+        private final String id;
+        private final String operation;
+        private final Task task;
+        private final String error;
+        private final List<InputFile> inputs = new ArrayList<>();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicInteger released = new AtomicInteger();
+        private long total;
+        private volatile State state = State.QUEUED;
+        private volatile long finishedAt;
+        private volatile Future<?> future;
+
+        private Job(String id, String operation, Task task, String error) {
+            this.id = id;
+            this.operation = operation;
+            this.task = task;
+            this.error = error;
+        }
+
+        @Override
+        public void run() {
+            state = State.RUNNING;
+            List<Input> opened = new ArrayList<>();
+            try {
+                try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(resultPath()))) {
+                    for (InputFile input : inputs) {
+                        opened.add(new Input(input.path(), processed));
+                    }
+                    task.run(opened, output);
+                } finally {
+                    for (Input input : opened) {
+                        input.close();
+                    }
+                }
+                completed.incrementAndGet();
+                state = State.DONE;
+            } catch (IOException | RuntimeException e) {
+                delete(resultPath());
+                failed.incrementAndGet();
+                state = State.FAILED;
+                if (jobs.containsKey(id)) {
+                    failures.accept(operation, e);
+                }
+            } finally {
+                finishedAt = System.currentTimeMillis();
+                release();
+                if (!jobs.containsKey(id)) {
+                    // zadanie usunięte w trakcie przetwarzania
+                    delete(resultPath());
+                }
+            }
+        }
+
+        /**
+         * Zwalnia miejsce w limicie zadań i usuwa kopie treści żądania (tylko raz).
+         */
+        private void release() {
+            if (released.getAndIncrement() == 0) {
+                pending.decrementAndGet();
+                for (InputFile input : inputs) {
+                    if (input.temporary()) {
+                        delete(input.path());
+                    }
+                }
+            }
+        }
+
+        private Path resultPath() {
+            return directory.resolve(id + ".out");
+        }
+
+        private long resultBytes() {
+            try {
+                return state == State.QUEUED ? 0 : Files.size(resultPath());
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private Status status() {
+            State current = state;
+            return new Status(id, operation, current, current == State.DONE ? total : processed.get(), total,
+                    resultBytes(), current == State.FAILED ? error : null);
+        }
+    }
+
+    /**
+     * Strumień liczący bajty odczytane przez procesor jako postęp zadania.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong processed;
+
+        private CountingInputStream(InputStream input, AtomicLong processed) {
+            super(input);
+            this.processed = processed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                processed.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                processed.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            processed.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
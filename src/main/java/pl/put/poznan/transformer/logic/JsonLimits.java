@@ -0,0 +1,270 @@
+package pl.put.poznan.transformer.logic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Limity rozmiaru i struktury dokumentu JSON, sprawdzane w trakcie odczytu.
+ * <p>
+ * Limity są sprawdzane przez {@link Scanner} bezpośrednio na bajtach treści, zanim trafią do parsera, więc
+ * dokument jest odrzucany w chwili przekroczenia progu - bez buforowania reszty treści i niezależnie od tego,
+ * czy jest potem parsowany strumieniowo, czy do drzewa. Chroni to przed dokumentami, które przy małym rozmiarze
+ * są kosztowne w przetwarzaniu: bardzo głębokim zagnieżdżeniem (rekurencja przy budowaniu drzewa), bardzo długimi
+ * liczbami (kwadratowy koszt konwersji na {@code BigInteger}/{@code BigDecimal}) i napisami.
+ * </p>
+ * <p>
+ * Wartość {@code 0} oznacza brak danego limitu.
+ * </p>
+ *
+ * @param maxBytes Największy rozmiar treści w bajtach.
+ * @param maxDepth Największa głębokość zagnieżdżenia obiektów i tablic.
+ * @param maxStringBytes Największa długość napisu (także nazwy pola) w bajtach, przed zdekodowaniem sekwencji ucieczki.
+ * @param maxNumberLength Największa długość liczby (i innej wartości prostej poza napisem) w znakach.
+ * @param maxTokens Największa liczba tokenów: wartości, nazw pól i początków obiektów oraz tablic.
+ */
+public record JsonLimits(long maxBytes, int maxDepth, int maxStringBytes, int maxNumberLength, long maxTokens) {
+    /**
+     * Brak jakichkolwiek limitów.
+     */
+    public static final JsonLimits UNLIMITED = new JsonLimits(0, 0, 0, 0, 0);
+
+    /**
+     * Sprawdza poprawność limitów.
+     *
+     * @throws IllegalArgumentException Jeśli któryś z limitów jest ujemny.
+     */
+    public JsonLimits {
+        if (maxBytes < 0 || maxDepth < 0 || maxStringBytes < 0 || maxNumberLength < 0 || maxTokens < 0) {
+            throw new IllegalArgumentException("Limity nie mogą być ujemne");
+        }
+    }
+
+    /**
+     * Odczytuje limity z listy opcji rozdzielonych przecinkami, np. {@code body=16777216,depth=1000}.
+     * <p>Obsługiwane opcje: {@code body}, {@code depth}, {@code string}, {@code number} i {@code tokens}.
+     * Pominięte opcje mają wartości z podanych limitów domyślnych.</p>
+     *
+     * @param options Opcje limitów (może być pusty).
+     * @param defaults Limity domyślne.
+     * @return Limity.
+     * @throws IllegalArgumentException Jeśli opcja jest nieznana lub ma niepoprawną wartość.
+     */
+    public static JsonLimits parse(String options, JsonLimits defaults) {
+        long maxBytes = defaults.maxBytes();
+        int maxDepth = defaults.maxDepth();
+        int maxStringBytes = defaults.maxStringBytes();
+        int maxNumberLength = defaults.maxNumberLength();
+        long maxTokens = defaults.maxTokens();
+        for (String option : options.split(",")) {
+            option = option.trim();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int separator = option.indexOf('=');
+            String name = separator < 0 ? option : option.substring(0, separator).trim();
+            String value = separator < 0 ? null : option.substring(separator + 1).trim();
+            switch (name) {
+                case "body" -> maxBytes = number(option, value, Long.MAX_VALUE);
+                case "depth" -> maxDepth = (int) number(option, value, Integer.MAX_VALUE);
+                case "string" -> maxStringBytes = (int) number(option, value, Integer.MAX_VALUE);
+                case "number" -> maxNumberLength = (int) number(option, value, Integer.MAX_VALUE);
+                case "tokens" -> maxTokens = number(option, value, Long.MAX_VALUE);
+                default -> throw new IllegalArgumentException("Nieznany limit: " + option);
+            }
+        }
+        return new JsonLimits(maxBytes, maxDepth, maxStringBytes, maxNumberLength, maxTokens);
+    }
+
+    /**
+     * Odczytuje nieujemną liczbę z wartości opcji.
+     */
+    private static long number(String option, String value, long max) {
+        try {
+            long number = Long.parseLong(String.valueOf(value));
+            if (number >= 0 && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+            // zgłaszane poniżej
+        }
+        throw new IllegalArgumentException("Nieprawidłowa wartość limitu: " + option);
+    }
+
+    /**
+     * Tworzy nowy obiekt sprawdzający jeden dokument (lub strumień dokumentów, np. NDJSON).
+     *
+     * @param structure Czy sprawdzać strukturę JSON-a; bez tego sprawdzany jest tylko rozmiar (np. dla formatów
+     *                  binarnych).
+     * @return Obiekt sprawdzający limity.
+     */
+    public Scanner scanner(boolean structure) {
+        return new Scanner(this, structure);
+    }
+
+    /**
+     * Sprawdza limity dla dokumentu w postaci tekstowej.
+     *
+     * @param json Dokument JSON.
+     * @throws LimitExceededException Jeśli dokument przekracza któryś z limitów.
+     */
+    public void check(String json) throws LimitExceededException {
+        if (!equals(UNLIMITED) && json != null) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            scanner(true).update(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Wyjątek zgłaszany po przekroczeniu limitu. Jest wyjątkiem wejścia/wyjścia, więc przerywa odczyt treści
+     * tak samo jak błąd połączenia.
+     */
+    public static final class LimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final String limit;
+
+        private LimitExceededException(String limit, long value) {
+            super("Przekroczono limit " + limit + " (" + value + ")");
+            this.limit = limit;
+        }
+
+        /**
+         * Zwraca nazwę przekroczonego limitu.
+         *
+         * @return {@code body}, {@code depth}, {@code string}, {@code number} lub {@code tokens}.
+         */
+        public String limit() {
+            return limit;
+        }
+    }
+
+    /**
+     * Sprawdza limity na kolejnych porcjach bajtów dokumentu.
+     * <p>Rozpoznaje tylko tyle składni, ile potrzeba do liczenia zagnieżdżenia, długości wartości i tokenów
+     * (napisy z sekwencjami ucieczki, nawiasy, separatory) - poprawność dokumentu sprawdza dopiero parser.
+     * Obiekt przechowuje stan jednego strumienia i nie jest bezpieczny wątkowo.</p>
+     */
+    public static final class Scanner {
+        private static final int OUTSIDE = 0;
+        private static final int STRING = 1;
+        private static final int ESCAPE = 2;
+        private static final int SCALAR = 3;
+
+        private final JsonLimits limits;
+        private final boolean structure;
+        private long bytes;
+        private long tokens;
+        private int depth;
+        private int length;
+        private int state = OUTSIDE;
+
+        private Scanner(JsonLimits limits, boolean structure) {
+            this.limits = limits;
+            this.structure = structure;
+        }
+
+        /**
+         * Sprawdza kolejną porcję bajtów.
+         *
+         * @param buffer Bufor z bajtami.
+         * @param offset Początek porcji w buforze.
+         * @param count Liczba bajtów porcji.
+         * @throws LimitExceededException Jeśli dotychczasowa treść przekracza któryś z limitów.
+         */
+        public void update(byte[] buffer, int offset, int count) throws LimitExceededException {
+            if (count <= 0) {
+                return;
+            }
+            count(count);
+            if (structure) {
+                for (int i = offset; i < offset + count; i++) {
+                    step(buffer[i]);
+                }
+            }
+        }
+
+        /**
+         * Sprawdza kolejny bajt.
+         *
+         * @param b Bajt treści.
+         * @throws LimitExceededException Jeśli dotychczasowa treść przekracza któryś z limitów.
+         */
+        public void update(int b) throws LimitExceededException {
+            count(1);
+            if (structure) {
+                step((byte) b);
+            }
+        }
+
+        private void count(int count) throws LimitExceededException {
+            bytes += count;
+            if (bytes > limits.maxBytes && limits.maxBytes > 0) {
+                throw new LimitExceededException("body", limits.maxBytes);
+            }
+        }
+
+        private void step(byte c) throws LimitExceededException {
+            switch (state) {
+                case STRING -> {
+                    if (c == '"') {
+                        state = OUTSIDE;
+                        return;
+                    }
+                    if (c == '\\') {
+                        state = ESCAPE;
+                    }
+                    string();
+                }
+                case ESCAPE -> {
+                    state = STRING;
+                    string();
+                }
+                default -> {
+                    switch (c) {
+                        case '"' -> {
+                            token();
+                            state = STRING;
+                            length = 0;
+                        }
+                        case '{', '[' -> {
+                            token();
+                            state = OUTSIDE;
+                            if (++depth > limits.maxDepth && limits.maxDepth > 0) {
+                                throw new LimitExceededException("depth", limits.maxDepth);
+                            }
+                        }
+                        case '}', ']' -> {
+                            state = OUTSIDE;
+                            if (depth > 0) {
+                                depth--;
+                            }
+                        }
+                        case ' ', '\t', '\n', '\r', ',', ':' -> state = OUTSIDE;
+                        default -> {
+                            if (state != SCALAR) {
+                                token();
+                                state = SCALAR;
+                                length = 0;
+                            }
+                            if (++length > limits.maxNumberLength && limits.maxNumberLength > 0) {
+                                throw new LimitExceededException("number", limits.maxNumberLength);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void string() throws LimitExceededException {
+            if (++length > limits.maxStringBytes && limits.maxStringBytes > 0) {
+                throw new LimitExceededException("string", limits.maxStringBytes);
+            }
+        }
+
+        private void token() throws LimitExceededException {
+            if (++tokens > limits.maxTokens && limits.maxTokens > 0) {
+                throw new LimitExceededException("tokens", limits.maxTokens);
+            }
+        }
+    }
+}
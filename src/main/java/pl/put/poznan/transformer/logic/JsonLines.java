@@ -0,0 +1,276 @@
+package pl.put.poznan.transformer.logic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Przetwarzanie wsadowe w formacie NDJSON (JSON Lines).
+ * <p>
+ * Każda niepusta linia wejścia jest osobnym dokumentem JSON. Linie kończy znak {@code \n} (końcowy {@code \r} jest
+ * pomijany, a samotny {@code \r} należy do rekordu) - tak samo w trybie sekwencyjnym i równoległym. Linie są
+ * czytane kolejno ze strumienia, przetwarzane procesorem i od razu zapisywane do strumienia wyjściowego, więc
+ * w pamięci jest tylko bieżący rekord. Każdemu rekordowi wejściowemu odpowiada dokładnie jeden rekord wyjściowy,
+ * w tej samej kolejności; jeśli rekordu nie udało się przetworzyć, w jego miejscu zapisywany jest obiekt
+ * {@code {"line": N, "error": "..."}}, a przetwarzanie pozostałych rekordów trwa dalej.
+ * </p>
+ * <p>
+ * Rekordy wyjściowe są rozdzielane znakiem nowej linii. Procesory formatujące wielowierszowo (np. {@link Prettify})
+ * dają więc poprawny strumień dokumentów JSON, ale nie ściśle NDJSON.
+ * </p>
+ * <p>
+ * W trybie równoległym wejście jest dzielone na bloki (ok. {@value #CHUNK_SIZE} bajtów) na granicach linii, bloki
+ * są przetwarzane przez pulę wątków, a ich wyniki zapisywane w kolejności wejścia. Procesor musi wtedy być
+ * bezpieczny wątkowo (dotyczy to wszystkich procesorów z tego pakietu).
+ * </p>
+ */
+public final class JsonLines {
+    /**
+     * Typ MIME formatu NDJSON.
+     */
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * Docelowy rozmiar bloku w trybie równoległym (w bajtach).
+     */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Podsumowanie przetwarzania wsadowego.
+     *
+     * @param records Liczba przetworzonych rekordów (niepustych linii).
+     * @param errors Liczba rekordów, których nie udało się przetworzyć.
+     */
+    public record Summary(long records, long errors) {
+    }
+
+    /**
+     * Wynik przetworzenia jednego bloku w trybie równoległym.
+     */
+    private record Batch(byte[] output, long records, long errors) {
+    }
+
+    private JsonLines() {
+    }
+
+    /**
+     * Przetwarza strumień NDJSON rekord po rekordzie.
+     * <p>Strumienie nie są zamykane - należą do wywołującego.</p>
+     *
+     * @param processor Procesor JSON stosowany do każdego rekordu.
+     * @param input Strumień NDJSON (UTF-8).
+     * @param output Strumień, do którego zapisywane są wyniki (UTF-8), po jednym na rekord.
+     * @param error Komunikat o błędzie zapisywany dla rekordów, których nie udało się przetworzyć.
+     * @return Podsumowanie przetwarzania.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub zapisu strumienia.
+     */
+    public static Summary process(JsonProcessor processor, InputStream input, OutputStream output, String error)
+            throws IOException {
+        LineReader reader = new LineReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long records = 0;
+        long errors = 0;
+        long lineNumber = 0;
+        for (String line = reader.next(); line != null; line = reader.next()) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            records++;
+            String result = process(processor, line);
+            if (result == null) {
+                errors++;
+                result = error(lineNumber, error);
+            }
+            writer.write(result);
+            writer.write('\n');
+        }
+        writer.flush();
+        return new Summary(records, errors);
+    }
+
+    /**
+     * Przetwarza strumień NDJSON równolegle, zachowując kolejność rekordów.
+     * <p>Wątek wywołujący czyta wejście i dzieli je na bloki na granicach linii; bloki są przetwarzane przez
+     * podaną pulę wątków, a wyniki zapisywane w kolejności wejścia. W toku jest co najwyżej kilka bloków na rdzeń,
+     * więc zużycie pamięci nie zależy od rozmiaru wejścia. Strumienie nie są zamykane - należą do wywołującego.</p>
+     *
+     * @param processor Bezpieczny wątkowo procesor JSON stosowany do każdego rekordu.
+     * @param input Strumień NDJSON (UTF-8).
+     * @param output Strumień, do którego zapisywane są wyniki (UTF-8), po jednym na rekord.
+     * @param error Komunikat o błędzie zapisywany dla rekordów, których nie udało się przetworzyć.
+     * @param executor Pula wątków przetwarzających bloki.
+     * @return Podsumowanie przetwarzania.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub zapisu strumienia.
+     */
+    public static Summary process(JsonProcessor processor, InputStream input, OutputStream output, String error,
+                                  ExecutorService executor) throws IOException {
+        long[] totals = new long[2];
+        OrderedTasks<Batch> tasks = new OrderedTasks<>(executor, WINDOW, batch -> {
+            output.write(batch.output());
+            totals[0] += batch.records();
+            totals[1] += batch.errors();
+        });
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int length = 0;
+        long lineNumber = 1;
+        while (true) {
+            length += input.readNBytes(buffer, length, buffer.length - length);
+            boolean eof = length < buffer.length;
+            int end = eof ? length : lastLineEnd(buffer, length);
+            if (end == 0 && !eof) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                continue;
+            }
+            if (end > 0) {
+                byte[] chunk = Arrays.copyOf(buffer, end);
+                long firstLine = lineNumber;
+                for (byte b : chunk) {
+                    if (b == '\n') {
+                        lineNumber++;
+                    }
+                }
+                tasks.submit(() -> process(processor, chunk, firstLine, error));
+            }
+            if (eof) {
+                break;
+            }
+            length -= end;
+            System.arraycopy(buffer, end, buffer, 0, length);
+        }
+        tasks.finish();
+        output.flush();
+        return new Summary(totals[0], totals[1]);
+    }
+
+    /**
+     * Przetwarza blok linii w jednym wątku puli.
+     *
+     * @param processor Procesor JSON.
+     * @param chunk Blok zakończony znakiem nowej linii lub końcem wejścia.
+     * @param lineNumber Numer pierwszej linii bloku.
+     * @param error Komunikat o błędzie dla błędnych rekordów.
+     * @return Wyniki rekordów bloku.
+     */
+    private static Batch process(JsonProcessor processor, byte[] chunk, long lineNumber, String error) {
+        StringBuilder output = new StringBuilder(chunk.length);
+        long records = 0;
+        long errors = 0;
+        for (int start = 0; start < chunk.length; lineNumber++) {
+            int end = start;
+            while (end < chunk.length && chunk[end] != '\n') {
+                end++;
+            }
+            int lineEnd = end > start && chunk[end - 1] == '\r' ? end - 1 : end;
+            String line = new String(chunk, start, lineEnd - start, StandardCharsets.UTF_8);
+            start = end + 1;
+            if (line.isBlank()) {
+                continue;
+            }
+            records++;
+            String result = process(processor, line);
+            if (result == null) {
+                errors++;
+                result = error(lineNumber, error);
+            }
+            output.append(result).append('\n');
+        }
+        return new Batch(output.toString().getBytes(StandardCharsets.UTF_8), records, errors);
+    }
+
+    /**
+     * Przetwarza jeden rekord.
+     *
+     * @param processor Procesor JSON.
+     * @param line Rekord.
+     * @return Wynik przetworzenia lub {@code null}, jeśli rekordu nie udało się przetworzyć.
+     */
+    private static String process(JsonProcessor processor, String line) {
+        try {
+            return processor.process(line);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String error(long lineNumber, String error) {
+        return "{\"line\": " + lineNumber + ", \"error\": \"" + error + "\"}";
+    }
+
+    /**
+     * Zwraca długość prefiksu bufora kończącego się znakiem nowej linii.
+     *
+     * @param buffer Bufor.
+     * @param length Liczba zajętych bajtów bufora.
+     * @return Długość prefiksu lub {@code 0}, jeśli w buforze nie ma znaku nowej linii.
+     */
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Czyta linie zakończone znakiem {@code \n} lub końcem wejścia, pomijając końcowy znak {@code \r}.
+     * <p>Dzieli wejście tak samo jak {@link #process(JsonProcessor, byte[], long, String)} - w przeciwieństwie do
+     * {@link java.io.BufferedReader#readLine()} samotny znak {@code \r} nie kończy linii.</p>
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+
+        private LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Zwraca kolejną linię.
+         *
+         * @return Linia bez znaku końca linii lub {@code null} na końcu wejścia.
+         * @throws IOException Jeśli wystąpi błąd odczytu.
+         */
+        private String next() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (position == limit) {
+                    position = 0;
+                    limit = Math.max(reader.read(buffer), 0);
+                    if (limit == 0) {
+                        return line.isEmpty() ? null : line();
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.append(buffer, start, position - start);
+                if (position < limit) {
+                    position++;
+                    return line();
+                }
+            }
+        }
+
+        private String line() {
+            int length = line.length();
+            return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+        }
+    }
+}
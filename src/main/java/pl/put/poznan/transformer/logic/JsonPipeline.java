@@ -0,0 +1,103 @@
+package pl.put.poznan.transformer.logic;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kompilator potoków operacji na JSON.
+ * <p>
+ * Zamienia uporządkowaną listę operacji (np. filtrowanie, a następnie minimalizacja) w jeden łańcuch dekoratorów,
+ * który przetwarza dokument w jednym przebiegu. Pierwsza operacja na liście jest stosowana jako pierwsza,
+ * a format wyniku (zwykły lub upiększony) określa ostatnia operacja.
+ * </p>
+ * <p>
+ * Skompilowane łańcuchy są niezmienne i bezpieczne wątkowo, dlatego są przechowywane w pamięci podręcznej
+ * (LRU) według specyfikacji - powtarzające się potoki nie tworzą dekoratorów od nowa.
+ * </p>
+ */
+public final class JsonPipeline {
+    private static final int CACHE_SIZE = 256;
+    private static final Map<List<Step>, JsonTreeProcessor> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Step>, JsonTreeProcessor> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private JsonPipeline() {
+    }
+
+    /**
+     * Pojedyncza operacja potoku.
+     *
+     * @param type Rodzaj operacji: {@code minify}, {@code prettify}, {@code include} lub {@code exclude}.
+     * @param properties Nazwy właściwości dla operacji filtrowania, opcje formatowania dla {@code prettify}
+     *                   (jak w {@link PrettyFormat#parse}); ignorowane dla {@code minify}.
+     */
+    public record Step(String type, List<String> properties) {
+        /**
+         * Kopiuje listę właściwości, aby operacja użyta jako klucz pamięci podręcznej była niezmienna.
+         */
+        public Step {
+            properties = properties == null ? null : List.copyOf(properties);
+        }
+    }
+
+    /**
+     * Zwraca łańcuch dekoratorów odpowiadający podanej liście operacji, korzystając z pamięci podręcznej.
+     *
+     * @param steps Uporządkowana lista operacji.
+     * @return Procesor JSON realizujący cały potok.
+     * @throws IllegalArgumentException Jeśli operacja jest nieznana lub brakuje jej parametrów.
+     */
+    public static JsonTreeProcessor compile(List<Step> steps) {
+        return cache.computeIfAbsent(List.copyOf(steps), JsonPipeline::build);
+    }
+
+    /**
+     * Zwraca liczbę skompilowanych potoków w pamięci podręcznej.
+     *
+     * @return Liczba wpisów (najwyżej 256).
+     */
+    public static int cacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Buduje łańcuch dekoratorów, owijając procesor bazowy kolejnymi operacjami.
+     *
+     * @param steps Uporządkowana lista operacji.
+     * @return Procesor JSON realizujący cały potok.
+     */
+    private static JsonTreeProcessor build(List<Step> steps) {
+        JsonTreeProcessor processor = new BaseJsonProcessor();
+        for (Step step : steps) {
+            processor = switch (String.valueOf(step.type())) {
+                case "minify" -> new Minify(processor);
+                case "prettify" -> new Prettify(processor, step.properties() == null
+                        ? PrettyFormat.DEFAULT : PrettyFormat.parse(step.properties()));
+                case "include" -> new FilterInclude(processor, properties(step));
+                case "exclude" -> new FilterExclude(processor, properties(step));
+                default -> throw new IllegalArgumentException("Nieznana operacja: " + step.type());
+            };
+        }
+        return processor;
+    }
+
+    /**
+     * Zwraca nazwy właściwości operacji filtrowania.
+     *
+     * @param step Operacja filtrowania.
+     * @return Tablica nazw właściwości.
+     * @throws IllegalArgumentException Jeśli operacja nie ma listy właściwości.
+     */
+    private static String[] properties(Step step) {
+        if (step.properties() == null) {
+            throw new IllegalArgumentException("Brak właściwości dla operacji: " + step.type());
+        }
+        return step.properties().toArray(new String[0]);
+    }
+}
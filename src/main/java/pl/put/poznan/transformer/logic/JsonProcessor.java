@@ -1,12 +1,25 @@
 package pl.put.poznan.transformer.logic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
 
 /**
  * Interfejs definiujący operacje na JSON.
  * <p>
  * Interfejs ten definiuje operację przetwarzania JSON-a w formie tekstowej.
  * Wszystkie klasy, które implementują ten interfejs, muszą zaimplementować metodę {@link #process(String)}.
+ * Pozostałe metody (strumień tokenów oraz strumienie bajtów) mają domyślne implementacje buforujące,
+ * które klasy procesorów mogą nadpisać, aby przetwarzać dane bez budowania całego dokumentu w pamięci.
  * </p>
  */
 public interface JsonProcessor {
@@ -20,13 +33,52 @@ public interface JsonProcessor {
      * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
      */
     String process(String json) throws JsonProcessingException;
-}
-
-
-
-
-
-
 
+    /**
+     * Procesuje JSON na poziomie strumienia tokenów.
+     * <p>Zwraca parser, z którego można odczytać tokeny przetworzonego dokumentu. Domyślna implementacja
+     * buforuje cały dokument i deleguje do {@link #process(String)}; procesory, które potrafią działać
+     * token po tokenie, nadpisują tę metodę i zwracają parser wejściowy lub jego delegata.</p>
+     *
+     * @param parser Parser ustawiony przed pierwszym tokenem dokumentu wejściowego.
+     * @return Parser zwracający tokeny przetworzonego dokumentu.
+     * @throws IOException Jeśli wystąpi błąd podczas odczytu lub przetwarzania JSON-a.
+     */
+    default JsonParser process(JsonParser parser) throws IOException {
+        JsonNode jsonNode = jsonReader.readTree(parser);
+        return jsonReader.createParser(process(jsonWriter.writeValueAsString(jsonNode)));
+    }
 
+    /**
+     * Procesuje JSON odczytywany z parsera i zapisuje wynik do generatora.
+     * <p>Domyślna implementacja kopiuje do generatora tokeny zwrócone przez {@link #process(JsonParser)}.
+     * Parser i generator nie są zamykane - należą do wywołującego. Procesory strumieniowe nadpisują tę metodę
+     * (lub {@link #process(JsonParser)}), dzięki czemu działają na dowolnym źródle tokenów - np. na taśmie
+     * {@link JsonTape} albo parserze formatu binarnego ({@link DataFormat}) - bez budowania drzewa dokumentu.</p>
+     *
+     * @param parser Parser ustawiony przed pierwszym tokenem dokumentu wejściowego.
+     * @param generator Generator, do którego zostanie zapisany wynik.
+     * @throws IOException Jeśli wystąpi błąd odczytu, zapisu lub przetwarzania JSON-a.
+     */
+    default void process(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonParser result = process(parser);
+        while (result.nextToken() != null) {
+            generator.copyCurrentEvent(result);
+        }
+        generator.flush();
+    }
 
+    /**
+     * Procesuje JSON odczytywany ze strumienia i zapisuje wynik do strumienia wyjściowego.
+     * <p>Domyślna implementacja wczytuje całe wejście (UTF-8) i deleguje do {@link #process(String)}.
+     * Strumienie nie są zamykane - należą do wywołującego.</p>
+     *
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany wynik (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub przetwarzania JSON-a.
+     */
+    default void process(InputStream input, OutputStream output) throws IOException {
+        String result = process(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        output.write(result.getBytes(StandardCharsets.UTF_8));
+    }
+}
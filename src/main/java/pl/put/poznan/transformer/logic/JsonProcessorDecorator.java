@@ -0,0 +1,155 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Bazowa klasa dekoratorów procesora JSON.
+ * <p>
+ * Przechowuje procesor wewnętrzny i łączy wywołania w jeden przebieg: jeśli procesor wewnętrzny implementuje
+ * {@link JsonTreeProcessor}, dokument jest parsowany tylko raz, każdy dekorator przekształca to samo drzewo,
+ * a serializacja odbywa się wyłącznie w najbardziej zewnętrznym dekoratorze. Dla pozostałych procesorów
+ * (np. implementacji wyłącznie tekstowych) stosowana jest wymiana JSON-a w formie tekstowej.
+ * </p>
+ * <p>
+ * Czasy parsowania, transformacji każdego dekoratora i serializacji są przekazywane zarejestrowanemu
+ * {@link ProcessingObserver}.
+ * </p>
+ */
+public abstract class JsonProcessorDecorator extends BaseJsonProcessor {
+    protected final JsonProcessor processor;
+    private final String stage = getClass().getSimpleName();
+    /**
+     * Konstruktor klasy JsonProcessorDecorator.
+     *
+     * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a.
+     */
+    protected JsonProcessorDecorator(JsonProcessor processor) {
+        this.processor = processor;
+    }
+    /**
+     * Przetwarza dany JSON w jednym przebiegu parsowania i serializacji.
+     *
+     * @param json JSON w formie tekstowej (String), który ma zostać przetworzony.
+     * @return Przetworzony JSON w formie tekstowej (String).
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    @Override
+    public String process(String json) throws JsonProcessingException {
+        JsonNode jsonNode;
+        if (processor instanceof JsonTreeProcessor treeProcessor) {
+            jsonNode = treeProcessor.process(parse(json));
+        } else {
+            jsonNode = parse(processor.process(json));
+        }
+        JsonNode result = timedTransform(jsonNode);
+        long start = System.nanoTime();
+        String serialized = serialize(result);
+        observer().serialized(System.nanoTime() - start);
+        return serialized;
+    }
+    /**
+     * Przetwarza drzewo JSON procesorem wewnętrznym, a następnie własną transformacją dekoratora.
+     *
+     * @param json Drzewo JSON, które ma zostać przetworzone.
+     * @return Przetworzone drzewo JSON.
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    @Override
+    public JsonNode process(JsonNode json) throws JsonProcessingException {
+        JsonNode jsonNode = processor instanceof JsonTreeProcessor treeProcessor
+                ? treeProcessor.process(json)
+                : jsonReader.readTree(processor.process(jsonWriter.writeValueAsString(json)));
+        return timedTransform(jsonNode);
+    }
+    /**
+     * Przetwarza JSON na poziomie tokenów, przechodząc przez drzewo dokumentu.
+     * <p>Wynikowe drzewo jest udostępniane jako strumień tokenów bez ponownej serializacji do tekstu.
+     * Dekoratory, które nie potrzebują drzewa, nadpisują tę metodę.</p>
+     *
+     * @param parser Parser dokumentu wejściowego.
+     * @return Parser zwracający tokeny przetworzonego dokumentu.
+     * @throws IOException Jeśli wystąpi błąd podczas odczytu lub przetwarzania JSON-a.
+     */
+    @Override
+    public JsonParser process(JsonParser parser) throws IOException {
+        JsonNode jsonNode = jsonReader.readTree(parser);
+        return jsonReader.treeAsTokens(process(jsonNode));
+    }
+    /**
+     * Przetwarza JSON odczytany ze strumienia i zapisuje wynik bezpośrednio do strumienia wyjściowego,
+     * bez pośrednich obiektów String.
+     *
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany wynik (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub przetwarzania JSON-a.
+     */
+    @Override
+    public void process(InputStream input, OutputStream output) throws IOException {
+        JsonNode jsonNode;
+        long start = System.nanoTime();
+        try (JsonParser parser = createParser(input)) {
+            jsonNode = jsonReader.readTree(parser);
+        }
+        observer().parsed(System.nanoTime() - start);
+        JsonNode result = process(jsonNode);
+        start = System.nanoTime();
+        try (JsonGenerator generator = createGenerator(output)) {
+            writer().writeValue(generator, result);
+        }
+        observer().serialized(System.nanoTime() - start);
+    }
+    /**
+     * Własna transformacja dekoratora, stosowana do wyniku procesora wewnętrznego.
+     *
+     * @param json Drzewo JSON zwrócone przez procesor wewnętrzny.
+     * @return Przekształcone drzewo JSON.
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    protected abstract JsonNode transform(JsonNode json) throws JsonProcessingException;
+    /**
+     * Parsuje JSON w formie tekstowej, zgłaszając czas parsowania obserwatorowi.
+     */
+    private static JsonNode parse(String json) throws JsonProcessingException {
+        long start = System.nanoTime();
+        JsonNode jsonNode = jsonReader.readTree(json);
+        observer().parsed(System.nanoTime() - start);
+        return jsonNode;
+    }
+    /**
+     * Wykonuje {@link #transform(JsonNode)}, zgłaszając jej czas obserwatorowi jako etap tego dekoratora.
+     */
+    private JsonNode timedTransform(JsonNode json) throws JsonProcessingException {
+        long start = System.nanoTime();
+        JsonNode result = transform(json);
+        observer().transformed(stage, System.nanoTime() - start);
+        return result;
+    }
+    /**
+     * Serializuje drzewo obiektem zwracanym przez {@link #writer()}.
+     *
+     * @param json Drzewo JSON do serializacji.
+     * @return JSON w formie tekstowej (String).
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas serializacji.
+     */
+    @Override
+    public String serialize(JsonNode json) throws JsonProcessingException {
+        return writer().writeValueAsString(json);
+    }
+    /**
+     * Zwraca obiekt zapisujący wynik dekoratora. Domyślnie bez formatowania.
+     * <p>Zwracany obiekt powinien być współdzieloną stałą - metoda jest wywoływana przy każdej serializacji.</p>
+     *
+     * @return Obiekt {@link ObjectWriter} używany do serializacji wyniku.
+     */
+    protected ObjectWriter writer() {
+        return jsonWriter;
+    }
+}
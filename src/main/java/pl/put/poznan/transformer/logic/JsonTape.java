@@ -0,0 +1,617 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+import com.fasterxml.jackson.core.json.JsonReadContext;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+
+/**
+ * Zwarta reprezentacja dokumentu JSON: taśma tokenów z odwołaniami do bajtów dokumentu źródłowego.
+ * <p>
+ * Zamiast drzewa obiektów {@link com.fasterxml.jackson.databind.JsonNode} (nagłówki obiektów, opakowane liczby,
+ * wpisy map i powtórzone nazwy pól - kilka do kilkunastu razy więcej pamięci niż sam tekst) dokument jest opisany
+ * trzema tablicami typów prostych: rodzaj tokenu, przesunięcie w bajtach źródła i wartość pomocnicza (długość
+ * napisu lub liczby, numer nazwy pola albo indeks tokenu zamykającego kontener). Nazwy pól są zapisane raz,
+ * w tablicy nazw. Taśma zajmuje 9 bajtów na token, a bajty źródła mogą leżeć poza stertą - w buforze bezpośrednim
+ * albo w pliku odwzorowanym w pamięci ({@link #map(Path)}). Wartości są dekodowane dopiero przy odczycie.
+ * </p>
+ * <p>
+ * Dokument jest odczytywany parserem zwracanym przez {@link #parser()}, więc procesory działające na strumieniu
+ * tokenów ({@link JsonProcessor#process(JsonParser, JsonGenerator)}, m.in. {@link FilterInclude}
+ * i {@link FilterExclude}) działają na taśmie bez budowania drzewa ({@link #process(JsonProcessor, OutputStream)}).
+ * Pominięcie poddrzewa ({@link JsonParser#skipChildren()}) zajmuje stały czas. Taśma zna też granice każdej wartości,
+ * więc {@link JsonTapeDiff} (a przez niego {@link Compare#patch(JsonTape, JsonTape, OutputStream)}) porównuje dwie
+ * taśmy strukturalnie, z wyrównywaniem tablic, odwołując się do wartości przez indeksy tokenów.
+ * </p>
+ * <p>
+ * Taśma jest niezmienna i bezpieczna wątkowo; każdy parser ma własny stan. Dokument nie może przekraczać 2 GB.
+ * </p>
+ */
+public final class JsonTape {
+    private static final JsonToken[] TOKENS = JsonToken.values();
+
+    private final ByteBuffer source;
+    private final byte[] types;
+    private final int[] offsets;
+    private final int[] values;
+    private final String[] names;
+
+    private JsonTape(ByteBuffer source, byte[] types, int[] offsets, int[] values, String[] names) {
+        this.source = source;
+        this.types = types;
+        this.offsets = offsets;
+        this.values = values;
+        this.names = names;
+    }
+
+    /**
+     * Buduje taśmę dla dokumentu w tablicy bajtów.
+     *
+     * @param json Dokument JSON (UTF-8); tablica nie może być później modyfikowana.
+     * @return Taśma dokumentu.
+     * @throws IOException Jeśli dokument jest nieprawidłowy.
+     */
+    public static JsonTape of(byte[] json) throws IOException {
+        return of(ByteBuffer.wrap(json));
+    }
+
+    /**
+     * Buduje taśmę dla dokumentu w buforze (od jego pozycji do limitu). Bufor może być bezpośredni
+     * lub odwzorowany z pliku - bajty dokumentu nie są kopiowane na stertę.
+     *
+     * @param json Dokument JSON (UTF-8); zawartość bufora nie może być później modyfikowana.
+     * @return Taśma dokumentu.
+     * @throws IOException Jeśli dokument jest nieprawidłowy.
+     */
+    public static JsonTape of(ByteBuffer json) throws IOException {
+        ByteBuffer source = json.slice();
+        try (JsonParser parser = source.hasArray()
+                ? jsonReader.getFactory().createParser(source.array(), source.arrayOffset(), source.remaining())
+                : jsonReader.getFactory().createParser(new ByteBufferBackedInputStream(source.duplicate()))) {
+            return new Builder(source).build(parser);
+        }
+    }
+
+    /**
+     * Buduje taśmę dla pliku odwzorowanego w pamięci; na stercie jest tylko sama taśma.
+     *
+     * @param file Plik z dokumentem JSON (UTF-8), najwyżej 2 GB.
+     * @return Taśma dokumentu.
+     * @throws IOException Jeśli nie udało się odczytać pliku lub dokument jest nieprawidłowy.
+     */
+    public static JsonTape map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Plik jest większy niż 2 GB: " + file);
+            }
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Zwraca liczbę tokenów dokumentu.
+     *
+     * @return Liczba tokenów.
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Zwraca liczbę różnych nazw pól.
+     *
+     * @return Liczba nazw pól.
+     */
+    public int names() {
+        return names.length;
+    }
+
+    /**
+     * Zwraca nowy parser czytający dokument z taśmy.
+     *
+     * @return Parser ustawiony przed pierwszym tokenem.
+     */
+    public JsonParser parser() {
+        return new TapeParser(this, 0, types.length);
+    }
+
+    /**
+     * Przetwarza dokument z taśmy procesorem działającym na strumieniu tokenów
+     * ({@link JsonProcessor#process(JsonParser, JsonGenerator)}) i zapisuje wynik jako JSON.
+     * <p>Strumień nie jest zamykany - należy do wywołującego.</p>
+     *
+     * @param processor Procesor JSON.
+     * @param output Strumień, do którego zostanie zapisany wynik (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd zapisu lub przetwarzania JSON-a.
+     */
+    public void process(JsonProcessor processor, OutputStream output) throws IOException {
+        try (JsonParser parser = parser();
+             JsonGenerator generator = BaseJsonProcessor.createGenerator(output)) {
+            processor.process(parser, generator);
+        }
+    }
+
+    /**
+     * Zwraca rodzaj tokenu.
+     *
+     * @param index Indeks tokenu.
+     * @return Rodzaj tokenu.
+     */
+    JsonToken token(int index) {
+        return TOKENS[types[index]];
+    }
+
+    /**
+     * Zwraca indeks tokenu następującego po wartości, która zaczyna się od danego tokenu (dla kontenera - po jego
+     * tokenie zamykającym). Wyznaczenie go zajmuje stały czas.
+     *
+     * @param index Indeks pierwszego tokenu wartości.
+     * @return Indeks następnego tokenu.
+     */
+    int next(int index) {
+        JsonToken token = token(index);
+        return token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY ? values[index] + 1 : index + 1;
+    }
+
+    /**
+     * Dekoduje tekst tokenu: nazwę pola, napis albo liczbę (w postaci ze źródła).
+     *
+     * @param index Indeks tokenu.
+     * @return Tekst tokenu; dla pozostałych tokenów ich postać w JSON, np. {@code true}.
+     * @throws IOException Jeśli napisu z sekwencjami ucieczki nie udało się zdekodować.
+     */
+    String text(int index) throws IOException {
+        JsonToken token = token(index);
+        return switch (token) {
+            case FIELD_NAME -> names[values[index]];
+            case VALUE_STRING -> string(index);
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> decode(offsets[index], values[index], StandardCharsets.ISO_8859_1);
+            default -> token.asString();
+        };
+    }
+
+    /**
+     * Kopiuje do generatora wartość zaczynającą się od danego tokenu (całe poddrzewo kontenera).
+     *
+     * @param index Indeks pierwszego tokenu wartości.
+     * @param generator Generator, do którego zostanie zapisana wartość.
+     * @throws IOException Jeśli wystąpi błąd zapisu.
+     */
+    void copy(int index, JsonGenerator generator) throws IOException {
+        try (JsonParser parser = new TapeParser(this, index, next(index))) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    /**
+     * Dekoduje napis; napisy z sekwencjami ucieczki są dekodowane parserem JSON.
+     */
+    private String string(int index) throws IOException {
+        int offset = offsets[index];
+        int length = values[index];
+        if (length >= 0) {
+            return decode(offset, length, StandardCharsets.UTF_8);
+        }
+        try (JsonParser parser = jsonReader.getFactory().createParser(bytes(offset - 1, ~length + 2))) {
+            parser.nextToken();
+            return parser.getText();
+        }
+    }
+
+    /**
+     * Dekoduje fragment źródła jako tekst.
+     */
+    private String decode(int offset, int length, Charset charset) {
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + offset, length, charset);
+        }
+        return new String(bytes(offset, length), charset);
+    }
+
+    private byte[] bytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        source.get(offset, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Zapisuje tokeny kolejno odczytywane z parsera.
+     */
+    private static final class Builder {
+        private final ByteBuffer source;
+        private final Map<String, Integer> nameIds = new HashMap<>();
+        private String[] names = new String[16];
+        private byte[] types;
+        private int[] offsets;
+        private int[] values;
+        private int size;
+        private int[] open = new int[16];
+        private int depth;
+
+        private Builder(ByteBuffer source) {
+            this.source = source;
+            int capacity = Math.max(16, source.remaining() / 8);
+            this.types = new byte[capacity];
+            this.offsets = new int[capacity];
+            this.values = new int[capacity];
+        }
+
+        private JsonTape build(JsonParser parser) throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                int offset = (int) parser.getTokenLocation().getByteOffset();
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> {
+                        if (depth == open.length) {
+                            open = Arrays.copyOf(open, depth * 2);
+                        }
+                        open[depth++] = size;
+                        add(token, offset, 0);
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        int start = open[--depth];
+                        values[start] = size;
+                        add(token, offset, start);
+                    }
+                    case FIELD_NAME -> add(token, offset, nameId(parser.getCurrentName()));
+                    case VALUE_STRING -> {
+                        parser.finishToken();
+                        int length = (int) parser.getCurrentLocation().getByteOffset() - offset - 2;
+                        add(token, offset + 1, escaped(offset + 1, length) ? ~length : length);
+                    }
+                    case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> add(token, offset, parser.getTextLength());
+                    default -> add(token, offset, 0);
+                }
+            }
+            return new JsonTape(source, Arrays.copyOf(types, size), Arrays.copyOf(offsets, size),
+                    Arrays.copyOf(values, size), Arrays.copyOf(names, nameIds.size()));
+        }
+
+        private void add(JsonToken token, int offset, int value) {
+            if (size == types.length) {
+                int capacity = size + (size >> 1);
+                types = Arrays.copyOf(types, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            types[size] = (byte) token.ordinal();
+            offsets[size] = offset;
+            values[size] = value;
+            size++;
+        }
+
+        private int nameId(String name) {
+            Integer id = nameIds.get(name);
+            if (id == null) {
+                id = nameIds.size();
+                if (id == names.length) {
+                    names = Arrays.copyOf(names, id * 2);
+                }
+                names[id] = name;
+                nameIds.put(name, id);
+            }
+            return id;
+        }
+
+        private boolean escaped(int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (source.get(i) == '\\') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Parser czytający tokeny z taśmy.
+     */
+    private static final class TapeParser extends ParserMinimalBase {
+        private final JsonTape tape;
+        private final int end;
+        private int index;
+        private JsonReadContext context = JsonReadContext.createRootContext(null);
+        private ObjectCodec codec = jsonReader;
+        private String text;
+        private boolean closed;
+
+        /**
+         * @param tape Taśma.
+         * @param start Indeks pierwszego czytanego tokenu.
+         * @param end Indeks za ostatnim czytanym tokenem.
+         */
+        private TapeParser(JsonTape tape, int start, int end) {
+            this.tape = tape;
+            this.index = start - 1;
+            this.end = end;
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            text = null;
+            if (closed || index + 1 >= end) {
+                index = end;
+                _currToken = null;
+                return null;
+            }
+            JsonToken token = TOKENS[tape.types[++index]];
+            switch (token) {
+                case START_OBJECT -> {
+                    value();
+                    context = context.createChildObjectContext(-1, -1);
+                }
+                case START_ARRAY -> {
+                    value();
+                    context = context.createChildArrayContext(-1, -1);
+                }
+                case END_OBJECT, END_ARRAY -> context = context.clearAndGetParent();
+                case FIELD_NAME -> {
+                    context.expectComma();
+                    context.setCurrentName(tape.names[tape.values[index]]);
+                }
+                default -> value();
+            }
+            _currToken = token;
+            return token;
+        }
+
+        /**
+         * Zwiększa indeks elementu tablicy (lub wartości najwyższego poziomu) dla bieżącej wartości.
+         */
+        private void value() {
+            if (!context.inObject()) {
+                context.expectComma();
+            }
+        }
+
+        /**
+         * Pomija poddrzewo w stałym czasie, przechodząc od razu do tokenu zamykającego kontener.
+         */
+        @Override
+        public JsonParser skipChildren() {
+            if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+                index = tape.values[index];
+                _currToken = TOKENS[tape.types[index]];
+                context = context.clearAndGetParent();
+                text = null;
+            }
+            return this;
+        }
+
+        @Override
+        protected void _handleEOF() {
+        }
+
+        @Override
+        public String getCurrentName() {
+            if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+                JsonReadContext parent = context.getParent();
+                return parent != null ? parent.getCurrentName() : null;
+            }
+            return context.getCurrentName();
+        }
+
+        @Override
+        public void overrideCurrentName(String name) {
+            JsonReadContext current = _currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY
+                    ? context.getParent() : context;
+            if (current != null) {
+                try {
+                    current.setCurrentName(name);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public JsonStreamContext getParsingContext() {
+            return context;
+        }
+
+        @Override
+        public ObjectCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setCodec(ObjectCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public Version version() {
+            return Version.unknownVersion();
+        }
+
+        @Override
+        public JsonLocation getTokenLocation() {
+            return location();
+        }
+
+        @Override
+        public JsonLocation getCurrentLocation() {
+            return location();
+        }
+
+        private JsonLocation location() {
+            long offset = index >= 0 && index < end ? tape.offsets[index] : -1;
+            return new JsonLocation(null, offset, -1, -1);
+        }
+
+        @Override
+        public String getText() throws IOException {
+            if (_currToken == null) {
+                return null;
+            }
+            if (text == null) {
+                text = tape.text(index);
+            }
+            return text;
+        }
+
+        @Override
+        public char[] getTextCharacters() throws IOException {
+            String value = getText();
+            return value != null ? value.toCharArray() : null;
+        }
+
+        @Override
+        public boolean hasTextCharacters() {
+            return false;
+        }
+
+        @Override
+        public int getTextLength() throws IOException {
+            if (_currToken == JsonToken.VALUE_NUMBER_INT || _currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+                return tape.values[index];
+            }
+            String value = getText();
+            return value != null ? value.length() : 0;
+        }
+
+        @Override
+        public int getTextOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getBinaryValue(Base64Variant variant) throws IOException {
+            if (_currToken != JsonToken.VALUE_STRING) {
+                throw _constructError("Bieżący token nie jest napisem: " + _currToken);
+            }
+            ByteArrayBuilder builder = new ByteArrayBuilder();
+            _decodeBase64(getText(), builder, variant);
+            return builder.toByteArray();
+        }
+
+        @Override
+        public NumberType getNumberType() throws IOException {
+            if (_currToken == JsonToken.VALUE_NUMBER_FLOAT) {
+                return NumberType.DOUBLE;
+            }
+            if (_currToken != JsonToken.VALUE_NUMBER_INT) {
+                return null;
+            }
+            int digits = digits();
+            if (digits <= 9) {
+                return NumberType.INT;
+            }
+            if (digits <= 18 || getBigIntegerValue().bitLength() < 64) {
+                return NumberType.LONG;
+            }
+            return NumberType.BIG_INTEGER;
+        }
+
+        @Override
+        public Number getNumberValue() throws IOException {
+            NumberType type = getNumberType();
+            if (type == null) {
+                throw _constructError("Bieżący token nie jest liczbą: " + _currToken);
+            }
+            return switch (type) {
+                case INT -> getIntValue();
+                case LONG -> getLongValue();
+                case BIG_INTEGER -> getBigIntegerValue();
+                default -> getDoubleValue();
+            };
+        }
+
+        @Override
+        public int getIntValue() throws IOException {
+            return (int) getLongValue();
+        }
+
+        @Override
+        public long getLongValue() throws IOException {
+            if (_currToken == JsonToken.VALUE_NUMBER_INT && digits() <= 18) {
+                return parseLong();
+            }
+            return getDecimalValue().longValue();
+        }
+
+        @Override
+        public BigInteger getBigIntegerValue() throws IOException {
+            return _currToken == JsonToken.VALUE_NUMBER_INT ? new BigInteger(number()) : getDecimalValue().toBigInteger();
+        }
+
+        @Override
+        public float getFloatValue() throws IOException {
+            return (float) getDoubleValue();
+        }
+
+        @Override
+        public double getDoubleValue() throws IOException {
+            if (_currToken == JsonToken.VALUE_NUMBER_INT && digits() <= 18) {
+                return parseLong();
+            }
+            return Double.parseDouble(number());
+        }
+
+        @Override
+        public BigDecimal getDecimalValue() throws IOException {
+            return new BigDecimal(number());
+        }
+
+        private String number() throws IOException {
+            if (_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+                throw _constructError("Bieżący token nie jest liczbą: " + _currToken);
+            }
+            return getText();
+        }
+
+        private int digits() {
+            return tape.values[index] - (tape.source.get(tape.offsets[index]) == '-' ? 1 : 0);
+        }
+
+        /**
+         * Odczytuje liczbę całkowitą (najwyżej 18 cyfr) bezpośrednio z bajtów źródła.
+         */
+        private long parseLong() {
+            int offset = tape.offsets[index];
+            int end = offset + tape.values[index];
+            boolean negative = tape.source.get(offset) == '-';
+            long value = 0;
+            for (int i = negative ? offset + 1 : offset; i < end; i++) {
+                value = value * 10 + (tape.source.get(i) - '0');
+            }
+            return negative ? -value : value;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Silnik różnic strukturalnych działający bezpośrednio na taśmach {@link JsonTape}.
+ * <p>
+ * Porównuje dokumenty tak samo jak {@link JsonDiff}: obiekty pole po polu, tablice z wyrównaniem elementów
+ * najdłuższym wspólnym podciągiem (LCS), a równe poddrzewa rozpoznaje po skrótach strukturalnych, potwierdzając
+ * równość porównaniem struktury. Węzły są jednak indeksami tokenów taśmy, a skróty - tablicą {@code long[]}
+ * indeksowaną tak samo, więc żaden z dokumentów nie jest zamieniany na drzewo
+ * {@link com.fasterxml.jackson.databind.JsonNode}. Różnice wskazują tokeny, od których zaczynają się wartości;
+ * same wartości są kopiowane z taśmy dopiero przy zapisie wyniku.
+ * </p>
+ * <p>
+ * Liczenie skrótów, potwierdzanie równości i porównanie działają iteracyjnie, bez rekurencji.
+ * </p>
+ */
+public final class JsonTapeDiff {
+    /**
+     * Maksymalny rozmiar tablicy LCS (liczba komórek); dla większych tablic elementy są wyrównywane po indeksach.
+     */
+    private static final long MAX_LCS_CELLS = 1_000_000;
+
+    private final List<Difference> differences = new ArrayList<>();
+    private final Deque<Task> tasks = new ArrayDeque<>();
+    private final JsonTape source;
+    private final long[] sourceHashes;
+    private final JsonTape target;
+    private final long[] targetHashes;
+
+    private JsonTapeDiff(JsonTape source, long[] sourceHashes, JsonTape target, long[] targetHashes) {
+        this.source = source;
+        this.sourceHashes = sourceHashes;
+        this.target = target;
+        this.targetHashes = targetHashes;
+    }
+
+    /**
+     * Para różnych kontenerów (obiektów lub tablic) oczekująca na porównanie.
+     */
+    private record Task(int source, int target, JsonDiff.Path path) {
+    }
+
+    /**
+     * Pojedyncza różnica między dokumentami.
+     *
+     * @param operation Rodzaj operacji.
+     * @param path Ścieżka do zmienionego miejsca.
+     * @param source Indeks pierwszego tokenu wartości w pierwszej taśmie ({@code -1} dla
+     *               {@link JsonDiff.Operation#ADD}).
+     * @param target Indeks pierwszego tokenu wartości w drugiej taśmie ({@code -1} dla
+     *               {@link JsonDiff.Operation#REMOVE}).
+     */
+    public record Difference(JsonDiff.Operation operation, JsonDiff.Path path, int source, int target) {
+    }
+
+    /**
+     * Wyznacza różnice między dwoma dokumentami zapisanymi na taśmach.
+     *
+     * @param source Pierwszy dokument (stan oczekiwany).
+     * @param target Drugi dokument (stan właściwy).
+     * @return Lista różnic w kolejności, w jakiej należy je zastosować jako JSON Patch.
+     * @throws IOException Jeśli któraś z taśm jest pusta albo nie udało się zdekodować napisu.
+     */
+    public static List<Difference> diff(JsonTape source, JsonTape target) throws IOException {
+        if (source.size() == 0 || target.size() == 0) {
+            throw new IOException("Brak dokumentu wejściowego");
+        }
+        JsonTapeDiff diff = new JsonTapeDiff(source, hashes(source), target, hashes(target));
+        if (!diff.same(0, 0)) {
+            diff.compare(0, 0, JsonDiff.Path.root());
+        }
+        while (!diff.tasks.isEmpty()) {
+            Task task = diff.tasks.pop();
+            if (source.token(task.source()) == JsonToken.START_OBJECT) {
+                diff.compareObjects(task.source(), task.target(), task.path());
+            } else {
+                diff.compareArrays(task.source(), task.target(), task.path());
+            }
+        }
+        return diff.differences;
+    }
+
+    /**
+     * Liczy skróty wszystkich wartości taśmy jednym przejściem po tokenach. Skrót jest zapisywany pod indeksem
+     * pierwszego tokenu wartości; skrót obiektu nie zależy od kolejności pól, a skrót tablicy - zależy.
+     *
+     * @param tape Taśma dokumentu.
+     * @return Skróty wartości (pozycje nazw pól i tokenów zamykających są nieużywane).
+     * @throws IOException Jeśli nie udało się zdekodować napisu.
+     */
+    static long[] hashes(JsonTape tape) throws IOException {
+        long[] hashes = new long[tape.size()];
+        int[] open = new int[16];
+        long[] accumulated = new long[16];
+        int[] counts = new int[16];
+        long[] keys = new long[16];
+        int depth = 0;
+        for (int i = 0; i < tape.size(); i++) {
+            JsonToken token = tape.token(i);
+            long hash;
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                        accumulated = Arrays.copyOf(accumulated, depth * 2);
+                        counts = Arrays.copyOf(counts, depth * 2);
+                        keys = Arrays.copyOf(keys, depth * 2);
+                    }
+                    open[depth] = i;
+                    accumulated[depth] = token == JsonToken.START_OBJECT ? 0x6A09E667F3BCC908L : 0xBB67AE8584CAA73BL;
+                    counts[depth] = 0;
+                    depth++;
+                    continue;
+                }
+                case FIELD_NAME -> {
+                    keys[depth - 1] = JsonHashes.hash(tape.text(i));
+                    continue;
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    depth--;
+                    hash = JsonHashes.mix(accumulated[depth] + counts[depth]);
+                    hashes[open[depth]] = hash;
+                }
+                default -> {
+                    hash = JsonHashes.mix(type(token).ordinal() * 0x9E3779B97F4A7C15L + JsonHashes.hash(leaf(tape, i)));
+                    hashes[i] = hash;
+                }
+            }
+            if (depth > 0) {
+                int parent = depth - 1;
+                if (tape.token(open[parent]) == JsonToken.START_OBJECT) {
+                    accumulated[parent] += JsonHashes.mix(keys[parent] * 0xC2B2AE3D27D4EB4FL ^ hash);
+                } else {
+                    accumulated[parent] = accumulated[parent] * 31 + hash;
+                }
+                counts[parent]++;
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Sprawdza, czy dwie wartości są równe (w sensie równości drzew {@link com.fasterxml.jackson.databind.JsonNode}).
+     * Różne skróty kończą porównanie od razu, a przy równych skrótach struktura jest porównywana iteracyjnie.
+     *
+     * @param first Taśma pierwszej wartości.
+     * @param firstHashes Skróty pierwszej taśmy.
+     * @param a Indeks pierwszego tokenu pierwszej wartości.
+     * @param second Taśma drugiej wartości.
+     * @param secondHashes Skróty drugiej taśmy.
+     * @param b Indeks pierwszego tokenu drugiej wartości.
+     * @return {@code true}, jeśli wartości są równe.
+     * @throws IOException Jeśli nie udało się zdekodować napisu.
+     */
+    private static boolean equal(JsonTape first, long[] firstHashes, int a, JsonTape second, long[] secondHashes, int b)
+            throws IOException {
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{a, b});
+        while (!stack.isEmpty()) {
+            int[] pair = stack.pop();
+            int i = pair[0];
+            int j = pair[1];
+            JsonToken token = first.token(i);
+            if (firstHashes[i] != secondHashes[j] || type(token) != type(second.token(j))) {
+                return false;
+            }
+            if (token == JsonToken.START_OBJECT) {
+                Map<String, Integer> fields = fields(second, j);
+                int count = 0;
+                for (int k = i + 1; first.token(k) == JsonToken.FIELD_NAME; k = first.next(k + 1)) {
+                    Integer value = fields.get(first.text(k));
+                    if (value == null) {
+                        return false;
+                    }
+                    stack.push(new int[]{k + 1, value});
+                    count++;
+                }
+                if (count != fields.size()) {
+                    return false;
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                int k = i + 1;
+                int l = j + 1;
+                while (first.token(k) != JsonToken.END_ARRAY && second.token(l) != JsonToken.END_ARRAY) {
+                    stack.push(new int[]{k, l});
+                    k = first.next(k);
+                    l = second.next(l);
+                }
+                if (first.token(k) != second.token(l)) {
+                    return false;
+                }
+            } else if (!leaf(first, i).equals(leaf(second, j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean same(int sourceIndex, int targetIndex) throws IOException {
+        return equal(source, sourceHashes, sourceIndex, target, targetHashes, targetIndex);
+    }
+
+    /**
+     * Porównuje dwie wartości, tworząc ścieżkę dopiero, gdy okażą się różne (jak {@link JsonDiff}).
+     */
+    private void compare(int sourceIndex, int targetIndex, JsonDiff.Path parent, String field, int index)
+            throws IOException {
+        if (same(sourceIndex, targetIndex)) {
+            return;
+        }
+        compare(sourceIndex, targetIndex, field != null ? parent.field(field) : parent.index(index));
+    }
+
+    /**
+     * Zapisuje różnicę między dwiema różnymi wartościami lub planuje porównanie zawartości kontenerów.
+     */
+    private void compare(int sourceIndex, int targetIndex, JsonDiff.Path path) {
+        JsonToken sourceToken = source.token(sourceIndex);
+        JsonToken targetToken = target.token(targetIndex);
+        if (sourceToken == targetToken && (sourceToken == JsonToken.START_OBJECT || sourceToken == JsonToken.START_ARRAY)) {
+            tasks.push(new Task(sourceIndex, targetIndex, path));
+        } else {
+            differences.add(new Difference(JsonDiff.Operation.REPLACE, path, sourceIndex, targetIndex));
+        }
+    }
+
+    /**
+     * Porównuje pola dwóch obiektów: usunięte, zmienione, a następnie dodane.
+     */
+    private void compareObjects(int sourceIndex, int targetIndex, JsonDiff.Path path) throws IOException {
+        Map<String, Integer> targetFields = fields(target, targetIndex);
+        for (int i = sourceIndex + 1; source.token(i) == JsonToken.FIELD_NAME; i = source.next(i + 1)) {
+            String name = source.text(i);
+            Integer value = targetFields.get(name);
+            if (value == null) {
+                differences.add(new Difference(JsonDiff.Operation.REMOVE, path.field(name), i + 1, -1));
+            } else {
+                compare(i + 1, value, path, name, -1);
+            }
+        }
+        Map<String, Integer> sourceFields = fields(source, sourceIndex);
+        for (int j = targetIndex + 1; target.token(j) == JsonToken.FIELD_NAME; j = target.next(j + 1)) {
+            String name = target.text(j);
+            if (!sourceFields.containsKey(name)) {
+                differences.add(new Difference(JsonDiff.Operation.ADD, path.field(name), -1, j + 1));
+            }
+        }
+    }
+
+    /**
+     * Porównuje dwie tablice, wyrównując elementy najdłuższym wspólnym podciągiem (jak {@link JsonDiff}).
+     */
+    private void compareArrays(int sourceIndex, int targetIndex, JsonDiff.Path path) throws IOException {
+        int[] sourceElements = elements(source, sourceIndex);
+        int[] targetElements = elements(target, targetIndex);
+        int sourceEnd = sourceElements.length;
+        int targetEnd = targetElements.length;
+        int start = 0;
+        while (start < sourceEnd && start < targetEnd && same(sourceElements[start], targetElements[start])) {
+            start++;
+        }
+        while (sourceEnd > start && targetEnd > start && same(sourceElements[sourceEnd - 1], targetElements[targetEnd - 1])) {
+            sourceEnd--;
+            targetEnd--;
+        }
+        int[][] matches = align(sourceElements, start, sourceEnd, targetElements, start, targetEnd);
+
+        int sourcePosition = start;
+        int targetPosition = start;
+        int position = start;
+        for (int[] match : matches) {
+            position = compareGap(sourceElements, sourcePosition, match[0], targetElements, targetPosition, match[1],
+                    path, position);
+            sourcePosition = match[0] + 1;
+            targetPosition = match[1] + 1;
+            position++;
+        }
+        compareGap(sourceElements, sourcePosition, sourceEnd, targetElements, targetPosition, targetEnd, path, position);
+    }
+
+    /**
+     * Zapisuje różnice dla niedopasowanego fragmentu tablic.
+     *
+     * @return Indeks za fragmentem w tablicy po zastosowaniu operacji tego fragmentu.
+     */
+    private int compareGap(int[] sourceElements, int sourceFrom, int sourceTo, int[] targetElements, int targetFrom,
+                           int targetTo, JsonDiff.Path path, int position) throws IOException {
+        int sourceLength = sourceTo - sourceFrom;
+        int targetLength = targetTo - targetFrom;
+        int paired = Math.min(sourceLength, targetLength);
+        for (int i = 0; i < paired; i++) {
+            compare(sourceElements[sourceFrom + i], targetElements[targetFrom + i], path, null, position + i);
+        }
+        for (int i = paired; i < sourceLength; i++) {
+            differences.add(new Difference(JsonDiff.Operation.REMOVE, path.index(position + paired),
+                    sourceElements[sourceFrom + i], -1));
+        }
+        for (int i = paired; i < targetLength; i++) {
+            differences.add(new Difference(JsonDiff.Operation.ADD, path.index(position + i), -1,
+                    targetElements[targetFrom + i]));
+        }
+        return position + targetLength;
+    }
+
+    /**
+     * Wyznacza pary pozycji elementów równych w obu tablicach (najdłuższy wspólny podciąg). Jeśli tablica LCS
+     * przekroczyłaby {@link #MAX_LCS_CELLS}, zwracana jest pusta lista i elementy są porównywane po pozycjach.
+     *
+     * @return Pary {@code {pozycjaŹródła, pozycjaCelu}} w kolejności rosnącej.
+     */
+    private int[][] align(int[] sourceElements, int sourceFrom, int sourceTo, int[] targetElements, int targetFrom,
+                          int targetTo) throws IOException {
+        int n = sourceTo - sourceFrom;
+        int m = targetTo - targetFrom;
+        if (n == 0 || m == 0 || (long) (n + 1) * (m + 1) > MAX_LCS_CELLS) {
+            return new int[0][];
+        }
+        EqualityClasses classes = new EqualityClasses();
+        int[] a = new int[n];
+        int[] b = new int[m];
+        for (int i = 0; i < n; i++) {
+            a[i] = classes.id(source, sourceHashes, sourceElements[sourceFrom + i]);
+        }
+        for (int j = 0; j < m; j++) {
+            b[j] = classes.id(target, targetHashes, targetElements[targetFrom + j]);
+        }
+        int[][] lengths = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lengths[i][j] = a[i] == b[j] ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        int[][] matches = new int[lengths[0][0]][];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (a[i] == b[j]) {
+                matches[count++] = new int[]{sourceFrom + i, targetFrom + j};
+                i++;
+                j++;
+            } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Zwraca indeksy wartości pól obiektu według nazw pól.
+     */
+    private static Map<String, Integer> fields(JsonTape tape, int object) throws IOException {
+        Map<String, Integer> fields = new HashMap<>();
+        for (int i = object + 1; tape.token(i) == JsonToken.FIELD_NAME; i = tape.next(i + 1)) {
+            fields.put(tape.text(i), i + 1);
+        }
+        return fields;
+    }
+
+    /**
+     * Zwraca indeksy pierwszych tokenów elementów tablicy.
+     */
+    private static int[] elements(JsonTape tape, int array) {
+        int[] elements = new int[16];
+        int count = 0;
+        for (int i = array + 1; tape.token(i) != JsonToken.END_ARRAY; i = tape.next(i)) {
+            if (count == elements.length) {
+                elements = Arrays.copyOf(elements, count * 2);
+            }
+            elements[count++] = i;
+        }
+        return Arrays.copyOf(elements, count);
+    }
+
+    /**
+     * Zwraca typ węzła, który odpowiadałby wartości zaczynającej się od danego tokenu.
+     */
+    private static JsonNodeType type(JsonToken token) {
+        return switch (token) {
+            case START_OBJECT -> JsonNodeType.OBJECT;
+            case START_ARRAY -> JsonNodeType.ARRAY;
+            case VALUE_STRING -> JsonNodeType.STRING;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> JsonNodeType.NUMBER;
+            case VALUE_TRUE, VALUE_FALSE -> JsonNodeType.BOOLEAN;
+            default -> JsonNodeType.NULL;
+        };
+    }
+
+    /**
+     * Zwraca tekst wartości prostej w postaci, w której równe wartości mają równy tekst (liczby zmiennoprzecinkowe
+     * są porównywane jako {@code double}, tak jak w drzewie dokumentu).
+     */
+    private static String leaf(JsonTape tape, int index) throws IOException {
+        String text = tape.text(index);
+        return tape.token(index) == JsonToken.VALUE_NUMBER_FLOAT ? Double.toString(Double.parseDouble(text)) : text;
+    }
+
+    /**
+     * Klasy równości elementów tablic: grupowane według skrótu wartości i rozróżniane w obrębie skrótu
+     * porównaniem struktury.
+     */
+    private static final class EqualityClasses {
+        private final Map<Long, List<Member>> byHash = new HashMap<>();
+        private int count;
+
+        private int id(JsonTape tape, long[] hashes, int index) throws IOException {
+            List<Member> members = byHash.computeIfAbsent(hashes[index], hash -> new ArrayList<>(1));
+            for (Member member : members) {
+                if (equal(member.tape(), member.hashes(), member.index(), tape, hashes, index)) {
+                    return member.id();
+                }
+            }
+            members.add(new Member(tape, hashes, index, count));
+            return count++;
+        }
+    }
+
+    /**
+     * Przedstawiciel klasy równości elementów tablic.
+     */
+    private record Member(JsonTape tape, long[] hashes, int index, int id) {
+    }
+}
@@ -0,0 +1,41 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
+
+/**
+ * Interfejs procesora JSON działającego na drzewie dokumentu.
+ * <p>
+ * Uzupełnia {@link JsonProcessor#process(String)} o operację na już sparsowanym drzewie {@link JsonNode}.
+ * Dzięki temu łańcuch dekoratorów może sparsować dokument raz, zastosować wszystkie transformacje
+ * na tej samej reprezentacji w pamięci i zserializować wynik dopiero na końcu.
+ * </p>
+ * <p>
+ * Implementacje nie modyfikują przekazanego drzewa - wynik jest nowym drzewem, które może współdzielić
+ * niezmienione poddrzewa z wejściem.
+ * </p>
+ */
+public interface JsonTreeProcessor extends JsonProcessor {
+    /**
+     * Procesuje dany JSON w formie drzewa.
+     *
+     * @param json Drzewo JSON, które ma zostać przetworzone.
+     * @return Przetworzone drzewo JSON.
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    JsonNode process(JsonNode json) throws JsonProcessingException;
+
+    /**
+     * Serializuje drzewo zwrócone przez {@link #process(JsonNode)} do postaci tekstowej,
+     * w formacie właściwym dla tego procesora (np. z wcięciami dla {@link Prettify}).
+     *
+     * @param json Drzewo JSON do serializacji.
+     * @return JSON w formie tekstowej (String).
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas serializacji.
+     */
+    default String serialize(JsonNode json) throws JsonProcessingException {
+        return jsonWriter.writeValueAsString(json);
+    }
+}
@@ -1,7 +1,12 @@
 package pl.put.poznan.transformer.logic;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Dekorator do minimalizacji JSON.
  * <p>
@@ -9,29 +14,56 @@ import com.fasterxml.jackson.databind.JsonNode;
  * Używa innego procesora JSON (przekazanego w konstruktorze) do przetworzenia JSON-a, a następnie zwraca wersję
  * JSON-a, która została zminimalizowana poprzez usunięcie zbędnych białych znaków (spacji, nowych linii itp.).
  * </p>
+ * <p>
+ * Tryb strumieniowy ({@link #process(InputStream, OutputStream)}) kopiuje tokeny z parsera bezpośrednio
+ * do generatora, bez budowania drzewa {@link JsonNode}, więc zużycie pamięci nie zależy od rozmiaru dokumentu.
+ * </p>
  */
-public class Minify extends BaseJsonProcessor {
-    private final JsonProcessor processor;
+public class Minify extends JsonProcessorDecorator {
     /**
      * Konstruktor klasy Minify.
      *
      * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a przed minimalizacją.
      */
     public Minify(JsonProcessor processor) {
-        this.processor = processor;
+        super(processor);
+    }
+    /**
+     * Minimalizacja nie zmienia struktury dokumentu - drzewo jest zwracane bez zmian,
+     * a brak białych znaków zapewnia serializacja bez formatowania.
+     *
+     * @param json Drzewo JSON zwrócone przez procesor wewnętrzny.
+     * @return To samo drzewo JSON.
+     */
+    @Override
+    protected JsonNode transform(JsonNode json) {
+        return json;
+    }
+    /**
+     * Minimalizacja nie zmienia tokenów dokumentu, więc zwracany jest strumień tokenów procesora wewnętrznego.
+     *
+     * @param parser Parser dokumentu wejściowego.
+     * @return Parser zwracający tokeny przetworzone przez procesor wewnętrzny.
+     * @throws IOException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     */
+    @Override
+    public JsonParser process(JsonParser parser) throws IOException {
+        return processor.process(parser);
     }
     /**
-     * Przetwarza dany JSON, minimalizując jego rozmiar.
-     * <p>Metoda najpierw przetwarza JSON za pomocą innego procesora przekazanego w konstruktorze,
-     * a następnie minimalizuje wynikowy JSON, usuwając zbędne białe znaki, takie jak spacje, tabulatory i nowe linie.</p>
+     * Strumieniowo minimalizuje JSON.
+     * <p>Tokeny z procesora wewnętrznego są kopiowane jeden po drugim do generatora piszącego bez białych znaków,
+     * bez tworzenia drzewa dokumentu ani pośrednich obiektów String.</p>
      *
-     * @param json JSON w formie tekstowej (String), który ma zostać przetworzony.
-     * @return Zminimalizowany JSON w formie tekstowej (String).
-     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany zminimalizowany JSON (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub JSON jest nieprawidłowy.
      */
     @Override
-    public String process(String json) throws JsonProcessingException {
-        JsonNode jsonNode = objectMapper.readTree(processor.process(json));
-        return objectMapper.writeValueAsString(jsonNode);
+    public void process(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = processor.process(createParser(input));
+             JsonGenerator generator = createGenerator(output)) {
+            copyTokens(parser, generator);
+        }
     }
 }
@@ -0,0 +1,95 @@
+package pl.put.poznan.transformer.logic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Zadania wykonywane równolegle, których wyniki są odbierane w kolejności zlecenia.
+ * <p>
+ * Liczba zadań w toku jest ograniczona oknem: zlecenie kolejnego zadania przy pełnym oknie czeka na najstarsze
+ * zadanie i przekazuje jego wynik do odbiorcy. Dzięki temu pamięć zajmują tylko wyniki z okna, a wolny odbiorca
+ * (np. klient HTTP) spowalnia czytanie wejścia zamiast gromadzenia wyników.
+ * </p>
+ *
+ * @param <T> Typ wyniku zadania.
+ */
+final class OrderedTasks<T> {
+    /**
+     * Odbiorca wyników zadań.
+     *
+     * @param <T> Typ wyniku zadania.
+     */
+    interface Sink<T> {
+        void accept(T result) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final int window;
+    private final Sink<T> sink;
+    private final Deque<Future<T>> pending = new ArrayDeque<>();
+
+    OrderedTasks(ExecutorService executor, int window, Sink<T> sink) {
+        this.executor = executor;
+        this.window = window;
+        this.sink = sink;
+    }
+
+    /**
+     * Zleca zadanie, najpierw odbierając najstarszy wynik, jeśli okno jest pełne.
+     *
+     * @param task Zadanie.
+     * @throws IOException Jeśli któreś z wcześniejszych zadań lub odbiorca zgłosili błąd.
+     */
+    void submit(Callable<T> task) throws IOException {
+        if (pending.size() >= window) {
+            drain();
+        }
+        pending.add(executor.submit(task));
+    }
+
+    /**
+     * Czeka na wszystkie zlecone zadania i przekazuje ich wyniki do odbiorcy.
+     *
+     * @throws IOException Jeśli któreś z zadań lub odbiorca zgłosili błąd.
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        try {
+            sink.accept(pending.poll().get());
+        } catch (ExecutionException e) {
+            cancel();
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Przerwano przetwarzanie równoległe");
+        } catch (IOException | RuntimeException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    private void cancel() {
+        for (Future<T> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,257 @@
+package pl.put.poznan.transformer.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dopasowywanie ścieżek w dokumencie JSON do wyrażeń ścieżkowych.
+ * <p>
+ * Wyrażenia są kompilowane raz do drzewa prefiksowego (trie), a dopasowanie odbywa się krok po kroku podczas
+ * przechodzenia dokumentu: każdy krok (pole obiektu lub element tablicy) przeprowadza bieżący {@link State}
+ * w kolejny, bez budowania tekstowych ścieżek. Obsługiwana składnia:
+ * </p>
+ * <ul>
+ *     <li>{@code user.details.email} - kolejne pola obiektów,</li>
+ *     <li>{@code items[*].price}, {@code items[0]} - dowolny lub konkretny element tablicy,</li>
+ *     <li>{@code user.*} - dowolne pole obiektu,</li>
+ *     <li>{@code **.password} - dowolna liczba poziomów (także zero) przed kolejnym segmentem.</li>
+ * </ul>
+ * <p>
+ * Pojedyncza nazwa bez kropek i nawiasów (np. {@code name}) oznacza pole najwyższego poziomu.
+ * Kropka oddziela niepuste nazwy pól - wyrażenia z pustym segmentem (np. {@code a..b}, {@code .a}, {@code a.}
+ * lub {@code a.[0]}) są odrzucane.
+ * Instancje są niezmienne i bezpieczne wątkowo. Stany odpowiadające pojedynczym węzłom drzewa są tworzone przy
+ * kompilacji, więc przejścia wzdłuż wyrażeń bez symboli wieloznacznych (najczęstszy przypadek) nie alokują
+ * pamięci - sprowadzają się do odczytu z mapy. Nazwy pól w wyrażeniach są kanonizowane ({@link FieldNames}),
+ * więc dla nazw z parsera odczyt używa zapamiętanego skrótu i kończy się porównaniem referencji.
+ * </p>
+ */
+public final class PathMatcher {
+    private final Node root = new Node(false);
+    private final State initial;
+
+    /**
+     * Kompiluje wyrażenia ścieżkowe.
+     *
+     * @param expressions Wyrażenia ścieżkowe.
+     * @throws IllegalArgumentException Jeśli wyrażenie jest puste lub niepoprawne.
+     */
+    public PathMatcher(String... expressions) {
+        for (String expression : expressions) {
+            compile(expression);
+        }
+        List<Node> pending = new ArrayList<>(List.of(root));
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (node.state == null) {
+                node.state = State.of(List.of(node));
+                pending.addAll(node.fields.values());
+                pending.addAll(node.indexes.values());
+                for (Node child : new Node[]{node.anyField, node.anyIndex, node.descendants}) {
+                    if (child != null) {
+                        pending.add(child);
+                    }
+                }
+            }
+        }
+        initial = root.state;
+    }
+
+    /**
+     * Zwraca stan odpowiadający korzeniowi dokumentu.
+     *
+     * @return Stan początkowy.
+     */
+    public State root() {
+        return initial;
+    }
+
+    /**
+     * Węzeł drzewa prefiksowego wyrażeń.
+     */
+    private static final class Node {
+        private final boolean recursive;
+        private final Map<String, Node> fields = new HashMap<>();
+        private final Map<Integer, Node> indexes = new HashMap<>();
+        private Node anyField;
+        private Node anyIndex;
+        private Node descendants;
+        private boolean terminal;
+        /**
+         * Stan złożony tylko z tego węzła (i jego domknięcia), wyznaczony przy kompilacji.
+         */
+        private State state;
+
+        private Node(boolean recursive) {
+            this.recursive = recursive;
+        }
+    }
+
+    /**
+     * Stan dopasowania dla bieżącego miejsca w dokumencie - zbiór węzłów drzewa wyrażeń, które mogą jeszcze
+     * zostać dopasowane.
+     */
+    public static final class State {
+        private static final State EMPTY = new State(new Node[0], false);
+
+        private final Node[] nodes;
+        private final boolean matched;
+
+        private State(Node[] nodes, boolean matched) {
+            this.nodes = nodes;
+            this.matched = matched;
+        }
+
+        private static State of(List<Node> nodes) {
+            if (nodes.isEmpty()) {
+                return EMPTY;
+            }
+            List<Node> closure = new ArrayList<>(nodes.size());
+            boolean matched = false;
+            for (Node node : nodes) {
+                for (; node != null && !closure.contains(node); node = node.descendants) {
+                    closure.add(node);
+                    matched |= node.terminal;
+                }
+            }
+            return new State(closure.toArray(new Node[0]), matched);
+        }
+
+        /**
+         * Sprawdza, czy bieżące miejsce w dokumencie pasuje do któregoś z wyrażeń.
+         *
+         * @return {@code true}, jeśli ścieżka do bieżącego miejsca jest dopasowana.
+         */
+        public boolean matched() {
+            return matched;
+        }
+
+        /**
+         * Sprawdza, czy żadne wyrażenie nie może już zostać dopasowane w poddrzewie bieżącego miejsca.
+         *
+         * @return {@code true}, jeśli poddrzewo można pominąć bez dalszego sprawdzania.
+         */
+        public boolean isEmpty() {
+            return nodes.length == 0;
+        }
+
+        /**
+         * Przechodzi do pola obiektu.
+         *
+         * @param name Nazwa pola.
+         * @return Stan dla wartości pola.
+         */
+        public State field(String name) {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+            if (nodes.length == 1 && !nodes[0].recursive && nodes[0].anyField == null) {
+                Node next = nodes[0].fields.get(name);
+                return next != null ? next.state : EMPTY;
+            }
+            List<Node> next = new ArrayList<>(2);
+            for (Node node : nodes) {
+                add(next, node.fields.get(name));
+                add(next, node.anyField);
+                if (node.recursive) {
+                    next.add(node);
+                }
+            }
+            return of(next);
+        }
+
+        /**
+         * Przechodzi do elementu tablicy.
+         *
+         * @param index Indeks elementu.
+         * @return Stan dla elementu tablicy.
+         */
+        public State index(int index) {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+            if (nodes.length == 1 && !nodes[0].recursive) {
+                Node next = nodes[0].anyIndex != null ? nodes[0].anyIndex : nodes[0].indexes.get(index);
+                if (nodes[0].anyIndex == null || nodes[0].indexes.isEmpty()) {
+                    return next != null ? next.state : EMPTY;
+                }
+            }
+            List<Node> next = new ArrayList<>(2);
+            for (Node node : nodes) {
+                if (!node.indexes.isEmpty()) {
+                    add(next, node.indexes.get(index));
+                }
+                add(next, node.anyIndex);
+                if (node.recursive) {
+                    next.add(node);
+                }
+            }
+            return of(next);
+        }
+
+        private static void add(List<Node> next, Node node) {
+            if (node != null) {
+                next.add(node);
+            }
+        }
+    }
+
+    /**
+     * Dodaje wyrażenie do drzewa prefiksowego.
+     *
+     * @param expression Wyrażenie ścieżkowe.
+     */
+    private void compile(String expression) {
+        if (expression == null || expression.isEmpty()) {
+            throw new IllegalArgumentException("Puste wyrażenie ścieżki");
+        }
+        Node node = root;
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (c == '.') {
+                if (i == 0 || i + 1 == expression.length() || expression.charAt(i + 1) == '.'
+                        || expression.charAt(i + 1) == '[') {
+                    throw new IllegalArgumentException("Pusty segment w wyrażeniu: " + expression);
+                }
+                i++;
+            } else if (c == '[') {
+                int end = expression.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Niezamknięty nawias w wyrażeniu: " + expression);
+                }
+                node = index(node, expression.substring(i + 1, end), expression);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < expression.length() && expression.charAt(end) != '.' && expression.charAt(end) != '[') {
+                    end++;
+                }
+                node = field(node, expression.substring(i, end));
+                i = end;
+            }
+        }
+        node.terminal = true;
+    }
+
+    private static Node field(Node node, String name) {
+        return switch (name) {
+            case "**" -> node.descendants != null ? node.descendants : (node.descendants = new Node(true));
+            case "*" -> node.anyField != null ? node.anyField : (node.anyField = new Node(false));
+            default -> node.fields.computeIfAbsent(FieldNames.canonical(name), key -> new Node(false));
+        };
+    }
+
+    private static Node index(Node node, String index, String expression) {
+        if (index.equals("*")) {
+            return node.anyIndex != null ? node.anyIndex : (node.anyIndex = new Node(false));
+        }
+        try {
+            return node.indexes.computeIfAbsent(Integer.parseInt(index), key -> new Node(false));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Niepoprawny indeks tablicy w wyrażeniu: " + expression, e);
+        }
+    }
+}
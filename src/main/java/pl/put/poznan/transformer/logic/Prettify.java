@@ -1,7 +1,16 @@
 package pl.put.poznan.transformer.logic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 
 /**
  * Dekorator do upiększania JSON.
@@ -10,31 +19,119 @@ import com.fasterxml.jackson.databind.JsonNode;
  * czyniąc go bardziej czytelnym. Używa innego procesora JSON (przekazanego w konstruktorze) do przetworzenia JSON-a,
  * a następnie formatuje wynikowy JSON, dodając odpowiednie wcięcia, nowe linie oraz spacje, aby poprawić jego czytelność.
  * </p>
+ * <p>
+ * Tryb strumieniowy ({@link #process(InputStream, OutputStream)}) czyta bajty wejścia i zapisuje bajty wyjścia
+ * bezpośrednio, bez dekodowania dokumentu do obiektów String ani budowania drzewa {@link JsonNode}.
+ * </p>
+ * <p>
+ * Wcięcie, sortowanie kluczy, największą głębokość formatowaną wielowierszowo i szerokość wiersza dla krótkich tablic
+ * określa {@link PrettyFormat}; ustawienia inne niż domyślne są realizowane przez {@link PrettyWriter}.
+ * </p>
  */
-public class Prettify extends BaseJsonProcessor {
-    private final JsonProcessor processor;
+public class Prettify extends JsonProcessorDecorator {
+    private final PrettyFormat format;
+    private final boolean standard;
     /**
-     * Konstruktor klasy Prettify.
+     * Konstruktor klasy Prettify z domyślnym formatowaniem.
      *
      * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a przed upiększaniem.
      */
     public Prettify(JsonProcessor processor) {
-        this.processor = processor;
+        this(processor, PrettyFormat.DEFAULT);
+    }
+    /**
+     * Konstruktor klasy Prettify.
+     *
+     * @param processor Procesor JSON, który ma zostać zastosowany do wstępnego przetworzenia JSON-a przed upiększaniem.
+     * @param format Ustawienia formatowania.
+     */
+    public Prettify(JsonProcessor processor, PrettyFormat format) {
+        super(processor);
+        this.format = format;
+        this.standard = format.equals(PrettyFormat.DEFAULT);
+    }
+    /**
+     * Upiększanie nie zmienia struktury dokumentu - drzewo jest zwracane bez zmian.
+     *
+     * @param json Drzewo JSON zwrócone przez procesor wewnętrzny.
+     * @return To samo drzewo JSON.
+     */
+    @Override
+    protected JsonNode transform(JsonNode json) {
+        return json;
+    }
+    /**
+     * Zwraca obiekt zapisujący JSON z wcięciami i nowymi liniami.
+     *
+     * @return Obiekt {@link ObjectWriter} z domyślnym formatowaniem.
+     */
+    @Override
+    protected ObjectWriter writer() {
+        return prettyJsonWriter;
+    }
+    /**
+     * Serializuje drzewo z wcięciami według ustawień formatowania.
+     *
+     * @param json Drzewo JSON do serializacji.
+     * @return Upiększony JSON w formie tekstowej (String).
+     * @throws JsonProcessingException Jeśli wystąpi błąd podczas serializacji.
+     */
+    @Override
+    public String serialize(JsonNode json) throws JsonProcessingException {
+        if (standard) {
+            return super.serialize(json);
+        }
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = jsonWriter.getFactory().createGenerator(writer)) {
+            PrettyWriter.write(format, json, generator);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw JsonMappingException.fromUnexpectedIOE(e);
+        }
+        return writer.toString();
     }
     /**
-     * Przetwarza dany JSON, upiększając jego format.
-     * <p>Metoda najpierw przetwarza JSON za pomocą innego procesora przekazanego w konstruktorze,
-     * a następnie formatuje wynikowy JSON, stosując odpowiednie wcięcia, nowe linie oraz spacje,
-     * aby zwiększyć jego czytelność (tzw. "prettifying").</p>
+     * Upiększanie nie zmienia tokenów dokumentu, więc zwracany jest strumień tokenów procesora wewnętrznego.
      *
-     * @param json JSON w formie tekstowej (String), który ma zostać przetworzony.
-     * @return Upiększony (sformatowany) JSON w formie tekstowej (String).
-     * @throws JsonProcessingException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
+     * @param parser Parser dokumentu wejściowego.
+     * @return Parser zwracający tokeny przetworzone przez procesor wewnętrzny.
+     * @throws IOException Jeśli wystąpi błąd podczas przetwarzania JSON-a.
      */
     @Override
-    public String process(String json) throws JsonProcessingException {
-        JsonNode jsonNode = objectMapper.readTree(processor.process(json));
-        return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonNode);
+    public JsonParser process(JsonParser parser) throws IOException {
+        return processor.process(parser);
+    }
+    /**
+     * Strumieniowo upiększa JSON.
+     * <p>Tokeny z procesora wewnętrznego są kopiowane jeden po drugim do generatora formatującego według ustawień,
+     * dając ten sam wynik co {@link #process(String)}.</p>
+     *
+     * @param input Strumień z JSON-em wejściowym (UTF-8).
+     * @param output Strumień, do którego zostanie zapisany upiększony JSON (UTF-8).
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(InputStream input, OutputStream output) throws IOException {
+        try (JsonParser parser = createParser(input);
+             JsonGenerator generator = createGenerator(output)) {
+            process(parser, generator);
+        }
+    }
+    /**
+     * Upiększa tokeny odczytywane z parsera (np. z taśmy {@link JsonTape}), zapisując je do generatora.
+     *
+     * @param input Parser ustawiony przed pierwszym tokenem dokumentu wejściowego.
+     * @param generator Generator, do którego zostanie zapisany upiększony JSON.
+     * @throws IOException Jeśli wystąpi błąd odczytu, zapisu lub JSON jest nieprawidłowy.
+     */
+    @Override
+    public void process(JsonParser input, JsonGenerator generator) throws IOException {
+        JsonParser parser = processor.process(input);
+        if (standard) {
+            copyTokens(parser, generator.useDefaultPrettyPrinter());
+        } else {
+            PrettyWriter.write(format, parser, generator);
+        }
     }
 }
-
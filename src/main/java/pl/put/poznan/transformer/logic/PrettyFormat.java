@@ -0,0 +1,85 @@
+package pl.put.poznan.transformer.logic;
+
+import java.util.List;
+
+/**
+ * Ustawienia upiększania JSON-a ({@link Prettify}).
+ * <p>
+ * Domyślne ustawienia ({@link #DEFAULT}) dają standardowe formatowanie Jacksona, takie samo jak dotychczas.
+ * Pozostałe są realizowane przez strumieniowy formater, który zapisuje każdy element w osobnym wierszu,
+ * a klucz od wartości oddziela {@code ": "}.
+ * </p>
+ *
+ * @param indent Wcięcie jednego poziomu (spacje lub tabulatory).
+ * @param sortKeys Czy sortować klucze obiektów. Wymaga zbuforowania każdego obiektu najwyższego poziomu
+ *                 (dla tablicy obiektów - każdego elementu osobno).
+ * @param maxDepth Największa głębokość formatowana wielowierszowo; głębsze poddrzewa są zapisywane w jednym wierszu.
+ * @param lineWidth Szerokość wiersza, w której mieszczą się tablice wartości prostych zapisywane w jednym wierszu
+ *                  ({@code 0} - każdy element w osobnym wierszu).
+ */
+public record PrettyFormat(String indent, boolean sortKeys, int maxDepth, int lineWidth) {
+    /**
+     * Standardowe formatowanie: wcięcie dwiema spacjami, bez sortowania i bez ograniczenia głębokości.
+     */
+    public static final PrettyFormat DEFAULT = new PrettyFormat("  ", false, Integer.MAX_VALUE, 0);
+    private static final int MAX_INDENT = 16;
+
+    /**
+     * Sprawdza poprawność ustawień.
+     *
+     * @throws IllegalArgumentException Jeśli wcięcie zawiera inne znaki niż spacje i tabulatory
+     *                                  lub głębokość albo szerokość wiersza są ujemne.
+     */
+    public PrettyFormat {
+        if (indent == null || indent.length() > MAX_INDENT || !indent.chars().allMatch(c -> c == ' ' || c == '\t')) {
+            throw new IllegalArgumentException("Nieprawidłowe wcięcie: " + indent);
+        }
+        if (maxDepth < 0 || lineWidth < 0) {
+            throw new IllegalArgumentException("Głębokość i szerokość wiersza nie mogą być ujemne");
+        }
+    }
+
+    /**
+     * Odczytuje ustawienia z listy opcji, np. {@code ["indent=tab", "sortKeys", "maxDepth=3", "lineWidth=80"]}.
+     * <p>Obsługiwane opcje: {@code indent=N} (liczba spacji, najwyżej 16) lub {@code indent=tab}, {@code sortKeys},
+     * {@code maxDepth=N} i {@code lineWidth=N}. Pominięte opcje mają wartości z {@link #DEFAULT}.</p>
+     *
+     * @param options Lista opcji.
+     * @return Ustawienia upiększania.
+     * @throws IllegalArgumentException Jeśli opcja jest nieznana lub ma niepoprawną wartość.
+     */
+    public static PrettyFormat parse(List<String> options) {
+        String indent = DEFAULT.indent();
+        boolean sortKeys = DEFAULT.sortKeys();
+        int maxDepth = DEFAULT.maxDepth();
+        int lineWidth = DEFAULT.lineWidth();
+        for (String option : options) {
+            int separator = option.indexOf('=');
+            String name = separator < 0 ? option : option.substring(0, separator);
+            String value = separator < 0 ? null : option.substring(separator + 1);
+            switch (name) {
+                case "indent" -> indent = "tab".equals(value) ? "\t" : " ".repeat(number(option, value, MAX_INDENT));
+                case "sortKeys" -> sortKeys = value == null || Boolean.parseBoolean(value);
+                case "maxDepth" -> maxDepth = number(option, value, Integer.MAX_VALUE);
+                case "lineWidth" -> lineWidth = number(option, value, Integer.MAX_VALUE);
+                default -> throw new IllegalArgumentException("Nieznana opcja formatowania: " + option);
+            }
+        }
+        return new PrettyFormat(indent, sortKeys, maxDepth, lineWidth);
+    }
+
+    /**
+     * Odczytuje nieujemną liczbę z wartości opcji.
+     */
+    private static int number(String option, String value, int max) {
+        try {
+            int number = Integer.parseInt(String.valueOf(value));
+            if (number >= 0 && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+            // zgłaszane poniżej
+        }
+        throw new IllegalArgumentException("Nieprawidłowa wartość opcji formatowania: " + option);
+    }
+}
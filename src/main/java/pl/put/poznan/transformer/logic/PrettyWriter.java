@@ -0,0 +1,248 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.PrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+
+/**
+ * Strumieniowy formater JSON-a według ustawień {@link PrettyFormat}.
+ * <p>
+ * Tokeny są kopiowane z parsera do generatora, a wcięcia i nowe linie wstawia ten obiekt jako {@link PrettyPrinter}
+ * generatora. Pamięć nie zależy od rozmiaru dokumentu: tablica jest czytana z wyprzedzeniem tylko do szerokości
+ * wiersza (żeby sprawdzić, czy zmieści się w jednym), a cały obiekt jest buforowany tylko przy sortowaniu kluczy.
+ * </p>
+ * <p>
+ * Obiekt przechowuje stan formatowania jednego dokumentu, więc dla każdego generatora tworzony jest nowy.
+ * </p>
+ */
+final class PrettyWriter implements PrettyPrinter {
+    private final PrettyFormat format;
+    private char[] indentation = new char[0];
+    /**
+     * Liczba otwartych struktur (obiektów i tablic).
+     */
+    private int depth;
+    /**
+     * Poziom tablicy zapisywanej w jednym wierszu (wraz z zawartością) lub {@link Integer#MAX_VALUE}.
+     */
+    private int inlineFrom = Integer.MAX_VALUE;
+
+    private PrettyWriter(PrettyFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Kopiuje wszystkie tokeny z parsera do generatora, formatując je.
+     *
+     * @param format Ustawienia formatowania.
+     * @param parser Źródło tokenów.
+     * @param generator Generator, do którego zapisywany jest wynik.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub zapisu.
+     */
+    static void write(PrettyFormat format, JsonParser parser, JsonGenerator generator) throws IOException {
+        PrettyWriter writer = new PrettyWriter(format);
+        generator.setPrettyPrinter(writer);
+        writer.copy(parser, generator, format.sortKeys());
+        generator.flush();
+    }
+
+    /**
+     * Zapisuje drzewo JSON do generatora, formatując je.
+     *
+     * @param format Ustawienia formatowania.
+     * @param json Drzewo JSON.
+     * @param generator Generator, do którego zapisywany jest wynik.
+     * @throws IOException Jeśli wystąpi błąd zapisu.
+     */
+    static void write(PrettyFormat format, JsonNode json, JsonGenerator generator) throws IOException {
+        JsonNode tree = format.sortKeys() ? sorted(json) : json;
+        try (JsonParser parser = tree.traverse(jsonReader)) {
+            PrettyWriter writer = new PrettyWriter(format);
+            generator.setPrettyPrinter(writer);
+            writer.copy(parser, generator, false);
+        }
+        generator.flush();
+    }
+
+    private void copy(JsonParser parser, JsonGenerator generator, boolean sort) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            copy(token, parser, generator, sort);
+        }
+    }
+
+    private void copy(JsonToken token, JsonParser parser, JsonGenerator generator, boolean sort) throws IOException {
+        if (sort && token == JsonToken.START_OBJECT) {
+            try (JsonParser sorted = sorted(jsonReader.readTree(parser)).traverse(jsonReader)) {
+                copy(sorted, generator, false);
+            }
+        } else if (token == JsonToken.START_ARRAY && format.lineWidth() > 0 && !inline(depth + 1)) {
+            copyArray(parser, generator, sort);
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Kopiuje tablicę, zapisując ją w jednym wierszu, jeśli zawiera tylko wartości proste i mieści się
+     * w szerokości wiersza. Z wyprzedzeniem czytane są tylko wartości, które się w niej mieszczą.
+     */
+    private void copyArray(JsonParser parser, JsonGenerator generator, boolean sort) throws IOException {
+        int width = depth * format.indent().length() + 2;
+        String name = parser.currentName();
+        if (name != null) {
+            width += name.length() + 4;
+        }
+        TokenBuffer buffer = new TokenBuffer(parser);
+        JsonToken token;
+        int values = 0;
+        while ((token = parser.nextToken()) != null && token.isScalarValue()) {
+            width += parser.getTextLength() + (token == JsonToken.VALUE_STRING ? 2 : 0) + (values++ > 0 ? 2 : 0);
+            if (width > format.lineWidth()) {
+                break;
+            }
+            buffer.copyCurrentEvent(parser);
+        }
+        boolean inline = token == JsonToken.END_ARRAY && width <= format.lineWidth();
+        if (inline) {
+            inlineFrom = depth + 1;
+        }
+        generator.writeStartArray();
+        try (JsonParser buffered = buffer.asParser()) {
+            while (buffered.nextToken() != null) {
+                generator.copyCurrentEvent(buffered);
+            }
+        }
+        if (token != null) {
+            copy(token, parser, generator, sort);
+        }
+    }
+
+    /**
+     * Zwraca kopię drzewa z kluczami obiektów posortowanymi na każdym poziomie.
+     */
+    private static JsonNode sorted(JsonNode json) {
+        if (json.isObject()) {
+            List<String> names = new ArrayList<>(json.size());
+            json.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            ObjectNode result = JsonNodeFactory.instance.objectNode();
+            for (String name : names) {
+                result.set(name, sorted(json.get(name)));
+            }
+            return result;
+        }
+        if (json.isArray()) {
+            ArrayNode result = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode element : json) {
+                result.add(sorted(element));
+            }
+            return result;
+        }
+        return json;
+    }
+
+    private boolean inline(int level) {
+        return level > format.maxDepth() || level >= inlineFrom;
+    }
+
+    private void lineBreak(JsonGenerator generator, int level) throws IOException {
+        generator.writeRaw('\n');
+        int length = level * format.indent().length();
+        if (length > indentation.length) {
+            indentation = format.indent().repeat(level * 2).toCharArray();
+        }
+        generator.writeRaw(indentation, 0, length);
+    }
+
+    private void separator(JsonGenerator generator) throws IOException {
+        if (inline(depth)) {
+            generator.writeRaw(' ');
+        } else {
+            lineBreak(generator, depth);
+        }
+    }
+
+    private void end(JsonGenerator generator, int entries) throws IOException {
+        if (entries > 0 && !inline(depth)) {
+            lineBreak(generator, depth - 1);
+        }
+        if (depth == inlineFrom) {
+            inlineFrom = Integer.MAX_VALUE;
+        }
+        depth--;
+    }
+
+    @Override
+    public void writeRootValueSeparator(JsonGenerator generator) throws IOException {
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void writeStartObject(JsonGenerator generator) throws IOException {
+        generator.writeRaw('{');
+        depth++;
+    }
+
+    @Override
+    public void beforeObjectEntries(JsonGenerator generator) throws IOException {
+        if (!inline(depth)) {
+            lineBreak(generator, depth);
+        }
+    }
+
+    @Override
+    public void writeObjectFieldValueSeparator(JsonGenerator generator) throws IOException {
+        generator.writeRaw(": ");
+    }
+
+    @Override
+    public void writeObjectEntrySeparator(JsonGenerator generator) throws IOException {
+        generator.writeRaw(',');
+        separator(generator);
+    }
+
+    @Override
+    public void writeEndObject(JsonGenerator generator, int entries) throws IOException {
+        end(generator, entries);
+        generator.writeRaw('}');
+    }
+
+    @Override
+    public void writeStartArray(JsonGenerator generator) throws IOException {
+        generator.writeRaw('[');
+        depth++;
+    }
+
+    @Override
+    public void beforeArrayValues(JsonGenerator generator) throws IOException {
+        if (!inline(depth)) {
+            lineBreak(generator, depth);
+        }
+    }
+
+    @Override
+    public void writeArrayValueSeparator(JsonGenerator generator) throws IOException {
+        generator.writeRaw(',');
+        separator(generator);
+    }
+
+    @Override
+    public void writeEndArray(JsonGenerator generator, int entries) throws IOException {
+        end(generator, entries);
+        generator.writeRaw(']');
+    }
+}
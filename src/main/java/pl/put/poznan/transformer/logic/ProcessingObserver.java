@@ -0,0 +1,47 @@
+package pl.put.poznan.transformer.logic;
+
+/**
+ * Obserwator etapów przetwarzania w łańcuchu dekoratorów.
+ * <p>
+ * {@link JsonProcessorDecorator} mierzy osobno parsowanie dokumentu, transformację każdego dekoratora
+ * i serializację wyniku, a czasy przekazuje obserwatorowi zarejestrowanemu przez
+ * {@link BaseJsonProcessor#setObserver}. Dzięki temu pakiet logiki nie zależy od konkretnej biblioteki metryk.
+ * Domyślny obserwator {@link #NONE} niczego nie zapisuje.
+ * </p>
+ * <p>
+ * Metody są wywoływane w wątkach przetwarzających żądania, więc implementacje muszą być bezpieczne wątkowo
+ * i szybkie. Czasy są podawane w nanosekundach.
+ * </p>
+ */
+public interface ProcessingObserver {
+    /**
+     * Obserwator, który ignoruje wszystkie pomiary.
+     */
+    ProcessingObserver NONE = new ProcessingObserver() {
+    };
+
+    /**
+     * Wywoływana po sparsowaniu dokumentu wejściowego do drzewa.
+     *
+     * @param nanos Czas parsowania.
+     */
+    default void parsed(long nanos) {
+    }
+
+    /**
+     * Wywoływana po własnej transformacji dekoratora (bez czasu procesorów wewnętrznych).
+     *
+     * @param stage Nazwa etapu - prosta nazwa klasy dekoratora, np. {@code FilterInclude}.
+     * @param nanos Czas transformacji.
+     */
+    default void transformed(String stage, long nanos) {
+    }
+
+    /**
+     * Wywoływana po serializacji wyniku.
+     *
+     * @param nanos Czas serializacji.
+     */
+    default void serialized(long nanos) {
+    }
+}
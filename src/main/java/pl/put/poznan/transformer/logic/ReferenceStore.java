@@ -0,0 +1,314 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
+
+/**
+ * Magazyn dokumentów wzorcowych, z którymi porównywane są kolejne wersje tego samego dokumentu.
+ * <p>
+ * Dokument jest przesyłany raz i dostaje identyfikator; przy każdym porównaniu wystarczy przesłać nową wersję.
+ * Wzorzec jest przechowywany już sparsowany, razem ze skrótami wszystkich poddrzew ({@link JsonHashes}), więc
+ * porównanie nie parsuje ani nie indeksuje go ponownie. Porównanie może przesunąć wzorzec do nowej wersji - wtedy
+ * jej skróty, policzone i tak do porównania, stają się indeksem nowego wzorca.
+ * </p>
+ * <p>
+ * Wzorce w pamięci są ograniczone łączną szacowaną wagą; przy przekroczeniu limitu usuwane są najdawniej używane
+ * (LRU). Jeśli podano katalog, wzorce są też zapisywane na dysku: plik {@code <id>.json} z wersją bazową
+ * i plik {@code <id>.patch.ndjson} z różnicami kolejnych wersji (po jednym JSON Patch w linii). Wzorzec usunięty
+ * z pamięci jest wtedy odtwarzany z dysku przy następnym użyciu, a gdy plik różnic urośnie ponad wersję bazową,
+ * bieżąca wersja zastępuje bazową. Bez katalogu wzorzec usunięty z pamięci przepada.
+ * </p>
+ * <p>
+ * Wszystkie metody są bezpieczne wątkowo; porównania (najdroższa część) są wykonywane poza blokadą.
+ * Przekazane dokumenty stają się własnością magazynu i nie mogą być później modyfikowane.
+ * </p>
+ */
+public final class ReferenceStore {
+    /**
+     * Szacowany narzut pamięci jednego wpisu.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+    /**
+     * Szacowana pamięć jednego węzła drzewa razem z jego wpisem w indeksie skrótów.
+     */
+    private static final int NODE_BYTES = 128;
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, Snapshot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * Wersja dokumentu wzorcowego z indeksem skrótów poddrzew.
+     *
+     * @param id Identyfikator wzorca.
+     * @param version Numer wersji (pierwsza to {@code 1}, każde przesunięcie wzorca zwiększa go o jeden).
+     * @param document Dokument.
+     * @param hashes Skróty poddrzew dokumentu.
+     */
+    public record Snapshot(String id, int version, JsonNode document, JsonHashes hashes) {
+        private long weight() {
+            return ENTRY_OVERHEAD + (long) hashes.size() * NODE_BYTES;
+        }
+    }
+
+    /**
+     * Wynik porównania z wzorcem.
+     *
+     * @param version Wersja wzorca po porównaniu (następna, jeśli wzorzec przesunięto do porównywanego dokumentu).
+     * @param differences Różnice przekształcające wzorzec w porównywany dokument.
+     */
+    public record Comparison(int version, List<JsonDiff.Difference> differences) {
+    }
+
+    /**
+     * Liczniki magazynu.
+     *
+     * @param entries Liczba wzorców w pamięci.
+     * @param bytes Łączna szacowana waga wzorców w pamięci w bajtach.
+     */
+    public record Stats(int entries, long bytes) {
+    }
+
+    /**
+     * Konstruktor klasy ReferenceStore.
+     *
+     * @param maxBytes Maksymalna łączna szacowana waga wzorców w pamięci w bajtach.
+     * @param directory Katalog, w którym wzorce są zapisywane, lub {@code null}, jeśli mają być tylko w pamięci.
+     * @throws IOException Jeśli nie udało się utworzyć katalogu.
+     */
+    public ReferenceStore(long maxBytes, Path directory) throws IOException {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Zapisuje nowy dokument wzorcowy.
+     *
+     * @param document Dokument wzorcowy.
+     * @return Pierwsza wersja wzorca z nowym identyfikatorem.
+     * @throws IllegalArgumentException Jeśli dokument nie mieści się w limicie pamięci, a magazyn nie ma katalogu.
+     * @throws IOException Jeśli nie udało się zapisać wzorca na dysku.
+     */
+    public Snapshot add(JsonNode document) throws IOException {
+        Snapshot snapshot = new Snapshot(UUID.randomUUID().toString(), 1, document, JsonHashes.of(document));
+        if (directory == null && snapshot.weight() > maxBytes) {
+            throw new IllegalArgumentException("Dokument wzorcowy przekracza limit pamięci");
+        }
+        synchronized (this) {
+            if (directory != null) {
+                writeBase(snapshot);
+            }
+            cache(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Zwraca bieżącą wersję wzorca, odtwarzając ją z dysku, jeśli nie ma jej w pamięci.
+     *
+     * @param id Identyfikator wzorca.
+     * @return Bieżąca wersja wzorca.
+     * @throws NoSuchElementException Jeśli wzorzec nie istnieje.
+     * @throws IOException Jeśli nie udało się odczytać wzorca z dysku.
+     */
+    public synchronized Snapshot get(String id) throws IOException {
+        Snapshot snapshot = entries.get(id);
+        if (snapshot == null && directory != null && isValid(id) && Files.exists(basePath(id))) {
+            snapshot = load(id);
+            cache(snapshot);
+        }
+        if (snapshot == null) {
+            throw new NoSuchElementException("Nieznany dokument wzorcowy: " + id);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Porównuje dokument z bieżącą wersją wzorca.
+     * <p>Jeśli wzorzec jest przesuwany, a w tym czasie zrobiło to już inne porównanie, zostaje nowsza wersja
+     * zapisana przez tamto porównanie. Wzorzec nie jest też przesuwany, jeśli magazyn nie ma katalogu, a nowa
+     * wersja nie mieści się w limicie pamięci (jak w {@link #add}) - zostaje bieżąca wersja.</p>
+     *
+     * @param id Identyfikator wzorca.
+     * @param document Nowa wersja dokumentu.
+     * @param roll Czy po porównaniu dokument ma zastąpić wzorzec (jeśli się różnią).
+     * @return Wynik porównania.
+     * @throws NoSuchElementException Jeśli wzorzec nie istnieje.
+     * @throws IOException Jeśli nie udało się odczytać lub zapisać wzorca na dysku.
+     */
+    public Comparison compare(String id, JsonNode document, boolean roll) throws IOException {
+        Snapshot reference = get(id);
+        JsonHashes hashes = JsonHashes.of(document);
+        List<JsonDiff.Difference> differences = JsonDiff.diff(reference.document(), reference.hashes(), document, hashes);
+        int version = reference.version();
+        if (roll && !differences.isEmpty()) {
+            Snapshot next = new Snapshot(id, version + 1, document, hashes);
+            if (advance(reference, next, differences)) {
+                version = next.version();
+            }
+        }
+        return new Comparison(version, differences);
+    }
+
+    /**
+     * Usuwa wzorzec z pamięci i z dysku.
+     *
+     * @param id Identyfikator wzorca.
+     * @return {@code true}, jeśli wzorzec istniał.
+     * @throws IOException Jeśli nie udało się usunąć plików wzorca.
+     */
+    public synchronized boolean remove(String id) throws IOException {
+        Snapshot snapshot = entries.remove(id);
+        if (snapshot != null) {
+            bytes -= snapshot.weight();
+        }
+        boolean removed = snapshot != null;
+        if (directory != null && isValid(id)) {
+            removed |= Files.deleteIfExists(basePath(id));
+            Files.deleteIfExists(patchPath(id));
+        }
+        return removed;
+    }
+
+    /**
+     * Zwraca bieżące liczniki.
+     *
+     * @return Liczniki magazynu.
+     */
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), bytes);
+    }
+
+    /**
+     * Zastępuje wzorzec nową wersją, jeśli bieżąca wersja jest wciąż tą, z którą porównano dokument, a nowa
+     * wersja da się przechować. Na dysku dopisywane są tylko różnice.
+     */
+    private synchronized boolean advance(Snapshot previous, Snapshot next, List<JsonDiff.Difference> differences)
+            throws IOException {
+        Snapshot current = entries.get(previous.id());
+        if (current == null) {
+            try {
+                current = get(previous.id());
+            } catch (NoSuchElementException e) {
+                return false;
+            }
+        }
+        if (current.version() != previous.version() || (directory == null && next.weight() > maxBytes)) {
+            return false;
+        }
+        if (directory != null) {
+            Path patch = patchPath(next.id());
+            try (OutputStream output = Files.newOutputStream(patch, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                output.write(jsonWriter.writeValueAsBytes(JsonDiff.toPatch(differences)));
+                output.write('\n');
+            }
+            if (Files.size(patch) > Files.size(basePath(next.id()))) {
+                writeBase(next);
+            }
+        }
+        cache(next);
+        return true;
+    }
+
+    /**
+     * Zapisuje wzorzec w pamięci, usuwając najdawniej używane wzorce, jeśli przekroczony zostałby limit.
+     */
+    private void cache(Snapshot snapshot) {
+        Snapshot previous = entries.remove(snapshot.id());
+        if (previous != null) {
+            bytes -= previous.weight();
+        }
+        if (snapshot.weight() > maxBytes) {
+            return;
+        }
+        entries.put(snapshot.id(), snapshot);
+        bytes += snapshot.weight();
+        Iterator<Map.Entry<String, Snapshot>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().getValue().weight();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Zapisuje wersję bazową (atomowo, przez plik tymczasowy) i usuwa plik różnic.
+     */
+    private void writeBase(Snapshot snapshot) throws IOException {
+        ObjectNode base = JsonNodeFactory.instance.objectNode();
+        base.put("version", snapshot.version());
+        base.set("document", snapshot.document());
+        Path temporary = Files.createTempFile(directory, snapshot.id(), ".tmp");
+        try {
+            Files.write(temporary, jsonWriter.writeValueAsBytes(base));
+            Files.move(temporary, basePath(snapshot.id()), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        Files.deleteIfExists(patchPath(snapshot.id()));
+    }
+
+    /**
+     * Odtwarza bieżącą wersję wzorca z wersji bazowej i kolejnych różnic.
+     */
+    private Snapshot load(String id) throws IOException {
+        JsonNode base = jsonReader.readTree(Files.readAllBytes(basePath(id)));
+        JsonNode document = base.path("document");
+        int version = base.path("version").asInt(1);
+        Path patch = patchPath(id);
+        if (Files.exists(patch)) {
+            try (BufferedReader reader = Files.newBufferedReader(patch, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        document = JsonDiff.apply(document, jsonReader.readTree(line));
+                        version++;
+                    }
+                }
+            }
+        }
+        return new Snapshot(id, version, document, JsonHashes.of(document));
+    }
+
+    private Path basePath(String id) {
+        return directory.resolve(id + ".json");
+    }
+
+    private Path patchPath(String id) {
+        return directory.resolve(id + ".patch.ndjson");
+    }
+
+    /**
+     * Sprawdza, czy identyfikator ma postać UUID (i nie może wskazać pliku spoza katalogu).
+     */
+    private static boolean isValid(String id) {
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package pl.put.poznan.transformer.logic;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pamięć podręczna wyników przekształceń, adresowana treścią żądania.
+ * <p>
+ * Kluczem jest skrót SHA-256 z nazwy operacji, jej parametrów i treści dokumentu ({@link #key}), więc identyczne
+ * żądania trafiają w ten sam wpis niezależnie od klienta. Kryptograficzny skrót jest tu potrzebny, bo wynik jest
+ * zwracany bez porównywania treści - kolizja (także celowo wywołana przez klienta) oznaczałaby zwrócenie cudzego
+ * wyniku. Klucz służy również jako znacznik ETag wyniku.
+ * </p>
+ * <p>
+ * Rozmiar pamięci jest ograniczony łączną wagą wpisów w bajtach (szacowaną z długości klucza i wyniku); przy
+ * przekroczeniu limitu usuwane są najdawniej używane wpisy (LRU). Liczniki trafień, chybień i usunięć są dostępne
+ * przez {@link #stats()}. Wszystkie metody są bezpieczne wątkowo.
+ * </p>
+ */
+public final class ResultCache {
+    /**
+     * Szacowany narzut pamięci jednego wpisu (obiekty wpisu, klucza i wartości).
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Liczniki pamięci podręcznej.
+     *
+     * @param hits Liczba trafień.
+     * @param misses Liczba chybień.
+     * @param evictions Liczba wpisów usuniętych z powodu limitu rozmiaru.
+     * @param entries Bieżąca liczba wpisów.
+     * @param bytes Bieżąca łączna waga wpisów w bajtach.
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {
+    }
+
+    /**
+     * Konstruktor klasy ResultCache.
+     *
+     * @param maxBytes Maksymalna łączna waga wpisów w bajtach; {@code 0} lub mniej wyłącza zapamiętywanie wyników.
+     */
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Liczy klucz wyniku operacji.
+     *
+     * @param operation Nazwa operacji.
+     * @param parameters Parametry operacji w postaci tekstowej (pusty napis, jeśli ich nie ma).
+     * @param body Treść dokumentu.
+     * @return Skrót SHA-256 w postaci szesnastkowej.
+     */
+    public static String key(String operation, String parameters, String body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(operation.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(body.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Zwraca zapamiętany wynik.
+     *
+     * @param key Klucz wyniku.
+     * @return Wynik lub {@code null}, jeśli nie ma go w pamięci podręcznej.
+     */
+    public synchronized String get(String key) {
+        String value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Zapamiętuje wynik, usuwając najdawniej używane wpisy, jeśli przekroczony zostałby limit rozmiaru.
+     * Wynik cięższy niż cały limit nie jest zapamiętywany.
+     *
+     * @param key Klucz wyniku.
+     * @param value Wynik.
+     */
+    public synchronized void put(String key, String value) {
+        long weight = weigh(key, value);
+        if (weight > maxBytes) {
+            return;
+        }
+        String previous = entries.put(key, value);
+        if (previous != null) {
+            bytes -= weigh(key, previous);
+        }
+        bytes += weight;
+        Iterator<Map.Entry<String, String>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<String, String> entry = eldest.next();
+            bytes -= weigh(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Zwraca bieżące liczniki.
+     *
+     * @return Liczniki pamięci podręcznej.
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /**
+     * Sprawdza, czy nagłówek {@code If-None-Match} zawiera podany znacznik ETag.
+     * <p>Wartość {@code *} nie jest uznawana - znacznik jest wyznaczany z treści żądania, więc tylko dokładnie ten
+     * znacznik potwierdza, że klient ma już wynik dla tej treści.</p>
+     *
+     * @param ifNoneMatch Wartość nagłówka (może być {@code null}).
+     * @param etag Znacznik ETag w cudzysłowach.
+     * @return {@code true}, jeśli klient ma już aktualny wynik.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Szacuje wagę wpisu w bajtach (dwa bajty na znak, plus narzut wpisu).
+     */
+    private static long weigh(String key, String value) {
+        return ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+    }
+}
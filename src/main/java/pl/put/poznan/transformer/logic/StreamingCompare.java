@@ -0,0 +1,331 @@
+package pl.put.poznan.transformer.logic;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.createGenerator;
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.createParser;
+
+/**
+ * Strumieniowe porównywanie dwóch dokumentów JSON.
+ * <p>
+ * Klasa przechodzi jednocześnie po strumieniach tokenów obu dokumentów i zapisuje różnice jako operacje
+ * JSON Patch (RFC 6902) od razu po ich wykryciu, bez budowania drzewa żadnego z dokumentów. Dzięki temu
+ * porównanie dwóch bardzo dużych dokumentów wymaga pamięci proporcjonalnej do głębokości zagnieżdżenia,
+ * a nie do ich rozmiaru.
+ * </p>
+ * <p>
+ * Gdy kolejność pól w porównywanych obiektach przestaje się zgadzać, pozostałe pola obu obiektów są buforowane
+ * (z ograniczeniem liczby węzłów) i porównywane przez {@link JsonDiff}. Tablice są porównywane element po
+ * elemencie według indeksów - w przeciwieństwie do {@link JsonDiff} bez wyrównywania LCS, które wymagałoby
+ * zbuforowania całych tablic.
+ * </p>
+ */
+public class StreamingCompare {
+    /**
+     * Domyślny limit węzłów buforowanych przy rozbieżnej kolejności pól lub dla zamienianych wartości.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_NODES = 1_000_000;
+
+    private final int maxBufferedNodes;
+
+    /**
+     * Konstruktor klasy StreamingCompare z domyślnym limitem buforowania.
+     */
+    public StreamingCompare() {
+        this(DEFAULT_MAX_BUFFERED_NODES);
+    }
+
+    /**
+     * Konstruktor klasy StreamingCompare.
+     *
+     * @param maxBufferedNodes Maksymalna liczba węzłów, które mogą zostać zbuforowane dla jednej wartości
+     *                         lub jednej pary rozbieżnych obiektów.
+     */
+    public StreamingCompare(int maxBufferedNodes) {
+        this.maxBufferedNodes = maxBufferedNodes;
+    }
+
+    /**
+     * Kontener (obiekt lub tablica) otwarty w obu dokumentach jednocześnie.
+     * Ścieżka kontenera jest tworzona dopiero wtedy, gdy jest potrzebna do zapisania różnicy.
+     */
+    private static final class Frame {
+        private final Frame parent;
+        private final String field;
+        private final int index;
+        private final boolean array;
+        private JsonDiff.Path path;
+        private int size;
+
+        private Frame(Frame parent, String field, int index, boolean array) {
+            this.parent = parent;
+            this.field = field;
+            this.index = index;
+            this.array = array;
+        }
+
+        private JsonDiff.Path path() {
+            if (path == null) {
+                path = parent == null ? JsonDiff.Path.root()
+                        : field != null ? parent.path().field(field) : parent.path().index(index);
+            }
+            return path;
+        }
+
+        private JsonDiff.Path child(String field, int index) {
+            return field != null ? path().field(field) : path().index(index);
+        }
+    }
+
+    /**
+     * Porównuje dwa dokumenty odczytywane ze strumieni i zapisuje do strumienia wyjściowego tablicę operacji
+     * JSON Patch przekształcających pierwszy dokument w drugi.
+     *
+     * @param json1 Strumień z pierwszym dokumentem (UTF-8).
+     * @param json2 Strumień z drugim dokumentem (UTF-8).
+     * @param output Strumień, do którego zapisywane są różnice.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia, dokument jest nieprawidłowy lub przekroczono limit buforowania.
+     */
+    public void compare(InputStream json1, InputStream json2, OutputStream output) throws IOException {
+        try (JsonParser parser1 = createParser(json1);
+             JsonParser parser2 = createParser(json2)) {
+            compare(parser1, parser2, output);
+        }
+    }
+
+    /**
+     * Porównuje dwa dokumenty odczytywane z parserów i zapisuje do strumienia
+     * wyjściowego tablicę operacji JSON Patch przekształcających pierwszy dokument w drugi.
+     * Parsery nie są zamykane.
+     *
+     * @param parser1 Parser pierwszego dokumentu, ustawiony przed pierwszym tokenem.
+     * @param parser2 Parser drugiego dokumentu, ustawiony przed pierwszym tokenem.
+     * @param output Strumień, do którego zapisywane są różnice.
+     * @throws IOException Jeśli wystąpi błąd wejścia/wyjścia, dokument jest nieprawidłowy lub przekroczono limit buforowania.
+     */
+    public void compare(JsonParser parser1, JsonParser parser2, OutputStream output) throws IOException {
+        try (JsonGenerator generator = createGenerator(output)) {
+            generator.writeStartArray();
+            compare(parser1, parser2, generator);
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Porównuje dokumenty token po tokenie, zapisując różnice do generatora.
+     *
+     * @param parser1 Parser pierwszego dokumentu, ustawiony przed pierwszym tokenem.
+     * @param parser2 Parser drugiego dokumentu, ustawiony przed pierwszym tokenem.
+     * @param generator Generator, do którego zapisywane są operacje JSON Patch.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub zapisu.
+     */
+    private void compare(JsonParser parser1, JsonParser parser2, JsonGenerator generator) throws IOException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        parser1.nextToken();
+        parser2.nextToken();
+        compareValues(parser1, parser2, generator, stack, null, null, 0);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            JsonToken token1 = parser1.nextToken();
+            JsonToken token2 = parser2.nextToken();
+            if (frame.array) {
+                if (token1 == JsonToken.END_ARRAY || token2 == JsonToken.END_ARRAY) {
+                    finishArray(parser1, token1, parser2, token2, generator, frame);
+                    stack.pop();
+                } else {
+                    compareValues(parser1, parser2, generator, stack, frame, null, frame.size++);
+                }
+            } else if (token1 == JsonToken.FIELD_NAME && token2 == JsonToken.FIELD_NAME
+                    && parser1.getCurrentName().equals(parser2.getCurrentName())) {
+                String field = parser1.getCurrentName();
+                parser1.nextToken();
+                parser2.nextToken();
+                compareValues(parser1, parser2, generator, stack, frame, field, -1);
+            } else {
+                if (token1 != JsonToken.END_OBJECT || token2 != JsonToken.END_OBJECT) {
+                    ObjectNode rest1 = readRemainingFields(parser1);
+                    ObjectNode rest2 = readRemainingFields(parser2);
+                    for (JsonDiff.Difference difference : JsonDiff.diff(rest1, rest2, frame.path())) {
+                        write(generator, difference.operation(), difference.path(), difference.newValue());
+                    }
+                }
+                stack.pop();
+            }
+        }
+    }
+
+    /**
+     * Porównuje wartości, na których początku stoją oba parsery. Pary kontenerów tego samego rodzaju są odkładane
+     * na stos, a pozostałe różne wartości są zapisywane jako zamiana.
+     */
+    private void compareValues(JsonParser parser1, JsonParser parser2, JsonGenerator generator, Deque<Frame> stack,
+                               Frame parent, String field, int index) throws IOException {
+        JsonToken token1 = parser1.currentToken();
+        JsonToken token2 = parser2.currentToken();
+        if (token1 == null || token2 == null) {
+            throw new JsonParseException(token1 == null ? parser1 : parser2, "Nieoczekiwany koniec dokumentu");
+        }
+        if (token1 == token2 && (token1 == JsonToken.START_OBJECT || token1 == JsonToken.START_ARRAY)) {
+            stack.push(new Frame(parent, field, index, token1 == JsonToken.START_ARRAY));
+            return;
+        }
+        if (token1.isScalarValue() && sameScalar(parser1, parser2)) {
+            return;
+        }
+        parser1.skipChildren();
+        JsonDiff.Path path = parent == null ? JsonDiff.Path.root() : parent.child(field, index);
+        write(generator, JsonDiff.Operation.REPLACE, path, readValue(parser2));
+    }
+
+    /**
+     * Kończy porównanie tablic, z których co najmniej jedna się skończyła: nadmiarowe elementy pierwszej tablicy
+     * są usuwane, a nadmiarowe elementy drugiej - dodawane.
+     */
+    private void finishArray(JsonParser parser1, JsonToken token1, JsonParser parser2, JsonToken token2,
+                             JsonGenerator generator, Frame frame) throws IOException {
+        while (token1 != JsonToken.END_ARRAY) {
+            parser1.skipChildren();
+            write(generator, JsonDiff.Operation.REMOVE, frame.path().index(frame.size), null);
+            token1 = parser1.nextToken();
+        }
+        while (token2 != JsonToken.END_ARRAY) {
+            write(generator, JsonDiff.Operation.ADD, frame.path().index(frame.size++), readValue(parser2));
+            token2 = parser2.nextToken();
+        }
+    }
+
+    /**
+     * Sprawdza, czy parsery stoją na równych wartościach prostych.
+     */
+    private static boolean sameScalar(JsonParser parser1, JsonParser parser2) throws IOException {
+        JsonToken token = parser1.currentToken();
+        if (token != parser2.currentToken()) {
+            return false;
+        }
+        return switch (token) {
+            case VALUE_NUMBER_FLOAT -> parser1.getDoubleValue() == parser2.getDoubleValue();
+            case VALUE_NUMBER_INT -> parser1.getNumberValue().equals(parser2.getNumberValue());
+            case VALUE_STRING -> parser1.getText().equals(parser2.getText());
+            default -> true;
+        };
+    }
+
+    /**
+     * Zapisuje pojedynczą operację JSON Patch.
+     */
+    private static void write(JsonGenerator generator, JsonDiff.Operation operation, JsonDiff.Path path, JsonNode value)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("op", operation.patchName());
+        generator.writeStringField("path", path.toString());
+        if (operation != JsonDiff.Operation.REMOVE) {
+            generator.writeFieldName("value");
+            generator.writeTree(value);
+        }
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    /**
+     * Buforuje pozostałe pola obiektu, zaczynając od bieżącego tokenu (nazwy pola lub końca obiektu).
+     */
+    private ObjectNode readRemainingFields(JsonParser parser) throws IOException {
+        ObjectNode rest = JsonNodeFactory.instance.objectNode();
+        int[] budget = {maxBufferedNodes};
+        while (parser.currentToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            rest.set(field, readValue(parser, budget));
+            parser.nextToken();
+        }
+        return rest;
+    }
+
+    /**
+     * Buforuje wartość, na której początku stoi parser.
+     */
+    private JsonNode readValue(JsonParser parser) throws IOException {
+        return readValue(parser, new int[]{maxBufferedNodes});
+    }
+
+    /**
+     * Iteracyjnie buduje drzewo wartości, na której początku stoi parser, zmniejszając wspólny budżet węzłów.
+     * Po powrocie parser stoi na ostatnim tokenie wartości.
+     *
+     * @param parser Parser ustawiony na pierwszym tokenie wartości.
+     * @param budget Jednoelementowa tablica z liczbą węzłów, które można jeszcze zbuforować.
+     * @return Drzewo wartości.
+     * @throws IOException Jeśli wystąpi błąd odczytu lub przekroczono limit buforowania.
+     */
+    private JsonNode readValue(JsonParser parser, int[] budget) throws IOException {
+        Deque<JsonNode> containers = new ArrayDeque<>();
+        JsonNode root = null;
+        String field = null;
+        JsonToken token = parser.currentToken();
+        while (true) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Nieoczekiwany koniec dokumentu");
+            }
+            JsonNode node;
+            switch (token) {
+                case FIELD_NAME -> {
+                    field = parser.getCurrentName();
+                    token = parser.nextToken();
+                    continue;
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    containers.pop();
+                    if (containers.isEmpty()) {
+                        return root;
+                    }
+                    token = parser.nextToken();
+                    continue;
+                }
+                case START_OBJECT -> node = JsonNodeFactory.instance.objectNode();
+                case START_ARRAY -> node = JsonNodeFactory.instance.arrayNode();
+                case VALUE_STRING -> node = JsonNodeFactory.instance.textNode(parser.getText());
+                case VALUE_NUMBER_INT -> node = switch (parser.getNumberType()) {
+                    case INT -> JsonNodeFactory.instance.numberNode(parser.getIntValue());
+                    case LONG -> JsonNodeFactory.instance.numberNode(parser.getLongValue());
+                    default -> JsonNodeFactory.instance.numberNode(parser.getBigIntegerValue());
+                };
+                case VALUE_NUMBER_FLOAT -> node = JsonNodeFactory.instance.numberNode(parser.getDoubleValue());
+                case VALUE_TRUE, VALUE_FALSE -> node = JsonNodeFactory.instance.booleanNode(token == JsonToken.VALUE_TRUE);
+                case VALUE_NULL -> node = JsonNodeFactory.instance.nullNode();
+                default -> node = JsonNodeFactory.instance.pojoNode(parser.getEmbeddedObject());
+            }
+            if (--budget[0] < 0) {
+                throw new JsonParseException(parser, "Przekroczono limit buforowanych węzłów: " + maxBufferedNodes);
+            }
+            JsonNode container = containers.peek();
+            if (container == null) {
+                root = node;
+            } else if (container.isObject()) {
+                ((ObjectNode) container).set(field, node);
+            } else {
+                ((ArrayNode) container).add(node);
+            }
+            if (!node.isContainerNode()) {
+                if (container == null) {
+                    return root;
+                }
+            } else {
+                containers.push(node);
+            }
+            token = parser.nextToken();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package pl.put.poznan.transformer.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Globalna kontrola przyjmowania żądań na podstawie łącznego rozmiaru przetwarzanych treści.
+ * <p>
+ * Każde żądanie rezerwuje przed przetworzeniem tyle bajtów, ile deklaruje nagłówek {@code Content-Length};
+ * rezerwacja jest zwalniana po zakończeniu obsługi. Jeśli suma rezerwacji przekroczyłaby limit, żądanie jest
+ * od razu odrzucane z kodem 503 i nagłówkiem {@code Retry-After}, zamiast czekać w kolejce i zajmować pamięć.
+ * Żądanie większe niż cały limit jest odrzucane z kodem 413.
+ * </p>
+ * <p>
+ * Treści o nieznanej długości (kodowanie {@code chunked}) rezerwują bajty w miarę czytania; jeśli limit zostanie
+ * przekroczony w trakcie, odczyt kończy się błędem wejścia/wyjścia, który endpoint zgłasza jak nieprawidłowe dane.
+ * Dotyczy to także treści skompresowanych - {@link CompressionFilter} działa wcześniej, więc rezerwowane są bajty
+ * po rozpakowaniu.
+ * Limit ustawia właściwość {@code transformer.admission.max-in-flight-bytes}; wartość {@code 0} lub ujemna
+ * wyłącza kontrolę.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private final long maxInFlightBytes;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * Konstruktor klasy AdmissionControlFilter.
+     *
+     * @param maxInFlightBytes Maksymalna łączna liczba bajtów treści żądań przetwarzanych jednocześnie.
+     */
+    public AdmissionControlFilter(@Value("${transformer.admission.max-in-flight-bytes:268435456}") long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * Zwraca łączną liczbę bajtów zarezerwowanych przez przetwarzane żądania.
+     *
+     * @return Liczba zarezerwowanych bajtów.
+     */
+    public long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    /**
+     * Zwraca liczbę żądań odrzuconych od uruchomienia (kody 413 i 503).
+     *
+     * @return Liczba odrzuconych żądań.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (maxInFlightBytes <= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long length = request.getContentLengthLong();
+        if (length > maxInFlightBytes) {
+            logger.warn("Odrzucono żądanie o rozmiarze {} B (limit {} B)", length, maxInFlightBytes);
+            reject(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Żądanie przekracza limit rozmiaru");
+            return;
+        }
+        if (length > 0 && !tryAcquire(length)) {
+            logger.warn("Odrzucono żądanie o rozmiarze {} B - przetwarzane jest już {} B", length, inFlightBytes.get());
+            response.setHeader("Retry-After", "1");
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Serwer jest przeciążony, spróbuj ponownie później");
+            return;
+        }
+        if (length >= 0) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                inFlightBytes.addAndGet(-length);
+            }
+            return;
+        }
+        MeteredRequest metered = new MeteredRequest(request);
+        try {
+            chain.doFilter(metered, response);
+        } finally {
+            inFlightBytes.addAndGet(-metered.acquired);
+        }
+    }
+
+    /**
+     * Rezerwuje bajty, jeśli nie spowoduje to przekroczenia limitu.
+     *
+     * @param bytes Liczba bajtów do zarezerwowania.
+     * @return {@code true}, jeśli rezerwacja się powiodła.
+     */
+    private boolean tryAcquire(long bytes) {
+        long current;
+        do {
+            current = inFlightBytes.get();
+            if (current + bytes > maxInFlightBytes) {
+                return false;
+            }
+        } while (!inFlightBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    private void reject(HttpServletResponse response, int status, String message) throws IOException {
+        rejectedRequests.incrementAndGet();
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.getOutputStream().write(("{\"error\": \"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Żądanie o nieznanej długości treści, rezerwujące bajty w miarę ich czytania.
+     */
+    private final class MeteredRequest extends HttpServletRequestWrapper {
+        private long acquired;
+        private ServletInputStream input;
+
+        private MeteredRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                input = new MeteredInputStream(super.getInputStream());
+            }
+            return input;
+        }
+
+        private void acquire(int bytes) throws IOException {
+            if (bytes <= 0) {
+                return;
+            }
+            if (!tryAcquire(bytes)) {
+                throw new IOException("Przekroczono limit rozmiaru przetwarzanych żądań");
+            }
+            acquired += bytes;
+        }
+
+        /**
+         * Strumień treści rezerwujący każdy odczytany bajt.
+         */
+        private final class MeteredInputStream extends ServletInputStream {
+            private final ServletInputStream delegate;
+
+            private MeteredInputStream(ServletInputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = delegate.read();
+                acquire(b < 0 ? 0 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = delegate.read(buffer, offset, length);
+                acquire(n);
+                return n;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return delegate.isFinished();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+                delegate.setReadListener(listener);
+            }
+        }
+    }
+}
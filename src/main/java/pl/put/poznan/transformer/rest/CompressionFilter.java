@@ -0,0 +1,646 @@
+package pl.put.poznan.transformer.rest;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Strumieniowa dekompresja treści żądań i kompresja odpowiedzi ({@code gzip}, {@code deflate}, {@code zstd}).
+ * <p>
+ * Treść żądania z nagłówkiem {@code Content-Encoding} jest rozpakowywana w trakcie czytania - endpoint widzi
+ * zwykły strumień bez nagłówków kodowania i długości, więc {@link AdmissionControlFilter} (działający po tym
+ * filtrze) rezerwuje bajty rozpakowanej treści w miarę jej czytania. Nieobsługiwane kodowanie daje odpowiedź 415.
+ * </p>
+ * <p>
+ * Odpowiedź jest kompresowana kodowaniem najbardziej preferowanym w nagłówku {@code Accept-Encoding} (przy równej
+ * preferencji: {@code zstd}, {@code gzip}, {@code deflate}). Początek odpowiedzi jest buforowany, dopóki nie
+ * przekroczy progu {@code transformer.compression.min-response-size}; krótsze odpowiedzi są wysyłane bez kompresji.
+ * Po przekroczeniu progu dalsza treść jest kompresowana na bieżąco, bez buforowania całej odpowiedzi. Znacznik
+ * ETag skompresowanej odpowiedzi staje się słaby ({@code W/}), bo opisuje treść przed kompresją. Jeśli
+ * przetwarzanie zakończy się wyjątkiem, strumień kompresji nie jest domykany, a zbuforowany początek nie jest
+ * wysyłany, więc przerwana odpowiedź nie wygląda jak kompletna.
+ * </p>
+ * <p>
+ * Treści multipart są parsowane przez kontener z pominięciem filtrów, dlatego nie mogą być skompresowane jako
+ * całość. Właściwość {@code transformer.compression.enabled=false} wyłącza filtr.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CompressionFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionFilter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final boolean enabled;
+    private final int minResponseSize;
+
+    /**
+     * Kodowania treści obsługiwane przez filtr, w kolejności preferencji przy równej wadze w {@code Accept-Encoding}.
+     */
+    enum Coding {
+        ZSTD("zstd") {
+            @Override
+            InputStream decode(InputStream input) throws IOException {
+                return new ZstdInputStream(input);
+            }
+
+            @Override
+            OutputStream encode(OutputStream output) throws IOException {
+                return new ZstdOutputStream(output);
+            }
+        },
+        GZIP("gzip") {
+            @Override
+            InputStream decode(InputStream input) throws IOException {
+                return new GZIPInputStream(input, BUFFER_SIZE);
+            }
+
+            @Override
+            OutputStream encode(OutputStream output) throws IOException {
+                return new GZIPOutputStream(output, BUFFER_SIZE, true);
+            }
+        },
+        DEFLATE("deflate") {
+            @Override
+            InputStream decode(InputStream input) {
+                return new InflaterInputStream(input);
+            }
+
+            @Override
+            OutputStream encode(OutputStream output) {
+                return new DeflaterOutputStream(output, true);
+            }
+        };
+
+        private final String token;
+
+        Coding(String token) {
+            this.token = token;
+        }
+
+        abstract InputStream decode(InputStream input) throws IOException;
+
+        abstract OutputStream encode(OutputStream output) throws IOException;
+
+        static Coding of(String token) {
+            String name = token.trim().toLowerCase(Locale.ROOT);
+            for (Coding coding : values()) {
+                if (coding.token.equals(name) || (coding == GZIP && name.equals("x-gzip"))) {
+                    return coding;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Konstruktor klasy CompressionFilter.
+     *
+     * @param enabled Czy filtr jest włączony.
+     * @param minResponseSize Minimalny rozmiar odpowiedzi (w bajtach), od którego jest ona kompresowana.
+     */
+    public CompressionFilter(@Value("${transformer.compression.enabled:true}") boolean enabled,
+                             @Value("${transformer.compression.min-response-size:2048}") int minResponseSize) {
+        this.enabled = enabled;
+        this.minResponseSize = Math.max(0, minResponseSize);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!enabled) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest decodedRequest = request;
+        String contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding != null) {
+            List<Coding> codings = new ArrayList<>();
+            for (String token : contentEncoding.split(",")) {
+                if (token.isBlank() || token.trim().equalsIgnoreCase("identity")) {
+                    continue;
+                }
+                Coding coding = Coding.of(token);
+                if (coding == null) {
+                    logger.warn("Odrzucono żądanie z nieobsługiwanym kodowaniem treści: {}", contentEncoding);
+                    response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                    response.setContentType("application/json");
+                    response.getOutputStream().write("{\"error\": \"Nieobsługiwane kodowanie treści\"}"
+                            .getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                codings.add(coding);
+            }
+            Collections.reverse(codings);
+            decodedRequest = new DecodingRequest(request, codings);
+        }
+        Coding coding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (coding == null) {
+            try {
+                chain.doFilter(decodedRequest, response);
+            } finally {
+                close(decodedRequest);
+            }
+            return;
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        CompressingResponse compressingResponse = new CompressingResponse(response, coding);
+        boolean completed = false;
+        try {
+            chain.doFilter(decodedRequest, compressingResponse);
+            completed = true;
+        } finally {
+            try {
+                if (completed) {
+                    compressingResponse.finish();
+                } else {
+                    compressingResponse.abandon();
+                }
+            } finally {
+                close(decodedRequest);
+            }
+        }
+    }
+
+    /**
+     * Wybiera kodowanie odpowiedzi na podstawie nagłówka {@code Accept-Encoding}.
+     *
+     * @param acceptEncoding Wartość nagłówka lub {@code null}.
+     * @return Najbardziej preferowane obsługiwane kodowanie albo {@code null}, jeśli klient nie akceptuje żadnego.
+     */
+    static Coding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        Coding best = null;
+        double bestWeight = 0;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            Coding coding = Coding.of(parts[0]);
+            if (coding == null) {
+                continue;
+            }
+            double weight = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        weight = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        weight = 0;
+                    }
+                }
+            }
+            if (weight > bestWeight || (weight == bestWeight && weight > 0 && coding.ordinal() < best.ordinal())) {
+                best = coding;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    private static void close(HttpServletRequest request) throws IOException {
+        if (request instanceof DecodingRequest decodingRequest && decodingRequest.input != null) {
+            decodingRequest.input.close();
+        }
+    }
+
+    /**
+     * Żądanie, którego treść jest rozpakowywana w trakcie czytania.
+     */
+    private static final class DecodingRequest extends HttpServletRequestWrapper {
+        private final List<Coding> codings;
+        private ServletInputStream input;
+
+        private DecodingRequest(HttpServletRequest request, List<Coding> codings) {
+            super(request);
+            this.codings = codings;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                ServletInputStream raw = super.getInputStream();
+                InputStream decoded = raw;
+                for (Coding coding : codings) {
+                    decoded = coding.decode(decoded);
+                }
+                InputStream source = decoded;
+                input = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return source.read();
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        return source.read(buffer, offset, length);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        source.close();
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return raw.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return raw.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        raw.setReadListener(listener);
+                    }
+                };
+            }
+            return input;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return hidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return hidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = Collections.list(super.getHeaderNames());
+            names.removeIf(DecodingRequest::hidden);
+            return Collections.enumeration(names);
+        }
+
+        private static boolean hidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * Odpowiedź kompresowana po przekroczeniu progu rozmiaru.
+     * <p>Długość treści ustawiona przez endpoint jest wstrzymywana: krótka odpowiedź dostaje ją przy wysłaniu,
+     * a skompresowana jest wysyłana bez niej (w kodowaniu {@code chunked}).</p>
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+        private final Coding coding;
+        private long contentLength = -1;
+        private CompressingOutputStream output;
+        private PrintWriter writer;
+
+        private CompressingResponse(HttpServletResponse response, Coding coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("Metoda getWriter() została już wywołana");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (output != null) {
+                    throw new IllegalStateException("Metoda getOutputStream() została już wywołana");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private CompressingOutputStream stream() throws IOException {
+            if (output == null) {
+                output = new CompressingOutputStream(this, super.getOutputStream());
+            }
+            return output;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                contentLength = value == null ? -1 : Long.parseLong(value.trim());
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (output != null) {
+                output.flush();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (output != null) {
+                output.discard();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            if (output != null) {
+                output.discard();
+            }
+        }
+
+        /**
+         * Kończy odpowiedź: wysyła zbuforowaną krótką treść albo domyka strumień kompresji.
+         */
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (output != null) {
+                output.finish();
+            } else if (contentLength >= 0 && !isCommitted()) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        /**
+         * Porzuca odpowiedź po błędzie przetwarzania: zbuforowana treść nie jest wysyłana, a strumień kompresji
+         * nie jest domykany, więc kontener może wysłać odpowiedź z błędem albo przerwać zatwierdzoną odpowiedź,
+         * zamiast kończyć ją jak poprawną.
+         */
+        private void abandon() {
+            if (output != null) {
+                output.abandon();
+            }
+        }
+
+        /**
+         * Decyduje o kompresji: zwraca {@code true}, jeśli odpowiedź może być skompresowana, i ustawia nagłówki.
+         */
+        private boolean startCompression() {
+            int status = getStatus();
+            if (isCommitted() || getHeader(HttpHeaders.CONTENT_ENCODING) != null
+                    || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED) {
+                return false;
+            }
+            super.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token);
+            String etag = getHeader(HttpHeaders.ETAG);
+            if (etag != null && !etag.startsWith("W/")) {
+                super.setHeader(HttpHeaders.ETAG, "W/" + etag);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Strumień odpowiedzi, który buforuje początek treści do progu, a potem kompresuje ją na bieżąco.
+     */
+    private final class CompressingOutputStream extends ServletOutputStream {
+        private final CompressingResponse response;
+        private final ServletOutputStream delegate;
+        private byte[] buffer = new byte[minResponseSize];
+        private int count;
+        private OutputStream compressor;
+        private Sink sink;
+        private boolean identity;
+
+        private CompressingOutputStream(CompressingResponse response, ServletOutputStream delegate) {
+            this.response = response;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (compressor != null) {
+                compressor.write(bytes, offset, length);
+            } else if (identity) {
+                delegate.write(bytes, offset, length);
+            } else if (count + length < minResponseSize) {
+                System.arraycopy(bytes, offset, buffer, count, length);
+                count += length;
+            } else {
+                decide();
+                write(bytes, offset, length);
+            }
+        }
+
+        /**
+         * Przy przekroczeniu progu włącza kompresję (albo przesyłanie bez zmian, jeśli kompresja nie jest
+         * możliwa) i wypisuje zbuforowany początek treści.
+         */
+        private void decide() throws IOException {
+            long declared = response.contentLength;
+            if ((declared < 0 || declared >= minResponseSize) && response.startCompression()) {
+                compressor = coding(delegate);
+                compressor.write(buffer, 0, count);
+            } else {
+                identity = true;
+                if (declared >= 0) {
+                    response.getResponse().setContentLengthLong(declared);
+                }
+                delegate.write(buffer, 0, count);
+            }
+            buffer = null;
+            count = 0;
+        }
+
+        private OutputStream coding(OutputStream output) throws IOException {
+            sink = new Sink(output);
+            return response.coding.encode(sink);
+        }
+
+        /**
+         * Opróżnienie bufora przed osiągnięciem progu jest pomijane - decyzja o kompresji zapada dopiero
+         * po przekroczeniu progu lub na końcu odpowiedzi.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (compressor != null) {
+                compressor.flush();
+            } else if (identity) {
+                delegate.flush();
+            }
+        }
+
+        /**
+         * Odrzuca niewysłaną treść (po {@code resetBuffer()}); kompresja zaczyna się od nowa.
+         */
+        private void discard() {
+            if (buffer != null) {
+                count = 0;
+            } else if (compressor != null) {
+                release();
+                try {
+                    compressor = coding(delegate);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        /**
+         * Porzuca treść po błędzie przetwarzania (zob. {@link CompressingResponse#abandon()}).
+         */
+        private void abandon() {
+            buffer = null;
+            count = 0;
+            if (compressor != null) {
+                release();
+                compressor = null;
+            }
+        }
+
+        /**
+         * Zamyka bieżący kompresor bez wysyłania jego końcowych bajtów, zwalniając natywny stan (Deflater, kontekst
+         * zstd) od razu, a nie dopiero przy odśmiecaniu.
+         */
+        private void release() {
+            sink.discarded = true;
+            try {
+                compressor.close();
+            } catch (IOException e) {
+                logger.debug("Błąd przy zamykaniu porzuconego kompresora", e);
+            }
+        }
+
+        private void finish() throws IOException {
+            if (compressor != null) {
+                compressor.close();
+            } else if (buffer != null) {
+                if (!response.isCommitted()) {
+                    response.getResponse().setContentLength(count);
+                }
+                delegate.write(buffer, 0, count);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            delegate.setWriteListener(listener);
+        }
+    }
+
+    /**
+     * Wyjście kompresora: przekazuje skompresowane bajty do odpowiedzi, nie zamyka jej, a po porzuceniu
+     * kompresora pomija wszystko, co jeszcze zapisze (np. końcówkę strumienia gzip).
+     */
+    private static final class Sink extends FilterOutputStream {
+        private boolean discarded;
+
+        private Sink(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarded) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (!discarded) {
+                out.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!discarded) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package pl.put.poznan.transformer.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import pl.put.poznan.transformer.logic.Compare;
+import pl.put.poznan.transformer.logic.DataFormat;
+import pl.put.poznan.transformer.logic.JsonJobs;
+import pl.put.poznan.transformer.logic.JsonProcessor;
+import pl.put.poznan.transformer.logic.JsonTape;
+import pl.put.poznan.transformer.logic.StreamingCompare;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
+
+/**
+ * Kontroler REST API zadań asynchronicznych ({@link JsonJobs}) dla bardzo dużych dokumentów.
+ * <p>
+ * Zamiast trzymać połączenie przez cały czas przetwarzania, klient przesyła dokument (albo ścieżkę pliku
+ * lokalnego), od razu dostaje odpowiedź 202 z identyfikatorem zadania, sprawdza jego stan i postęp pod
+ * {@code /json/jobs/{id}}, a po zakończeniu pobiera wynik z {@code /json/jobs/{id}/result}.
+ * Zadania używają tych samych procesorów co endpointy strumieniowe.
+ * </p>
+ */
+@RestController
+@RequestMapping("/json/jobs")
+public class JsonJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonJobController.class);
+    private static final String JSON_PATCH = "application/json-patch+json";
+    private final JsonJobs jobs;
+    private final TransformerMetrics metrics;
+
+    /**
+     * Konstruktor klasy JsonJobController.
+     *
+     * @param threads Liczba wątków wykonujących zadania.
+     * @param capacity Maksymalna liczba zadań oczekujących i wykonywanych jednocześnie.
+     * @param ttlSeconds Czas przechowywania zakończonego zadania i jego wyniku w sekundach.
+     * @param directory Katalog plików zadań (pusty - nowy katalog tymczasowy).
+     * @param inputDirectory Katalog, z którego zadania mogą czytać pliki lokalne (pusty - tylko treść żądań).
+     * @param metrics Metryki, w których liczone są błędy zadań i publikowany ich stan.
+     * @throws IOException Jeśli nie udało się utworzyć katalogu zadań lub katalog plików lokalnych nie istnieje.
+     */
+    public JsonJobController(@Value("${transformer.jobs.threads:2}") int threads,
+                             @Value("${transformer.jobs.capacity:16}") int capacity,
+                             @Value("${transformer.jobs.ttl-seconds:3600}") long ttlSeconds,
+                             @Value("${transformer.jobs.directory:}") String directory,
+                             @Value("${transformer.jobs.input-directory:}") String inputDirectory,
+                             TransformerMetrics metrics) throws IOException {
+        this.jobs = new JsonJobs(directory.isBlank() ? null : Path.of(directory),
+                inputDirectory.isBlank() ? null : Path.of(inputDirectory), threads, capacity, ttlSeconds * 1000,
+                (operation, e) -> {
+                    logger.error("Błąd przy wykonywaniu zadania ({}): ", operation, e);
+                    metrics.error("jobs/" + operation, e);
+                });
+        this.metrics = metrics;
+        metrics.bind(jobs);
+    }
+
+    /**
+     * Przerywa zadania i usuwa ich pliki przy zamykaniu kontekstu aplikacji.
+     */
+    @PreDestroy
+    public void close() {
+        jobs.close();
+    }
+
+    /**
+     * Zleca minimalizację dokumentu.
+     *
+     * @param path Ścieżka pliku lokalnego; bez niej przetwarzana jest treść żądania.
+     * @param tape Czy przetwarzać dokument JSON jako taśmę ({@link JsonTape}) odwzorowaną z pliku w pamięci.
+     * @param request Żądanie HTTP z dokumentem w treści (format według {@code Content-Type}).
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/minify", produces = "application/json")
+    public ResponseEntity<String> minify(@RequestParam(required = false) String path,
+                                         @RequestParam(defaultValue = "false") boolean tape, HttpServletRequest request) {
+        logger.info("Otrzymano żądanie dot. zadania zminimalizowania JSON");
+        return submit("minify", () -> JsonTransformerController.MINIFY, path, tape, request);
+    }
+
+    /**
+     * Zleca upiększenie dokumentu.
+     *
+     * @param format Opcje formatowania jak w {@link JsonTransformerController#prettify}.
+     * @param path Ścieżka pliku lokalnego; bez niej przetwarzana jest treść żądania.
+     * @param tape Czy przetwarzać dokument JSON jako taśmę ({@link JsonTape}) odwzorowaną z pliku w pamięci.
+     * @param request Żądanie HTTP z dokumentem w treści (format według {@code Content-Type}).
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/prettify", produces = "application/json")
+    public ResponseEntity<String> prettify(@RequestParam(required = false) String[] format,
+                                           @RequestParam(required = false) String path,
+                                           @RequestParam(defaultValue = "false") boolean tape, HttpServletRequest request) {
+        logger.info("Otrzymano żądanie dot. zadania upiększenia JSON");
+        return submit("prettify", () -> JsonTransformerController.prettify(format), path, tape, request);
+    }
+
+    /**
+     * Zleca filtrowanie dokumentu z zachowaniem wskazanych właściwości.
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do zachowania.
+     * @param path Ścieżka pliku lokalnego; bez niej przetwarzana jest treść żądania.
+     * @param tape Czy przetwarzać dokument JSON jako taśmę ({@link JsonTape}) odwzorowaną z pliku w pamięci.
+     * @param request Żądanie HTTP z dokumentem w treści (format według {@code Content-Type}).
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/filter/include", produces = "application/json")
+    public ResponseEntity<String> filterInclude(@RequestParam String[] properties,
+                                                @RequestParam(required = false) String path,
+                                                @RequestParam(defaultValue = "false") boolean tape,
+                                                HttpServletRequest request) {
+        logger.info("Otrzymano żądanie dot. zadania filtrowania JSON (zachowaj właściwości)");
+        return submit("filter/include", () -> JsonTransformerController.filter("include", properties), path, tape,
+                request);
+    }
+
+    /**
+     * Zleca filtrowanie dokumentu z usunięciem wskazanych właściwości.
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do usunięcia.
+     * @param path Ścieżka pliku lokalnego; bez niej przetwarzana jest treść żądania.
+     * @param tape Czy przetwarzać dokument JSON jako taśmę ({@link JsonTape}) odwzorowaną z pliku w pamięci.
+     * @param request Żądanie HTTP z dokumentem w treści (format według {@code Content-Type}).
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/filter/exclude", produces = "application/json")
+    public ResponseEntity<String> filterExclude(@RequestParam String[] properties,
+                                                @RequestParam(required = false) String path,
+                                                @RequestParam(defaultValue = "false") boolean tape,
+                                                HttpServletRequest request) {
+        logger.info("Otrzymano żądanie dot. zadania filtrowania JSON (usuń właściwości)");
+        return submit("filter/exclude", () -> JsonTransformerController.filter("exclude", properties), path, tape,
+                request);
+    }
+
+    /**
+     * Zleca porównanie dwóch dokumentów; wynikiem są różnice w formacie JSON Patch.
+     * <p>Domyślnie porównanie jest strumieniowe (jak w {@link JsonTransformerController#compareStream}, tablice
+     * element po elemencie według indeksów). W trybie taśmy oba dokumenty są odwzorowywane z plików w pamięci
+     * jako taśmy {@link JsonTape} i porównywane strukturalnie przez {@link Compare}, z wyrównywaniem tablic
+     * (jak {@code /json/compare/patch}), ale bez budowania drzew.</p>
+     *
+     * @param json1 Pierwszy JSON (część {@code json1}), jeśli nie podano {@code path1}.
+     * @param json2 Drugi JSON (część {@code json2}), jeśli nie podano {@code path2}.
+     * @param path1 Ścieżka pliku lokalnego z pierwszym JSON-em.
+     * @param path2 Ścieżka pliku lokalnego z drugim JSON-em.
+     * @param tape Czy porównać dokumenty jako taśmy.
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/compare", produces = "application/json")
+    public ResponseEntity<String> compare(@RequestPart(value = "json1", required = false) MultipartFile json1,
+                                          @RequestPart(value = "json2", required = false) MultipartFile json2,
+                                          @RequestParam(required = false) String path1,
+                                          @RequestParam(required = false) String path2,
+                                          @RequestParam(defaultValue = "false") boolean tape) {
+        logger.info("Otrzymano żądanie dot. zadania porównania JSON-ów");
+        try {
+            List<JsonJobs.Source> sources = List.of(source(json1, path1), source(json2, path2));
+            JsonJobs.Task task = tape
+                    ? (inputs, output) -> Compare.patch(inputs.get(0).tape(), inputs.get(1).tape(), output)
+                    : (inputs, output) -> new StreamingCompare().compare(inputs.get(0).stream(), inputs.get(1).stream(), output);
+            return accepted(jobs.submit("compare", sources, task, "Nieprawidłowy format JSON"));
+        } catch (Exception e) {
+            return rejected("compare", e);
+        }
+    }
+
+    /**
+     * Zwraca stan i postęp zadania.
+     *
+     * @param id Identyfikator zadania.
+     * @return Stan zadania lub odpowiedź 404.
+     * @throws IOException Jeśli nie udało się zserializować stanu.
+     */
+    @GetMapping(value = "/{id}", produces = "application/json")
+    public ResponseEntity<String> status(@PathVariable String id) throws IOException {
+        try {
+            return ResponseEntity.ok(jsonWriter.writeValueAsString(jobs.status(id)));
+        } catch (NoSuchElementException e) {
+            return unknownJob();
+        }
+    }
+
+    /**
+     * Zwraca wynik zakończonego zadania, przepisując go strumieniowo z pliku.
+     *
+     * @param id Identyfikator zadania.
+     * @param response Odpowiedź HTTP z wynikiem, odpowiedź 404 dla nieznanego zadania albo 409, jeśli zadanie
+     *                 jeszcze trwa lub zakończyło się błędem.
+     * @throws IOException Jeśli nie udało się odczytać wyniku lub zapisać odpowiedzi.
+     */
+    @GetMapping(value = "/{id}/result")
+    public void result(@PathVariable String id, HttpServletResponse response) throws IOException {
+        try (InputStream result = jobs.result(id)) {
+            response.setContentType("compare".equals(jobs.status(id).operation()) ? JSON_PATCH : DataFormat.JSON_VALUE);
+            result.transferTo(response.getOutputStream());
+        } catch (NoSuchElementException e) {
+            error(response, HttpServletResponse.SC_NOT_FOUND, "Nieznane zadanie");
+        } catch (IllegalStateException e) {
+            error(response, HttpServletResponse.SC_CONFLICT, "Zadanie nie zakończyło się powodzeniem");
+        }
+    }
+
+    /**
+     * Usuwa zadanie i jego wynik, przerywając je, jeśli jeszcze trwa.
+     *
+     * @param id Identyfikator zadania.
+     * @return Odpowiedź 204 lub 404, jeśli zadanie nie istniało.
+     */
+    @DeleteMapping(value = "/{id}")
+    public ResponseEntity<String> remove(@PathVariable String id) {
+        return jobs.remove(id) ? ResponseEntity.noContent().build() : unknownJob();
+    }
+
+    /**
+     * Przyjmuje zadanie przetwarzające jeden dokument procesorem w trybie strumieniowym (wynik w formacie JSON).
+     * <p>W trybie taśmy dokument (tylko JSON) jest odwzorowywany z pliku w pamięci jako taśma {@link JsonTape},
+     * a procesor czyta ją token po tokenie, pomijając odrzucane poddrzewa w stałym czasie.</p>
+     *
+     * @param operation Nazwa operacji.
+     * @param processor Tworzy procesor (może zgłosić błąd niepoprawnych parametrów).
+     * @param path Ścieżka pliku lokalnego lub {@code null}, jeśli dokument jest w treści żądania.
+     * @param tape Czy przetwarzać dokument jako taśmę.
+     * @param request Żądanie HTTP.
+     * @return Odpowiedź 202 ze stanem zadania lub komunikat o błędzie.
+     */
+    private ResponseEntity<String> submit(String operation, ProcessorFactory processor, String path, boolean tape,
+                                          HttpServletRequest request) {
+        try {
+            JsonProcessor compiled = processor.get();
+            DataFormat inputFormat = path == null ? JsonTransformerController.inputFormat(request) : DataFormat.JSON;
+            if (tape && inputFormat != DataFormat.JSON) {
+                throw new IllegalArgumentException("Tryb taśmy obsługuje tylko dokumenty JSON");
+            }
+            JsonJobs.Source source = path == null ? JsonJobs.Source.body(request.getInputStream()) : JsonJobs.Source.file(path);
+            JsonJobs.Task task = tape
+                    ? (inputs, output) -> inputs.get(0).tape().process(compiled, output)
+                    : (inputs, output) -> DataFormat.process(compiled, inputFormat, inputs.get(0).stream(), DataFormat.JSON,
+                    output);
+            return accepted(jobs.submit(operation, List.of(source), task, "Nieprawidłowy format JSON"));
+        } catch (Exception e) {
+            return rejected(operation, e);
+        }
+    }
+
+    /**
+     * Tworzy procesor dla zadania.
+     */
+    @FunctionalInterface
+    private interface ProcessorFactory {
+        JsonProcessor get();
+    }
+
+    private static JsonJobs.Source source(MultipartFile part, String path) throws IOException {
+        if (path != null) {
+            return JsonJobs.Source.file(path);
+        }
+        if (part == null) {
+            throw new IllegalArgumentException("Brak dokumentu do porównania");
+        }
+        return JsonJobs.Source.body(part.getInputStream());
+    }
+
+    private static ResponseEntity<String> accepted(JsonJobs.Status status) throws IOException {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(HttpHeaders.LOCATION, "/json/jobs/" + status.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jsonWriter.writeValueAsString(status));
+    }
+
+    /**
+     * Zamienia błąd przyjęcia zadania na odpowiedź: 503 po osiągnięciu limitu zadań, 400 dla niepoprawnych
+     * parametrów lub ścieżki i nieczytelnej treści.
+     */
+    private ResponseEntity<String> rejected(String operation, Exception e) {
+        if (e instanceof RejectedExecutionException) {
+            logger.warn("Odrzucono zadanie ({}): {}", operation, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body("{\"error\": \"Osiągnięto limit zadań, spróbuj ponownie później\"}");
+        }
+        logger.error("Błąd przy przyjmowaniu zadania ({}): ", operation, e);
+        metrics.error("jobs/" + operation, e);
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\": \"Nieprawidłowe parametry lub plik wejściowy\"}");
+    }
+
+    private static ResponseEntity<String> unknownJob() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\": \"Nieznane zadanie\"}");
+    }
+
+    private static void error(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(DataFormat.JSON_VALUE);
+        response.getOutputStream().write(("{\"error\": \"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,11 +2,31 @@ package pl.put.poznan.transformer.rest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import pl.put.poznan.transformer.logic.*;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
-import static pl.put.poznan.transformer.logic.BaseJsonProcessor.objectMapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonReader;
+import static pl.put.poznan.transformer.logic.BaseJsonProcessor.jsonWriter;
 
 /**
  * Kontroler REST API umożliwiający operacje na strukturach JSON.
@@ -16,39 +36,134 @@ import static pl.put.poznan.transformer.logic.BaseJsonProcessor.objectMapper;
 public class JsonTransformerController {
 
     private static final Logger logger = LoggerFactory.getLogger(JsonTransformerController.class);
+    /**
+     * Procesory są niezmienne i bezpieczne wątkowo, więc jedna instancja obsługuje wszystkie żądania.
+     */
+    static final JsonTreeProcessor MINIFY = new Minify(new BaseJsonProcessor());
+    private static final JsonTreeProcessor PRETTIFY = new Prettify(new BaseJsonProcessor());
+    /**
+     * Nagłówek z wersją dokumentu wzorcowego.
+     */
+    private static final String REFERENCE_VERSION = "X-Reference-Version";
+    private final ResultCache cache;
+    private final ReferenceStore references;
+    private final TransformerMetrics metrics;
+    private final RequestLimitFilter limits;
+
+    /**
+     * Konstruktor klasy JsonTransformerController.
+     *
+     * @param cacheMaxBytes Maksymalny rozmiar pamięci podręcznej wyników w bajtach ({@code 0} ją wyłącza).
+     * @param referencesMaxBytes Maksymalny szacowany rozmiar dokumentów wzorcowych w pamięci w bajtach.
+     * @param referencesDirectory Katalog, w którym zapisywane są dokumenty wzorcowe (pusty - tylko w pamięci).
+     * @param metrics Metryki przetwarzania, w których liczone są błędy i publikowany stan pamięci podręcznych.
+     * @param limits Limity treści żądań, sprawdzane też dla dokumentów przesyłanych jako napis w treści.
+     * @throws IOException Jeśli nie udało się utworzyć katalogu dokumentów wzorcowych.
+     */
+    public JsonTransformerController(@Value("${transformer.cache.max-bytes:67108864}") long cacheMaxBytes,
+                                     @Value("${transformer.references.max-bytes:268435456}") long referencesMaxBytes,
+                                     @Value("${transformer.references.directory:}") String referencesDirectory,
+                                     TransformerMetrics metrics, RequestLimitFilter limits) throws IOException {
+        this.cache = new ResultCache(cacheMaxBytes);
+        this.references = new ReferenceStore(referencesMaxBytes,
+                referencesDirectory.isBlank() ? null : Path.of(referencesDirectory));
+        this.metrics = metrics;
+        this.limits = limits;
+        metrics.bind(cache);
+        metrics.bind(references);
+    }
+
     /**
      * Minimalizuje JSON poprzez usunięcie zbędnych białych znaków.
+     * <p>Wyniki są zapamiętywane według treści żądania; odpowiedź zawiera znacznik ETag, a żądanie z pasującym
+     * nagłówkiem {@code If-None-Match} dostaje odpowiedź 304 bez treści.</p>
      *
      * @param json JSON w formacie tekstowym przesłany w treści żądania.
+     * @param ifNoneMatch Znaczniki ETag wyników, które klient już ma.
      * @return Zminimalizowany JSON lub komunikat o błędzie w przypadku niepowodzenia.
      */
     @PostMapping(value = "/minify", produces = "application/json")
-    public String minify(@RequestBody String json) {
+    public ResponseEntity<String> minify(@RequestBody String json,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("Otrzymano żądanie dot. zminimalizowania JSON");
-        try {
-            JsonProcessor processor = new Minify(new BaseJsonProcessor());
-            return processor.process(json);
-        } catch (Exception e) {
-            logger.error("Błąd przy minimalizowaniu: ", e);
-            return "{\"error\": \"Nieprawidłowy format JSON\"}";
+        return cached("minify", "", json, ifNoneMatch, () -> MINIFY.process(json), "Błąd przy minimalizowaniu: ");
+    }
+
+    /**
+     * Strumieniowo minimalizuje JSON, kopiując tokeny z treści żądania bezpośrednio do odpowiedzi.
+     * <p>Dokument nie jest buforowany w pamięci, więc endpoint nadaje się do bardzo dużych JSON-ów.
+     * W trybie równoległym elementy tablicy najwyższego poziomu są minimalizowane blokami we wspólnej puli wątków
+     * (z zachowaniem kolejności); inne dokumenty są przetwarzane sekwencyjnie.</p>
+     * <p>Dokument może być przesłany i zwrócony w formacie binarnym ({@link DataFormat}) według nagłówków
+     * {@code Content-Type} i {@code Accept}; tryb równoległy dotyczy tylko tekstowego JSON-a.</p>
+     *
+     * @param parallel Czy minimalizować elementy tablicy najwyższego poziomu równolegle.
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP, do której zapisywany jest zminimalizowany JSON.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/minify/stream", produces = {DataFormat.JSON_VALUE, DataFormat.SMILE_VALUE, DataFormat.CBOR_VALUE, DataFormat.MSGPACK_VALUE})
+    public void minifyStream(@RequestParam(defaultValue = "false") boolean parallel, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. strumieniowego zminimalizowania JSON");
+        if (parallel && inputFormat(request) == DataFormat.JSON && outputFormat(request) == DataFormat.JSON) {
+            InputStream input = request.getInputStream();
+            stream("minify", output -> JsonArrays.process(MINIFY, input, output, ForkJoinPool.commonPool()),
+                    DataFormat.JSON, response, "{\"error\": \"Nieprawidłowy format JSON\"}");
+        } else {
+            stream("minify", MINIFY, request, response, "{\"error\": \"Nieprawidłowy format JSON\"}");
         }
     }
 
     /**
      * Upiększa JSON, dodając wcięcia i lepsze formatowanie.
+     * <p>Wyniki są zapamiętywane tak jak w {@link #minify}. Formatowanie można zmienić opcjami {@link PrettyFormat},
+     * np. {@code ?format=indent=tab,sortKeys,maxDepth=3,lineWidth=80}.</p>
      *
+     * @param format Opcje formatowania; brak oznacza standardowe formatowanie.
      * @param json JSON w formacie tekstowym przesłany w treści żądania.
+     * @param ifNoneMatch Znaczniki ETag wyników, które klient już ma.
      * @return Upiększony JSON lub komunikat o błędzie w przypadku niepowodzenia.
      */
     @PostMapping(value = "/prettify", produces = "application/json")
-    public String prettify(@RequestBody String json) {
+    public ResponseEntity<String> prettify(@RequestParam(required = false) String[] format, @RequestBody String json,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("Otrzymano żądanie dot. upiększenia JSON");
+        JsonProcessor processor;
         try {
-            JsonProcessor processor = new Prettify(new BaseJsonProcessor());
-            return processor.process(json);
-        } catch (Exception e) {
+            processor = prettify(format);
+        } catch (IllegalArgumentException e) {
             logger.error("Błąd przy upiększaniu: ", e);
-            return "{\"error\": \"Nieprawidłowy format JSON\"}";
+            metrics.error("prettify", e);
+            return ResponseEntity.ok("{\"error\": \"Nieprawidłowe opcje formatowania\"}");
+        }
+        return cached("prettify", format == null ? "" : String.join(",", format), json, ifNoneMatch,
+                () -> processor.process(json), "Błąd przy upiększaniu: ");
+    }
+
+    /**
+     * Strumieniowo upiększa JSON, czytając bajty treści żądania i zapisując bajty bezpośrednio do odpowiedzi.
+     * <p>Dokument nie jest dekodowany do obiektów String ani buforowany w pamięci (poza sortowaniem kluczy,
+     * które buforuje obiekty). Wejście może być w formacie binarnym ({@link DataFormat}); wynik w formacie
+     * binarnym nie ma wcięć, więc jest po prostu przepisywany.</p>
+     *
+     * @param format Opcje formatowania jak w {@link #prettify}.
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP, do której zapisywany jest upiększony JSON.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/prettify/stream", produces = {DataFormat.JSON_VALUE, DataFormat.SMILE_VALUE, DataFormat.CBOR_VALUE, DataFormat.MSGPACK_VALUE})
+    public void prettifyStream(@RequestParam(required = false) String[] format, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. strumieniowego upiększenia JSON");
+        String error = "{\"error\": \"Nieprawidłowy format JSON lub opcje formatowania\"}";
+        try {
+            stream("prettify", prettify(format), request, response, error);
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy upiększaniu: ", e);
+            metrics.error("prettify", e);
+            response.setContentType("application/json");
+            response.getOutputStream().write(error.getBytes(StandardCharsets.UTF_8));
         }
     }
 
@@ -62,10 +177,12 @@ public class JsonTransformerController {
     public String filterInclude(@RequestBody FilterRequest request) {
         logger.info("Otrzymano żądanie dot. filtrowania JSON (zachowaj właściwości)");
         try {
-            JsonProcessor processor = new FilterInclude(new BaseJsonProcessor(), request.getProperties());
+            limits.check("filter/include", request.getJson());
+            JsonProcessor processor = filter("include", request.getProperties());
             return processor.process(request.getJson());
         } catch (Exception e) {
             logger.error("Błąd przy filtrowaniu (zachowaj właściwości): ", e);
+            metrics.error("filter/include", e);
             return "{\"error\": \"Nieprawidłowy format JSON lub właściwości\"}";
         }
     }
@@ -80,14 +197,68 @@ public class JsonTransformerController {
     public String filterExclude(@RequestBody FilterRequest request) {
         logger.info("Otrzymano żądanie dot. filtrowania JSON (usuń właściwości)");
         try {
-            JsonProcessor processor = new FilterExclude(new BaseJsonProcessor(), request.getProperties());
+            limits.check("filter/exclude", request.getJson());
+            JsonProcessor processor = filter("exclude", request.getProperties());
             return processor.process(request.getJson());
         } catch (Exception e) {
             logger.error("Błąd przy filtrowaniu (usuń właściwości): ", e);
+            metrics.error("filter/exclude", e);
             return "{\"error\": \"Nieprawidłowy format JSON lub właściwości\"}";
         }
     }
 
+    /**
+     * Strumieniowo filtruje JSON, zachowując tylko wskazane właściwości.
+     * <p>Odrzucane poddrzewa są pomijane już na poziomie tokenów parsera, bez budowania drzewa dokumentu.
+     * Dokument może być przesłany i zwrócony w formacie binarnym ({@link DataFormat}) - filtr działa wtedy
+     * na tokenach parsera tego formatu.</p>
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do zachowania.
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP, do której zapisywany jest przefiltrowany JSON.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/filter/include/stream", produces = {DataFormat.JSON_VALUE, DataFormat.SMILE_VALUE, DataFormat.CBOR_VALUE, DataFormat.MSGPACK_VALUE})
+    public void filterIncludeStream(@RequestParam String[] properties, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        logger.info("Otrzymano żądanie dot. strumieniowego filtrowania JSON (zachowaj właściwości)");
+        String error = "{\"error\": \"Nieprawidłowy format JSON lub właściwości\"}";
+        try {
+            stream("filter/include", filter("include", properties), request, response, error);
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy filtrowaniu (zachowaj właściwości): ", e);
+            metrics.error("filter/include", e);
+            response.setContentType("application/json");
+            response.getOutputStream().write(error.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Strumieniowo filtruje JSON, usuwając wskazane właściwości.
+     * <p>Usuwane poddrzewa są pomijane już na poziomie tokenów parsera, bez budowania drzewa dokumentu.
+     * Dokument może być przesłany i zwrócony w formacie binarnym ({@link DataFormat}) - filtr działa wtedy
+     * na tokenach parsera tego formatu.</p>
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do usunięcia.
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP, do której zapisywany jest przefiltrowany JSON.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/filter/exclude/stream", produces = {DataFormat.JSON_VALUE, DataFormat.SMILE_VALUE, DataFormat.CBOR_VALUE, DataFormat.MSGPACK_VALUE})
+    public void filterExcludeStream(@RequestParam String[] properties, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        logger.info("Otrzymano żądanie dot. strumieniowego filtrowania JSON (usuń właściwości)");
+        String error = "{\"error\": \"Nieprawidłowy format JSON lub właściwości\"}";
+        try {
+            stream("filter/exclude", filter("exclude", properties), request, response, error);
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy filtrowaniu (usuń właściwości): ", e);
+            metrics.error("filter/exclude", e);
+            response.setContentType("application/json");
+            response.getOutputStream().write(error.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     /**
      * Porównuje dwa JSON-y i zwraca różnice między nimi.
      *
@@ -98,15 +269,556 @@ public class JsonTransformerController {
     public String compare(@RequestBody CompareRequest request) {
         logger.info("Otrzymano żądanie dot. porównania JSON-ów");
         try {
-            JsonProcessor processor = new Compare(request.getJson2());
-            String json1String = objectMapper.writeValueAsString(request.getJson1());
-            return processor.process(json1String);
+            Compare processor = new Compare(request.getJson2());
+            return processor.report(request.getJson1());
+        } catch (Exception e) {
+            logger.error("Błąd przy porównywaniu JSON-ów: ", e);
+            metrics.error("compare", e);
+            return "{\"error\": \"Nieprawidłowy format JSON\"}";
+        }
+    }
+
+    /**
+     * Porównuje dwa JSON-y i zwraca różnice w formacie JSON Patch (RFC 6902).
+     *
+     * @param request Obiekt zawierający dwa JSON-y do porównania.
+     * @return Tablica operacji przekształcających {@code json1} w {@code json2} lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/compare/patch", produces = "application/json-patch+json")
+    public String comparePatch(@RequestBody CompareRequest request) {
+        logger.info("Otrzymano żądanie dot. porównania JSON-ów (JSON Patch)");
+        try {
+            Compare processor = new Compare(request.getJson2());
+            return jsonWriter.writeValueAsString(processor.patch(request.getJson1()));
         } catch (Exception e) {
             logger.error("Błąd przy porównywaniu JSON-ów: ", e);
+            metrics.error("compare/patch", e);
             return "{\"error\": \"Nieprawidłowy format JSON\"}";
         }
     }
 
+    /**
+     * Strumieniowo porównuje dwa JSON-y przesłane jako osobne części żądania multipart.
+     * <p>Dokumenty są czytane równolegle token po tokenie, bez budowania ich drzew, a różnice są zapisywane
+     * do odpowiedzi w formacie JSON Patch od razu po wykryciu. Części większe od progu są przechowywane przez
+     * kontener na dysku, więc porównanie bardzo dużych dokumentów nie wymaga pamięci na żaden z nich.</p>
+     * <p>Błąd przed zatwierdzeniem odpowiedzi zwraca komunikat o błędzie; po zatwierdzeniu wyjątek jest zgłaszany
+     * dalej i połączenie jest przerywane, więc niekompletny JSON Patch nie wygląda jak poprawna odpowiedź.</p>
+     *
+     * @param json1 Pierwszy JSON (część {@code json1}).
+     * @param json2 Drugi JSON (część {@code json2}).
+     * @param response Odpowiedź HTTP, do której zapisywane są różnice.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi lub porównanie nie powiodło się po jej zatwierdzeniu.
+     */
+    @PostMapping(value = "/compare/stream", consumes = "multipart/form-data", produces = "application/json-patch+json")
+    public void compareStream(@RequestPart("json1") MultipartFile json1, @RequestPart("json2") MultipartFile json2,
+                              HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. strumieniowego porównania JSON-ów");
+        response.setContentType("application/json-patch+json");
+        try (InputStream input1 = json1.getInputStream(); InputStream input2 = json2.getInputStream()) {
+            new StreamingCompare().compare(input1, input2, response.getOutputStream());
+        } catch (IOException e) {
+            logger.error("Błąd przy strumieniowym porównywaniu JSON-ów: ", e);
+            metrics.error("compare/stream", e);
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.resetBuffer();
+            response.getOutputStream().write("{\"error\": \"Nieprawidłowy format JSON\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Minimalizuje każdy rekord strumienia NDJSON.
+     *
+     * @param parallel Czy przetwarzać rekordy równolegle (w blokach, z zachowaniem kolejności).
+     * @param input Strumień z treścią żądania (jeden JSON w każdej linii).
+     * @param response Odpowiedź HTTP, do której zapisywane są wyniki, po jednym na linię.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/minify", consumes = JsonLines.MEDIA_TYPE, produces = JsonLines.MEDIA_TYPE)
+    public void minifyLines(@RequestParam(defaultValue = "false") boolean parallel, InputStream input,
+                            HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. zminimalizowania rekordów NDJSON");
+        lines("minify", MINIFY, input, response, "Nieprawidłowy format JSON", parallel);
+    }
+
+    /**
+     * Upiększa każdy rekord strumienia NDJSON.
+     * <p>Wyniki są wielowierszowe, więc odpowiedź jest ciągiem dokumentów JSON rozdzielonych nową linią.</p>
+     *
+     * @param parallel Czy przetwarzać rekordy równolegle (w blokach, z zachowaniem kolejności).
+     * @param input Strumień z treścią żądania (jeden JSON w każdej linii).
+     * @param response Odpowiedź HTTP, do której zapisywane są wyniki.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/prettify", consumes = JsonLines.MEDIA_TYPE, produces = JsonLines.MEDIA_TYPE)
+    public void prettifyLines(@RequestParam(defaultValue = "false") boolean parallel, InputStream input,
+                              HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. upiększenia rekordów NDJSON");
+        lines("prettify", PRETTIFY, input, response, "Nieprawidłowy format JSON", parallel);
+    }
+
+    /**
+     * Filtruje każdy rekord strumienia NDJSON, zachowując tylko wskazane właściwości.
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do zachowania.
+     * @param parallel Czy przetwarzać rekordy równolegle (w blokach, z zachowaniem kolejności).
+     * @param input Strumień z treścią żądania (jeden JSON w każdej linii).
+     * @param response Odpowiedź HTTP, do której zapisywane są wyniki, po jednym na linię.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/filter/include", consumes = JsonLines.MEDIA_TYPE, produces = JsonLines.MEDIA_TYPE)
+    public void filterIncludeLines(@RequestParam String[] properties, @RequestParam(defaultValue = "false") boolean parallel,
+                                   InputStream input, HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. filtrowania rekordów NDJSON (zachowaj właściwości)");
+        try {
+            lines("filter/include", filter("include", properties), input, response, "Nieprawidłowy format JSON", parallel);
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy filtrowaniu (zachowaj właściwości): ", e);
+            metrics.error("filter/include", e);
+            response.setContentType(JsonLines.MEDIA_TYPE);
+            response.getOutputStream().write("{\"error\": \"Nieprawidłowe właściwości\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Filtruje każdy rekord strumienia NDJSON, usuwając wskazane właściwości.
+     *
+     * @param properties Wyrażenia ścieżkowe właściwości do usunięcia.
+     * @param parallel Czy przetwarzać rekordy równolegle (w blokach, z zachowaniem kolejności).
+     * @param input Strumień z treścią żądania (jeden JSON w każdej linii).
+     * @param response Odpowiedź HTTP, do której zapisywane są wyniki, po jednym na linię.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/filter/exclude", consumes = JsonLines.MEDIA_TYPE, produces = JsonLines.MEDIA_TYPE)
+    public void filterExcludeLines(@RequestParam String[] properties, @RequestParam(defaultValue = "false") boolean parallel,
+                                   InputStream input, HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. filtrowania rekordów NDJSON (usuń właściwości)");
+        try {
+            lines("filter/exclude", filter("exclude", properties), input, response, "Nieprawidłowy format JSON", parallel);
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy filtrowaniu (usuń właściwości): ", e);
+            metrics.error("filter/exclude", e);
+            response.setContentType(JsonLines.MEDIA_TYPE);
+            response.getOutputStream().write("{\"error\": \"Nieprawidłowe właściwości\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Porównuje każdy rekord strumienia NDJSON z jednym dokumentem wzorcowym.
+     * <p>Dla każdego rekordu zapisywana jest jedna linia z tablicą operacji JSON Patch przekształcających
+     * rekord we wzorzec (pusta tablica oznacza brak różnic).</p>
+     *
+     * @param reference Dokument wzorcowy (część {@code reference}).
+     * @param records Rekordy NDJSON do porównania (część {@code records}).
+     * @param parallel Czy przetwarzać rekordy równolegle (w blokach, z zachowaniem kolejności).
+     * @param response Odpowiedź HTTP, do której zapisywane są różnice, po jednej linii na rekord.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/compare", consumes = "multipart/form-data", produces = JsonLines.MEDIA_TYPE)
+    public void compareLines(@RequestPart("reference") MultipartFile reference, @RequestPart("records") MultipartFile records,
+                             @RequestParam(defaultValue = "false") boolean parallel, HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. porównania rekordów NDJSON ze wzorcem");
+        Compare compare;
+        try (InputStream input = reference.getInputStream()) {
+            compare = new Compare(jsonReader.readTree(input));
+        } catch (IOException e) {
+            logger.error("Błąd przy porównywaniu JSON-ów: ", e);
+            metrics.error("compare", e);
+            response.setContentType(JsonLines.MEDIA_TYPE);
+            response.getOutputStream().write("{\"error\": \"Nieprawidłowy format JSON wzorca\"}\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        JsonProcessor processor = json -> jsonWriter.writeValueAsString(compare.patch(jsonReader.readTree(json)));
+        try (InputStream input = records.getInputStream()) {
+            lines("compare", processor, input, response, "Nieprawidłowy format JSON", parallel);
+        }
+    }
+
+    /**
+     * Konwertuje dokument między formatami JSON, Smile, CBOR i MessagePack.
+     * <p>Format wejścia określa nagłówek {@code Content-Type}, a format wyniku - {@code Accept}. Dokument jest
+     * przepisywany token po tokenie, bez budowania drzewa.</p>
+     *
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP, do której zapisywany jest dokument w nowym formacie.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi.
+     */
+    @PostMapping(value = "/convert", produces = {DataFormat.JSON_VALUE, DataFormat.SMILE_VALUE, DataFormat.CBOR_VALUE, DataFormat.MSGPACK_VALUE})
+    public void convert(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        logger.info("Otrzymano żądanie dot. konwersji formatu");
+        DataFormat inputFormat = inputFormat(request);
+        DataFormat outputFormat = outputFormat(request);
+        InputStream input = request.getInputStream();
+        stream("convert", output -> DataFormat.convert(inputFormat, input, outputFormat, output), outputFormat, response,
+                "{\"error\": \"Nieprawidłowy format danych\"}");
+    }
+
+    /**
+     * Wykonuje uporządkowaną listę operacji na JSON w jednym przebiegu.
+     * <p>Lista operacji jest kompilowana do jednego łańcucha dekoratorów (z pamięci podręcznej dla powtarzających się
+     * specyfikacji), a dokument jest przetwarzany na drzewie sparsowanym raz, razem z treścią żądania.</p>
+     *
+     * @param request Obiekt zawierający JSON oraz listę operacji do wykonania.
+     * @return Przetworzony JSON lub komunikat o błędzie w przypadku niepowodzenia.
+     */
+    @PostMapping(value = "/pipeline", produces = "application/json")
+    public String pipeline(@RequestBody PipelineRequest request) {
+        logger.info("Otrzymano żądanie dot. potoku operacji na JSON");
+        try {
+            JsonTreeProcessor processor = JsonPipeline.compile(request.getOperations());
+            return processor.serialize(processor.process(request.getJson()));
+        } catch (Exception e) {
+            logger.error("Błąd przy wykonywaniu potoku operacji: ", e);
+            metrics.error("pipeline", e);
+            return "{\"error\": \"Nieprawidłowy format JSON lub operacji\"}";
+        }
+    }
+
+    /**
+     * Zwraca procesor filtrujący dla podanych właściwości.
+     * <p>Procesory są kompilowane raz dla danego zbioru właściwości i przechowywane w pamięci podręcznej
+     * {@link JsonPipeline}, więc powtarzające się filtry nie kompilują wyrażeń ścieżkowych od nowa.</p>
+     *
+     * @param type Rodzaj filtra: {@code include} lub {@code exclude}.
+     * @param properties Wyrażenia ścieżkowe właściwości.
+     * @return Procesor filtrujący.
+     * @throws IllegalArgumentException Jeśli któreś z wyrażeń jest niepoprawne.
+     */
+    static JsonTreeProcessor filter(String type, String[] properties) {
+        return JsonPipeline.compile(List.of(new JsonPipeline.Step(type, List.of(properties))));
+    }
+
+    /**
+     * Zwraca procesor upiększający z podanymi opcjami formatowania (także z pamięci podręcznej {@link JsonPipeline}).
+     *
+     * @param format Opcje formatowania lub {@code null} dla standardowego formatowania.
+     * @return Procesor upiększający.
+     * @throws IllegalArgumentException Jeśli któraś z opcji jest niepoprawna.
+     */
+    static JsonTreeProcessor prettify(String[] format) {
+        return format == null ? PRETTIFY : JsonPipeline.compile(List.of(new JsonPipeline.Step("prettify", List.of(format))));
+    }
+
+    /**
+     * Zapisuje dokument wzorcowy, z którym można potem porównywać kolejne wersje dokumentu.
+     * <p>Wzorzec jest przechowywany sparsowany i zindeksowany ({@link ReferenceStore}), więc porównanie z nim
+     * wymaga przesłania i sparsowania tylko nowej wersji.</p>
+     *
+     * @param input Treść żądania z dokumentem wzorcowym.
+     * @return Odpowiedź 201 z identyfikatorem i wersją wzorca lub komunikat o błędzie.
+     */
+    @PostMapping(value = "/references", produces = "application/json")
+    public ResponseEntity<String> addReference(InputStream input) {
+        logger.info("Otrzymano żądanie dot. zapisania dokumentu wzorcowego");
+        try {
+            ReferenceStore.Snapshot snapshot = references.add(readDocument(input));
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(HttpHeaders.LOCATION, "/json/references/" + snapshot.id())
+                    .body(JsonNodeFactory.instance.objectNode().put("id", snapshot.id()).put("version", snapshot.version())
+                            .toString());
+        } catch (IllegalArgumentException e) {
+            logger.error("Błąd przy zapisywaniu dokumentu wzorcowego: ", e);
+            metrics.error("references", e);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("{\"error\": \"Dokument wzorcowy jest za duży\"}");
+        } catch (IOException e) {
+            logger.error("Błąd przy zapisywaniu dokumentu wzorcowego: ", e);
+            metrics.error("references", e);
+            return ResponseEntity.ok("{\"error\": \"Nieprawidłowy format JSON\"}");
+        }
+    }
+
+    /**
+     * Zwraca bieżącą wersję dokumentu wzorcowego.
+     *
+     * @param id Identyfikator wzorca.
+     * @return Dokument wzorcowy (wersja w nagłówku {@code X-Reference-Version}) lub odpowiedź 404.
+     * @throws IOException Jeśli nie udało się odczytać wzorca z dysku.
+     */
+    @GetMapping(value = "/references/{id}", produces = "application/json")
+    public ResponseEntity<String> getReference(@PathVariable String id) throws IOException {
+        try {
+            ReferenceStore.Snapshot snapshot = references.get(id);
+            return ResponseEntity.ok().header(REFERENCE_VERSION, String.valueOf(snapshot.version()))
+                    .body(jsonWriter.writeValueAsString(snapshot.document()));
+        } catch (NoSuchElementException e) {
+            return unknownReference();
+        }
+    }
+
+    /**
+     * Usuwa dokument wzorcowy.
+     *
+     * @param id Identyfikator wzorca.
+     * @return Odpowiedź 204 lub 404, jeśli wzorzec nie istniał.
+     * @throws IOException Jeśli nie udało się usunąć plików wzorca.
+     */
+    @DeleteMapping(value = "/references/{id}")
+    public ResponseEntity<String> removeReference(@PathVariable String id) throws IOException {
+        return references.remove(id) ? ResponseEntity.noContent().build() : unknownReference();
+    }
+
+    /**
+     * Porównuje przesłany JSON z dokumentem wzorcowym i zwraca raport różnic (jak {@link #compare}, gdzie wzorzec
+     * jest pierwszym dokumentem).
+     *
+     * @param id Identyfikator wzorca.
+     * @param roll Czy po porównaniu przesłany dokument ma zastąpić wzorzec jako jego następna wersja.
+     * @param input Treść żądania z nową wersją dokumentu.
+     * @return Raport różnic (wersja wzorca po porównaniu w nagłówku {@code X-Reference-Version}), komunikat o błędzie
+     * lub odpowiedź 404.
+     */
+    @PostMapping(value = "/references/{id}/compare", produces = "application/json")
+    public ResponseEntity<String> compareReference(@PathVariable String id, @RequestParam(defaultValue = "false") boolean roll,
+                                                   InputStream input) {
+        logger.info("Otrzymano żądanie dot. porównania JSON-a z dokumentem wzorcowym");
+        return compareReference("references/compare", id, roll, input, Compare::report);
+    }
+
+    /**
+     * Porównuje przesłany JSON z dokumentem wzorcowym i zwraca różnice w formacie JSON Patch (RFC 6902).
+     *
+     * @param id Identyfikator wzorca.
+     * @param roll Czy po porównaniu przesłany dokument ma zastąpić wzorzec jako jego następna wersja.
+     * @param input Treść żądania z nową wersją dokumentu.
+     * @return Tablica operacji przekształcających wzorzec w przesłany dokument, komunikat o błędzie lub odpowiedź 404.
+     */
+    @PostMapping(value = "/references/{id}/compare/patch", produces = "application/json-patch+json")
+    public ResponseEntity<String> compareReferencePatch(@PathVariable String id,
+                                                        @RequestParam(defaultValue = "false") boolean roll,
+                                                        InputStream input) {
+        logger.info("Otrzymano żądanie dot. porównania JSON-a z dokumentem wzorcowym (JSON Patch)");
+        return compareReference("references/compare/patch", id, roll, input,
+                differences -> jsonWriter.writeValueAsString(JsonDiff.toPatch(differences)));
+    }
+
+    /**
+     * Porównuje treść żądania z dokumentem wzorcowym i zapisuje wynik w podanej postaci.
+     *
+     * @param operation Nazwa operacji (etykieta licznika błędów).
+     * @param id Identyfikator wzorca.
+     * @param roll Czy przesunąć wzorzec do przesłanego dokumentu.
+     * @param input Treść żądania.
+     * @param format Zamienia listę różnic na treść odpowiedzi.
+     * @return Wynik porównania, komunikat o błędzie lub odpowiedź 404.
+     */
+    private ResponseEntity<String> compareReference(String operation, String id, boolean roll, InputStream input,
+                                                    DifferenceFormat format) {
+        try {
+            ReferenceStore.Comparison comparison = references.compare(id, readDocument(input), roll);
+            return ResponseEntity.ok().header(REFERENCE_VERSION, String.valueOf(comparison.version()))
+                    .body(format.apply(comparison.differences()));
+        } catch (NoSuchElementException e) {
+            return unknownReference();
+        } catch (IOException e) {
+            logger.error("Błąd przy porównywaniu JSON-a z dokumentem wzorcowym: ", e);
+            metrics.error(operation, e);
+            return ResponseEntity.ok("{\"error\": \"Nieprawidłowy format JSON\"}");
+        }
+    }
+
+    /**
+     * Zamiana listy różnic na treść odpowiedzi.
+     */
+    @FunctionalInterface
+    private interface DifferenceFormat {
+        String apply(List<JsonDiff.Difference> differences) throws IOException;
+    }
+
+    private static ResponseEntity<String> unknownReference() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\": \"Nieznany dokument wzorcowy\"}");
+    }
+
+    /**
+     * Parsuje dokument z treści żądania.
+     *
+     * @param input Treść żądania.
+     * @return Drzewo dokumentu.
+     * @throws IOException Jeśli treść jest pusta lub nie jest poprawnym JSON-em.
+     */
+    private static JsonNode readDocument(InputStream input) throws IOException {
+        JsonNode document = BaseJsonProcessor.jsonReader.readTree(input);
+        if (document == null || document.isMissingNode()) {
+            throw new IOException("Pusta treść żądania");
+        }
+        return document;
+    }
+
+    /**
+     * Zwraca liczniki pamięci podręcznej wyników.
+     *
+     * @return Liczba trafień, chybień i usunięć oraz bieżący rozmiar pamięci podręcznej.
+     */
+    @GetMapping(value = "/cache/stats", produces = "application/json")
+    public ResultCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Zwraca wynik operacji z pamięci podręcznej lub wylicza go i zapamiętuje.
+     * <p>Znacznik ETag jest kluczem wyniku, więc zgodność z {@code If-None-Match} jest sprawdzana przed
+     * jakimkolwiek przetwarzaniem. Błędy nie są zapamiętywane.</p>
+     *
+     * @param operation Nazwa operacji (część klucza).
+     * @param parameters Parametry operacji w postaci tekstowej (część klucza).
+     * @param json Treść żądania.
+     * @param ifNoneMatch Wartość nagłówka {@code If-None-Match} lub {@code null}.
+     * @param compute Wylicza wynik operacji.
+     * @param errorLog Komunikat logowany w przypadku błędu.
+     * @return Odpowiedź 304, wynik ze znacznikiem ETag lub komunikat o błędzie.
+     */
+    private ResponseEntity<String> cached(String operation, String parameters, String json, String ifNoneMatch,
+                                          Computation compute, String errorLog) {
+        String key = ResultCache.key(operation, parameters, json);
+        String etag = "\"" + key + "\"";
+        if (ResultCache.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        String result = cache.get(key);
+        if (result == null) {
+            try {
+                result = compute.get();
+            } catch (Exception e) {
+                logger.error(errorLog, e);
+                metrics.error(operation, e);
+                return ResponseEntity.ok("{\"error\": \"Nieprawidłowy format JSON\"}");
+            }
+            cache.put(key, result);
+        }
+        return ResponseEntity.ok().eTag(etag).body(result);
+    }
+
+    /**
+     * Wyliczenie wyniku operacji, które może zgłosić błąd przetwarzania JSON.
+     */
+    @FunctionalInterface
+    private interface Computation {
+        String get() throws Exception;
+    }
+
+    /**
+     * Przetwarza treść żądania procesorem w trybie strumieniowym i zapisuje wynik bezpośrednio do odpowiedzi.
+     * <p>Jeśli błąd wystąpi zanim odpowiedź zostanie zatwierdzona, zwracany jest komunikat o błędzie;
+     * w przeciwnym razie wyjątek jest zgłaszany dalej, więc kontener przerywa połączenie bez poprawnego zakończenia
+     * treści i klient nie może uznać niekompletnego wyniku za cały dokument.</p>
+     *
+     * <p>Formaty wejścia i wyniku są wybierane według nagłówków {@code Content-Type} i {@code Accept}
+     * ({@link #inputFormat}, {@link #outputFormat}).</p>
+     *
+     * @param operation Nazwa operacji (etykieta licznika błędów).
+     * @param processor Procesor JSON.
+     * @param request Żądanie HTTP z dokumentem w treści.
+     * @param response Odpowiedź HTTP.
+     * @param error Komunikat o błędzie zwracany w przypadku niepowodzenia.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi lub przetwarzanie nie powiodło się po jej zatwierdzeniu.
+     */
+    private void stream(String operation, JsonProcessor processor, HttpServletRequest request, HttpServletResponse response,
+                        String error) throws IOException {
+        DataFormat inputFormat = inputFormat(request);
+        DataFormat outputFormat = outputFormat(request);
+        InputStream input = request.getInputStream();
+        stream(operation, output -> DataFormat.process(processor, inputFormat, input, outputFormat, output), outputFormat,
+                response, error);
+    }
+
+    /**
+     * Zapisuje treść odpowiedzi strumieniowo, obsługując błędy tak jak {@link #stream(String, JsonProcessor, HttpServletRequest, HttpServletResponse, String)}.
+     * <p>Komunikat o błędzie jest zawsze tekstowym JSON-em, niezależnie od formatu wyniku.</p>
+     *
+     * @param operation Nazwa operacji (etykieta licznika błędów).
+     * @param body Zapisuje treść odpowiedzi do podanego strumienia.
+     * @param format Format wyniku (określa typ treści odpowiedzi).
+     * @param response Odpowiedź HTTP.
+     * @param error Komunikat o błędzie zwracany w przypadku niepowodzenia.
+     * @throws IOException Jeśli nie udało się zapisać odpowiedzi lub przetwarzanie nie powiodło się po jej zatwierdzeniu.
+     */
+    private void stream(String operation, StreamingBody body, DataFormat format, HttpServletResponse response,
+                        String error) throws IOException {
+        response.setContentType(format.mediaType());
+        try {
+            body.writeTo(response.getOutputStream());
+        } catch (IOException e) {
+            logger.error("Błąd przy przetwarzaniu strumieniowym: ", e);
+            metrics.error(operation, e);
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.resetBuffer();
+            response.setContentType(DataFormat.JSON_VALUE);
+            response.getOutputStream().write(error.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Zwraca format treści żądania według nagłówka {@code Content-Type}.
+     * <p>Typy, które nie odpowiadają żadnemu formatowi binarnemu (także brak nagłówka), oznaczają JSON.</p>
+     *
+     * @param request Żądanie HTTP.
+     * @return Format treści żądania.
+     */
+    static DataFormat inputFormat(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null ? DataFormat.JSON : DataFormat.of(contentType).orElse(DataFormat.JSON);
+    }
+
+    /**
+     * Zwraca format wyniku według nagłówka {@code Accept}: pierwszy obsługiwany typ w kolejności preferencji
+     * klienta, a dla typów ogólnych (np. {@code *}{@code /*}) lub braku nagłówka - JSON.
+     *
+     * @param request Żądanie HTTP.
+     * @return Format wyniku.
+     */
+    private static DataFormat outputFormat(HttpServletRequest request) {
+        List<MediaType> accepted = MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT));
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            Optional<DataFormat> format = DataFormat.of(mediaType.getType() + "/" + mediaType.getSubtype());
+            if (format.isPresent()) {
+                return format.get();
+            }
+            if (mediaType.isWildcardSubtype()) {
+                return DataFormat.JSON;
+            }
+        }
+        return DataFormat.JSON;
+    }
+
+    /**
+     * Treść odpowiedzi zapisywana bezpośrednio do strumienia wyjściowego.
+     */
+    @FunctionalInterface
+    private interface StreamingBody {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /**
+     * Przetwarza treść żądania w formacie NDJSON rekord po rekordzie i zapisuje wyniki bezpośrednio do odpowiedzi.
+     * <p>Błędny rekord nie przerywa przetwarzania - w jego miejscu zapisywany jest komunikat o błędzie
+     * z numerem linii.</p>
+     *
+     * @param operation Nazwa operacji (etykieta licznika błędów).
+     * @param processor Procesor JSON stosowany do każdego rekordu.
+     * @param input Strumień z treścią żądania.
+     * @param response Odpowiedź HTTP.
+     * @param error Komunikat o błędzie zapisywany dla błędnych rekordów.
+     * @param parallel Czy przetwarzać rekordy równolegle we wspólnej puli wątków.
+     * @throws IOException Jeśli nie udało się odczytać żądania lub zapisać odpowiedzi.
+     */
+    private void lines(String operation, JsonProcessor processor, InputStream input, HttpServletResponse response,
+                       String error, boolean parallel) throws IOException {
+        response.setContentType(JsonLines.MEDIA_TYPE);
+        JsonLines.Summary summary = parallel
+                ? JsonLines.process(processor, input, response.getOutputStream(), error, ForkJoinPool.commonPool())
+                : JsonLines.process(processor, input, response.getOutputStream(), error);
+        metrics.records(operation, summary);
+        if (summary.errors() > 0) {
+            logger.warn("Nie udało się przetworzyć {} z {} rekordów NDJSON", summary.errors(), summary.records());
+        }
+    }
+
     /**
      * DTO dla żądań filtracji JSON.
      */
@@ -154,4 +866,28 @@ public class JsonTransformerController {
             this.json2 = json2;
         }
     }
+
+    /**
+     * DTO dla żądań potoku operacji na JSON.
+     */
+    public static class PipelineRequest {
+        private JsonNode json;
+        private List<JsonPipeline.Step> operations;
+
+        public JsonNode getJson() {
+            return json;
+        }
+
+        public void setJson(JsonNode json) {
+            this.json = json;
+        }
+
+        public List<JsonPipeline.Step> getOperations() {
+            return operations;
+        }
+
+        public void setOperations(List<JsonPipeline.Step> operations) {
+            this.operations = operations;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package pl.put.poznan.transformer.rest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * Mierzy rozmiary treści żądań i odpowiedzi endpointów.
+ * <p>
+ * Rozmiary są zapisywane jako histogramy {@code transformer.request.size} i {@code transformer.response.size}
+ * z etykietą {@code uri} (wzorcem ścieżki endpointu, więc liczba serii jest ograniczona). Rozmiar żądania to
+ * nagłówek {@code Content-Length} albo, dla treści o nieznanej długości (także skompresowanych), liczba
+ * odczytanych bajtów po rozpakowaniu; rozmiar odpowiedzi to liczba bajtów zapisanych do strumienia wyjściowego
+ * przed kompresją ({@link CompressionFilter}). Żądania nieobsłużone przez żaden endpoint
+ * (np. odrzucone przez {@link AdmissionControlFilter} lub {@link RequestLimitFilter}) nie są mierzone.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class MetricsFilter extends OncePerRequestFilter {
+    private final MeterRegistry registry;
+
+    /**
+     * Konstruktor klasy MetricsFilter.
+     *
+     * @param registry Rejestr metryk.
+     */
+    public MetricsFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CountingRequest countingRequest = new CountingRequest(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        try {
+            chain.doFilter(countingRequest, countingResponse);
+        } finally {
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (uri != null) {
+                long length = request.getContentLengthLong();
+                summary("transformer.request.size", "Rozmiar treści żądania", uri.toString())
+                        .record(length >= 0 ? length : countingRequest.bytes);
+                summary("transformer.response.size", "Rozmiar treści odpowiedzi", uri.toString())
+                        .record(countingResponse.bytes);
+            }
+        }
+    }
+
+    private DistributionSummary summary(String name, String description, String uri) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Żądanie liczące bajty odczytane z treści.
+     */
+    private static final class CountingRequest extends HttpServletRequestWrapper {
+        private long bytes;
+        private ServletInputStream input;
+
+        private CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                ServletInputStream delegate = super.getInputStream();
+                input = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        if (b >= 0) {
+                            bytes++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int n = delegate.read(buffer, offset, length);
+                        if (n > 0) {
+                            bytes += n;
+                        }
+                        return n;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener listener) {
+                        delegate.setReadListener(listener);
+                    }
+                };
+            }
+            return input;
+        }
+    }
+
+    /**
+     * Odpowiedź licząca bajty zapisane do strumienia wyjściowego.
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        private long bytes;
+        private ServletOutputStream output;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (output == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                output = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException {
+                        delegate.write(buffer, offset, length);
+                        bytes += length;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return output;
+        }
+    }
+}
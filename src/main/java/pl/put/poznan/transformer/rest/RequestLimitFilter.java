@@ -0,0 +1,252 @@
+package pl.put.poznan.transformer.rest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import pl.put.poznan.transformer.logic.DataFormat;
+import pl.put.poznan.transformer.logic.JsonLimits;
+import pl.put.poznan.transformer.logic.JsonLines;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Limity rozmiaru i struktury treści żądań, osobne dla każdego endpointu.
+ * <p>
+ * Każdy endpoint (ścieżka po {@code /json/}, np. {@code minify/stream}) ma budżet {@link JsonLimits}: rozmiar
+ * treści, głębokość zagnieżdżenia, długość napisów i liczb oraz liczbę tokenów. Budżet jest brany z najdłuższej
+ * pasującej ścieżki we właściwości {@code transformer.limits.endpoints}, a pominięte w nim limity - z właściwości
+ * {@code transformer.limits.default}. Żądania NDJSON i multipart mają osobne budżety ze ścieżką zakończoną
+ * {@code /ndjson} lub {@code /multipart} (np. {@code minify/ndjson}), bo pod tą samą ścieżką co zwykły JSON
+ * przyjmują strumienie rekordów i duże pliki.
+ * </p>
+ * <p>
+ * Żądanie, którego nagłówek {@code Content-Length} przekracza limit rozmiaru, jest od razu odrzucane z kodem 413.
+ * Pozostałe limity są sprawdzane na bajtach treści w trakcie jej czytania (po rozpakowaniu przez
+ * {@link CompressionFilter}): po przekroczeniu progu odczyt kończy się wyjątkiem
+ * {@link JsonLimits.LimitExceededException}, który endpoint zgłasza jak nieprawidłowe dane, więc reszta treści
+ * nie jest ani czytana, ani parsowana. Struktura jest sprawdzana tylko dla JSON-a - dla formatów binarnych
+ * i żądań multipart (których części odczytuje kontener) obowiązuje tylko limit rozmiaru z nagłówka.
+ * </p>
+ * <p>
+ * Odrzucenia są liczone w {@code transformer.limits.rejected} z etykietami budżetu ({@code endpoint}) i limitu.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class RequestLimitFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(RequestLimitFilter.class);
+    private static final String PREFIX = "/json/";
+    private static final String DEFAULT = "default";
+
+    private final JsonLimits defaults;
+    /**
+     * Budżety endpointów według ścieżki (w odwrotnej kolejności, więc dłuższe ścieżki są przed swoimi prefiksami).
+     */
+    private final Map<String, JsonLimits> endpoints = new TreeMap<>(Comparator.reverseOrder());
+    private final MeterRegistry registry;
+
+    /**
+     * Konstruktor klasy RequestLimitFilter.
+     *
+     * @param defaults Limity domyślne, np. {@code body=16777216,depth=1000,string=4194304,number=1000,tokens=4000000}.
+     * @param endpoints Limity endpointów według ścieżki; pominięte limity są brane z domyślnych.
+     * @param registry Rejestr metryk.
+     * @throws IllegalArgumentException Jeśli któryś z limitów jest niepoprawny.
+     */
+    public RequestLimitFilter(@Value("${transformer.limits.default:}") String defaults,
+                              @Value("#{${transformer.limits.endpoints:{:}}}") Map<String, String> endpoints,
+                              MeterRegistry registry) {
+        this.defaults = JsonLimits.parse(defaults, JsonLimits.UNLIMITED);
+        endpoints.forEach((path, limits) -> this.endpoints.put(path, JsonLimits.parse(limits, this.defaults)));
+        this.registry = registry;
+    }
+
+    /**
+     * Sprawdza limity endpointu dla dokumentu przesłanego jako napis wewnątrz treści żądania (np. pole
+     * {@code json} filtrów), którego struktury nie widać w bajtach treści.
+     *
+     * @param endpoint Ścieżka endpointu po {@code /json/}.
+     * @param json Dokument JSON.
+     * @throws JsonLimits.LimitExceededException Jeśli dokument przekracza któryś z limitów.
+     */
+    public void check(String endpoint, String json) throws JsonLimits.LimitExceededException {
+        String budget = budget(endpoint);
+        try {
+            limits(budget).check(json);
+        } catch (JsonLimits.LimitExceededException e) {
+            rejected(budget, e.limit());
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String contentType = request.getContentType() == null ? "" : request.getContentType().toLowerCase(Locale.ROOT);
+        boolean multipart = contentType.startsWith("multipart/");
+        String endpoint = path.substring(PREFIX.length());
+        if (contentType.startsWith(JsonLines.MEDIA_TYPE)) {
+            endpoint += "/ndjson";
+        } else if (multipart) {
+            endpoint += "/multipart";
+        }
+        String budget = budget(endpoint);
+        JsonLimits limits = limits(budget);
+        if (limits.equals(JsonLimits.UNLIMITED)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long length = request.getContentLengthLong();
+        if (length > limits.maxBytes() && limits.maxBytes() > 0) {
+            logger.warn("Odrzucono żądanie {} o rozmiarze {} B (limit {} B)", path, length, limits.maxBytes());
+            rejected(budget, "body");
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            response.setContentType("application/json");
+            response.getOutputStream().write("{\"error\": \"Żądanie przekracza limit rozmiaru\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (multipart) {
+            chain.doFilter(request, response);
+            return;
+        }
+        boolean binary = DataFormat.of(contentType).filter(format -> format != DataFormat.JSON).isPresent();
+        chain.doFilter(new LimitedRequest(request, limits.scanner(!binary), budget), response);
+    }
+
+    /**
+     * Zwraca budżet dla ścieżki endpointu: najdłuższą skonfigurowaną ścieżkę, która jest nią samą lub jej
+     * prefiksem (z dokładnością do segmentów), albo {@code default}.
+     */
+    private String budget(String endpoint) {
+        for (String path : endpoints.keySet()) {
+            if (endpoint.equals(path) || endpoint.startsWith(path + "/")) {
+                return path;
+            }
+        }
+        return DEFAULT;
+    }
+
+    private JsonLimits limits(String budget) {
+        return endpoints.getOrDefault(budget, defaults);
+    }
+
+    private void rejected(String budget, String limit) {
+        registry.counter("transformer.limits.rejected", "endpoint", budget, "limit", limit).increment();
+    }
+
+    /**
+     * Żądanie sprawdzające limity na czytanej treści.
+     */
+    private final class LimitedRequest extends HttpServletRequestWrapper {
+        private final JsonLimits.Scanner scanner;
+        private final String budget;
+        private ServletInputStream input;
+        private BufferedReader reader;
+
+        private LimitedRequest(HttpServletRequest request, JsonLimits.Scanner scanner, String budget) {
+            super(request);
+            this.scanner = scanner;
+            this.budget = budget;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                input = new LimitedInputStream(super.getInputStream());
+            }
+            return input;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+                reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+            }
+            return reader;
+        }
+
+        /**
+         * Strumień treści przekazujący każdy odczytany bajt do sprawdzenia limitów.
+         */
+        private final class LimitedInputStream extends ServletInputStream {
+            private final ServletInputStream delegate;
+
+            private LimitedInputStream(ServletInputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = delegate.read();
+                if (b >= 0) {
+                    try {
+                        scanner.update(b);
+                    } catch (JsonLimits.LimitExceededException e) {
+                        throw interrupted(e);
+                    }
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = delegate.read(buffer, offset, length);
+                try {
+                    scanner.update(buffer, offset, n);
+                } catch (JsonLimits.LimitExceededException e) {
+                    throw interrupted(e);
+                }
+                return n;
+            }
+
+            private JsonLimits.LimitExceededException interrupted(JsonLimits.LimitExceededException e) {
+                logger.warn("Przerwano odczyt żądania: {}", e.getMessage());
+                rejected(budget, e.limit());
+                return e;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return delegate.isFinished();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+                delegate.setReadListener(listener);
+            }
+        }
+    }
+}
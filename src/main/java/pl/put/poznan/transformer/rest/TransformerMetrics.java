@@ -0,0 +1,171 @@
+package pl.put.poznan.transformer.rest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import pl.put.poznan.transformer.logic.BaseJsonProcessor;
+import pl.put.poznan.transformer.logic.JsonJobs;
+import pl.put.poznan.transformer.logic.JsonLines;
+import pl.put.poznan.transformer.logic.JsonPipeline;
+import pl.put.poznan.transformer.logic.ProcessingObserver;
+import pl.put.poznan.transformer.logic.ReferenceStore;
+import pl.put.poznan.transformer.logic.ResultCache;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metryki przetwarzania JSON-ów, publikowane przez Micrometer (m.in. pod {@code /actuator/prometheus}).
+ * <p>
+ * Jako {@link ProcessingObserver} zbiera czasy etapów łańcucha dekoratorów: parsowania
+ * ({@code transformer.parse}), transformacji każdego dekoratora ({@code transformer.stage} z etykietą
+ * {@code stage}) i serializacji ({@code transformer.serialize}). Błędy są liczone w {@code transformer.errors}
+ * z etykietami operacji i przyczyny (prostej nazwy klasy wyjątku). Wskaźniki opisują stan pamięci podręcznych,
+ * kontroli obciążenia i wspólnej puli wątków. Czasy całych żądań dla każdego endpointu mierzy Spring Boot
+ * ({@code http.server.requests}), a rozmiary treści - {@link MetricsFilter}.
+ * </p>
+ */
+@Component
+public class TransformerMetrics implements ProcessingObserver {
+    private final MeterRegistry registry;
+    private final Timer parseTimer;
+    private final Timer serializeTimer;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+
+    /**
+     * Konstruktor klasy TransformerMetrics. Rejestruje wskaźniki i ustawia obiekt jako obserwatora procesorów.
+     *
+     * @param registry Rejestr metryk.
+     * @param admission Filtr kontroli obciążenia, którego stan jest publikowany.
+     */
+    public TransformerMetrics(MeterRegistry registry, AdmissionControlFilter admission) {
+        this.registry = registry;
+        this.parseTimer = timer("transformer.parse", "Czas parsowania dokumentu do drzewa").register(registry);
+        this.serializeTimer = timer("transformer.serialize", "Czas serializacji wyniku").register(registry);
+
+        Gauge.builder("transformer.admission.in.flight", admission, AdmissionControlFilter::getInFlightBytes)
+                .description("Bajty treści żądań przetwarzanych w tej chwili")
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(registry);
+        FunctionCounter.builder("transformer.admission.rejected", admission, AdmissionControlFilter::getRejectedRequests)
+                .description("Żądania odrzucone przez kontrolę obciążenia")
+                .register(registry);
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Gauge.builder("transformer.pool.active", pool, ForkJoinPool::getActiveThreadCount)
+                .description("Aktywne wątki wspólnej puli (przetwarzanie równoległe)")
+                .register(registry);
+        Gauge.builder("transformer.pool.queued", pool, p -> p.getQueuedSubmissionCount() + p.getQueuedTaskCount())
+                .description("Zadania oczekujące we wspólnej puli")
+                .register(registry);
+        Gauge.builder("transformer.pool.parallelism", pool, ForkJoinPool::getParallelism)
+                .register(registry);
+
+        Gauge.builder("transformer.pipeline.cache.entries", JsonPipeline::cacheSize)
+                .description("Skompilowane potoki i filtry w pamięci podręcznej")
+                .register(registry);
+
+        BaseJsonProcessor.setObserver(this);
+    }
+
+    /**
+     * Przywraca pustego obserwatora przy zamykaniu kontekstu aplikacji.
+     */
+    @PreDestroy
+    public void close() {
+        BaseJsonProcessor.setObserver(null);
+    }
+
+    /**
+     * Publikuje liczniki i rozmiar pamięci podręcznej wyników.
+     *
+     * @param cache Pamięć podręczna wyników.
+     */
+    public void bind(ResultCache cache) {
+        FunctionCounter.builder("transformer.cache.hits", cache, c -> c.stats().hits()).register(registry);
+        FunctionCounter.builder("transformer.cache.misses", cache, c -> c.stats().misses()).register(registry);
+        FunctionCounter.builder("transformer.cache.evictions", cache, c -> c.stats().evictions()).register(registry);
+        Gauge.builder("transformer.cache.entries", cache, c -> c.stats().entries())
+                .strongReference(true).register(registry);
+        Gauge.builder("transformer.cache.size", cache, c -> c.stats().bytes())
+                .baseUnit("bytes").strongReference(true).register(registry);
+    }
+
+    /**
+     * Publikuje liczbę i rozmiar dokumentów wzorcowych w pamięci.
+     *
+     * @param references Magazyn dokumentów wzorcowych.
+     */
+    public void bind(ReferenceStore references) {
+        Gauge.builder("transformer.references.entries", references, r -> r.stats().entries())
+                .strongReference(true).register(registry);
+        Gauge.builder("transformer.references.size", references, r -> r.stats().bytes())
+                .baseUnit("bytes").strongReference(true).register(registry);
+    }
+
+    /**
+     * Publikuje liczbę zadań asynchronicznych, ich wyniki i rozmiar ich plików na dysku.
+     *
+     * @param jobs Zadania asynchroniczne.
+     */
+    public void bind(JsonJobs jobs) {
+        Gauge.builder("transformer.jobs.pending", jobs, j -> j.stats().pending())
+                .description("Zadania oczekujące i wykonywane")
+                .strongReference(true).register(registry);
+        FunctionCounter.builder("transformer.jobs.completed", jobs, j -> j.stats().completed()).register(registry);
+        FunctionCounter.builder("transformer.jobs.failed", jobs, j -> j.stats().failed()).register(registry);
+        Gauge.builder("transformer.jobs.disk.size", jobs, j -> j.stats().diskBytes())
+                .baseUnit("bytes").strongReference(true).register(registry);
+    }
+
+    /**
+     * Zlicza błąd operacji.
+     *
+     * @param operation Nazwa operacji, np. {@code minify}.
+     * @param cause Wyjątek, który przerwał operację.
+     */
+    public void error(String operation, Throwable cause) {
+        registry.counter("transformer.errors", "operation", operation, "cause", cause.getClass().getSimpleName())
+                .increment();
+    }
+
+    /**
+     * Zlicza błędne rekordy przetwarzania NDJSON (z przyczyną {@code record}).
+     *
+     * @param operation Nazwa operacji.
+     * @param summary Podsumowanie przetwarzania strumienia.
+     */
+    public void records(String operation, JsonLines.Summary summary) {
+        if (summary.errors() > 0) {
+            registry.counter("transformer.errors", "operation", operation, "cause", "record")
+                    .increment(summary.errors());
+        }
+    }
+
+    @Override
+    public void parsed(long nanos) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void transformed(String stage, long nanos) {
+        stageTimers.computeIfAbsent(stage, name -> timer("transformer.stage", "Czas transformacji dekoratora")
+                .tag("stage", name)
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void serialized(long nanos) {
+        serializeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name).description(description).publishPercentileHistogram();
+    }
+}
@@ -1,8 +1,39 @@
 package pl.put.poznan.transformer.testing.junit;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import pl.put.poznan.transformer.app.JsonTransformerBatch;
 import pl.put.poznan.transformer.logic.*;
+import pl.put.poznan.transformer.rest.AdmissionControlFilter;
+import pl.put.poznan.transformer.rest.CompressionFilter;
+import pl.put.poznan.transformer.rest.RequestLimitFilter;
+import pl.put.poznan.transformer.rest.TransformerMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,6 +80,101 @@ public class JsonTransformerControllerTest {
 
         assertEquals(expectedDifference, result);
     }
+    /**
+     * Testuje porównywanie JSON-ów z polami dodanymi, usuniętymi oraz tablicami.
+     * Sprawdza, czy różnice są zwracane jako poprawny JSON Patch.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testComparePatch() throws Exception {
+        String json1 = """
+                {
+                    "name": "Alice",
+                    "age": 25,
+                    "tags": ["a", "b", "c", "d"],
+                    "items": [{"id": 1, "price": 10}, {"id": 2, "price": 20}]
+                }
+                """;
+
+        String json2 = """
+                {
+                    "name": "Alice",
+                    "tags": ["a", "x", "c", "d", "e"],
+                    "items": [{"id": 1, "price": 10}, {"id": 2, "price": 25}],
+                    "email": "alice/work~1@example.com"
+                }
+                """;
+
+        Compare processor = new Compare(objectMapper.readTree(json2));
+        JsonNode patch = processor.patch(objectMapper.readTree(json1));
+
+        String expectedPatch = """
+                [
+                    {"op": "remove", "path": "/age"},
+                    {"op": "add", "path": "/email", "value": "alice/work~1@example.com"},
+                    {"op": "replace", "path": "/items/1/price", "value": 25},
+                    {"op": "replace", "path": "/tags/1", "value": "x"},
+                    {"op": "add", "path": "/tags/4", "value": "e"}
+                ]
+                """;
+
+        assertEquals(objectMapper.readTree(expectedPatch), patch);
+        assertTrue(processor.process(json1).contains("Różnica w: /age\nOczekiwane: 25\nWłaściwe: brak"));
+    }
+    /**
+     * Testuje strumieniowe porównywanie JSON-ów.
+     * Sprawdza zmiany wartości, różną długość tablic oraz obiekty z polami w innej kolejności.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testStreamingCompare() throws Exception {
+        String json1 = "{\"name\":\"Alice\",\"tags\":[1,2,3],\"details\":{\"a\":1,\"b\":2,\"c\":3}}";
+        String json2 = "{\"name\":\"Bob\",\"tags\":[1,5],\"details\":{\"a\":1,\"c\":3,\"b\":4,\"d\":{\"x\":[]}}}";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingCompare().compare(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(json2.getBytes(StandardCharsets.UTF_8)), output);
+
+        String expectedPatch = """
+                [
+                    {"op": "replace", "path": "/name", "value": "Bob"},
+                    {"op": "replace", "path": "/tags/1", "value": 5},
+                    {"op": "remove", "path": "/tags/2"},
+                    {"op": "replace", "path": "/details/b", "value": 4},
+                    {"op": "add", "path": "/details/d", "value": {"x": []}}
+                ]
+                """;
+
+        assertEquals(objectMapper.readTree(expectedPatch), objectMapper.readTree(output.toByteArray()));
+    }
+    /**
+     * Testuje porównywanie bardzo głęboko zagnieżdżonych dokumentów różniących się jednym liściem.
+     * Sprawdza, czy porównanie nie przepełnia stosu i zwraca tylko zmieniony liść.
+     */
+    @Test
+    public void testCompareDeepDocuments() {
+        int depth = 50_000;
+        ObjectNode json1 = objectMapper.createObjectNode();
+        ObjectNode json2 = objectMapper.createObjectNode();
+        ObjectNode node1 = json1;
+        ObjectNode node2 = json2;
+        for (int i = 0; i < depth; i++) {
+            node1.put("same", i);
+            node2.put("same", i);
+            node1 = node1.putObject("next");
+            node2 = node2.putObject("next");
+        }
+        node1.put("leaf", 1);
+        node2.put("leaf", 2);
+
+        List<JsonDiff.Difference> differences = JsonDiff.diff(json1, json2);
+
+        assertEquals(1, differences.size());
+        assertEquals(JsonDiff.Operation.REPLACE, differences.get(0).operation());
+        assertEquals("/next".repeat(depth) + "/leaf", differences.get(0).path().toString());
+    }
     /**
      * Testuje funkcję filtrowania JSON, aby usunąć określone właściwości.
      * Sprawdza, czy wynikowy JSON nie zawiera wskazanych kluczy.
@@ -107,6 +233,96 @@ public class JsonTransformerControllerTest {
 
         assertEquals(objectMapper.readTree(expectedOutput), objectMapper.readTree(result));
     }
+    /**
+     * Testuje filtrowanie JSON wyrażeniami ścieżkowymi (zagnieżdżone pola, tablice i dowolna głębokość).
+     * Sprawdza zachowanie i usuwanie właściwości, współdzielenie niezmienionych poddrzew z wejściem
+     * oraz odrzucanie wyrażeń z pustymi segmentami.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testFilterPaths() throws Exception {
+        String inputJson = """
+                {
+                    "user": {"name": "Alice", "details": {"email": "alice@example.com", "password": "secret"}},
+                    "items": [{"id": 1, "price": 10}, {"id": 2, "price": 20, "password": "x"}],
+                    "meta": {"version": 3}
+                }
+                """;
+
+        JsonProcessor include = new FilterInclude(new BaseJsonProcessor(), new String[]{"user.details.email", "items[*].price"});
+        String expectedInclude = """
+                {
+                    "user": {"details": {"email": "alice@example.com"}},
+                    "items": [{"price": 10}, {"price": 20}]
+                }
+                """;
+        assertEquals(objectMapper.readTree(expectedInclude), objectMapper.readTree(include.process(inputJson)));
+
+        JsonTreeProcessor exclude = new FilterExclude(new BaseJsonProcessor(), new String[]{"**.password", "items[0]"});
+        JsonNode input = objectMapper.readTree(inputJson);
+        JsonNode result = exclude.process(input);
+        String expectedExclude = """
+                {
+                    "user": {"name": "Alice", "details": {"email": "alice@example.com"}},
+                    "items": [{"id": 2, "price": 20}],
+                    "meta": {"version": 3}
+                }
+                """;
+        assertEquals(objectMapper.readTree(expectedExclude), result);
+        assertSame(input.get("meta"), result.get("meta"));
+
+        for (String expression : new String[]{".", "a..b", "a.", ".a", "a.[0]"}) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new FilterInclude(new BaseJsonProcessor(), new String[]{expression}), expression);
+        }
+    }
+    /**
+     * Testuje strumieniowe filtrowanie JSON na poziomie tokenów parsera.
+     * Sprawdza, czy wynik jest taki sam jak przy filtrowaniu drzewa dokumentu, także gdy nic nie zostało dopasowane
+     * lub gdy z obiektu usunięto wszystkie pola.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testFilterStream() throws Exception {
+        String inputJson = """
+                {
+                    "user": {"name": "Alice", "details": {"email": "alice@example.com", "password": "secret"}},
+                    "items": [{"id": 1, "price": 10}, {"id": 2, "price": 20, "password": "x"}],
+                    "meta": {"version": 3}
+                }
+                """;
+        List<JsonTreeProcessor> processors = List.of(
+                new FilterInclude(new BaseJsonProcessor(), new String[]{"user.details.email", "items[*].price"}),
+                new FilterInclude(new BaseJsonProcessor(), new String[]{"**.password"}),
+                new FilterInclude(new BaseJsonProcessor(), new String[]{"missing"}),
+                new FilterExclude(new BaseJsonProcessor(), new String[]{"**.password", "items[0]", "meta.version"}));
+
+        for (JsonTreeProcessor processor : processors) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            processor.process(new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)), output);
+            assertEquals(processor.process(objectMapper.readTree(inputJson)), objectMapper.readTree(output.toByteArray()));
+        }
+    }
+    /**
+     * Testuje współdzielenie skompilowanych procesorów i stanów dopasowania.
+     * Sprawdza, czy ten sam zbiór właściwości daje tę samą instancję procesora, a przejścia wzdłuż prostych
+     * wyrażeń ścieżkowych zwracają stany wyznaczone przy kompilacji zamiast tworzyć nowe.
+     */
+    @Test
+    public void testReusableProcessors() {
+        List<String> properties = new ArrayList<>(List.of("user.name", "items[*].id"));
+        JsonTreeProcessor processor = JsonPipeline.compile(List.of(new JsonPipeline.Step("include", properties)));
+        properties.add("meta");
+        assertSame(processor, JsonPipeline.compile(List.of(new JsonPipeline.Step("include", List.of("user.name", "items[*].id")))));
+
+        PathMatcher matcher = new PathMatcher("user.name", "items[*].id");
+        assertSame(matcher.root().field("user").field("name"), matcher.root().field("user").field("name"));
+        assertSame(matcher.root().field("items").index(5), matcher.root().field("items").index(7));
+        assertTrue(matcher.root().field("items").index(3).field("id").matched());
+        assertTrue(matcher.root().field("other").isEmpty());
+    }
     /**
      * Testuje funkcję minimalizacji JSON.
      * Sprawdza, czy wynikowy JSON jest prawidłowo zminimalizowany (bez zbędnych spacji i nowych linii).
@@ -130,6 +346,269 @@ public class JsonTransformerControllerTest {
 
         assertEquals(expectedOutput, result);
     }
+    /**
+     * Testuje strumieniową minimalizację JSON.
+     * Sprawdza, czy tokeny skopiowane ze strumienia wejściowego dają ten sam wynik co minimalizacja tekstowa.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testMinifyStream() throws Exception {
+        String inputJson = """
+                {
+                    "name": "Alice",
+                    "tags": [ "a", "b" ],
+                    "details": { "age": 25, "score": 1.5, "active": true, "note": null }
+                }
+                """;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new Minify(new BaseJsonProcessor()).process(new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)), output);
+
+        String expectedOutput = "{\"name\":\"Alice\",\"tags\":[\"a\",\"b\"],"
+                + "\"details\":{\"age\":25,\"score\":1.5,\"active\":true,\"note\":null}}";
+
+        assertEquals(expectedOutput, output.toString(StandardCharsets.UTF_8));
+    }
+    /**
+     * Testuje przetwarzanie wsadowe NDJSON.
+     * Sprawdza, czy każdy rekord jest przetwarzany osobno, puste linie są pomijane, a błędny rekord
+     * daje komunikat z numerem linii bez przerywania przetwarzania pozostałych. Sprawdza też, czy tryb sekwencyjny
+     * i równoległy dzielą linie tak samo - samotny znak {@code \r} nie kończy rekordu.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testJsonLines() throws Exception {
+        String input = "{ \"name\": \"Alice\", \"age\": 25 }\n"
+                + "\n"
+                + "{ \"name\": \n"
+                + "{ \"name\": \"Bob\" }\r\n";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonLines.Summary summary = JsonLines.process(new FilterInclude(new BaseJsonProcessor(), new String[]{"name"}),
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output, "Nieprawidłowy format JSON");
+
+        String expectedOutput = "{\"name\":\"Alice\"}\n"
+                + "{\"line\": 3, \"error\": \"Nieprawidłowy format JSON\"}\n"
+                + "{\"name\":\"Bob\"}\n";
+
+        assertEquals(expectedOutput, output.toString(StandardCharsets.UTF_8));
+        assertEquals(new JsonLines.Summary(3, 1), summary);
+
+        byte[] carriageReturns = "{ \"name\":\r\"Carol\" }\r\n\r\n{ \"name\": \r\n{ \"name\": \"Dan\" }\r"
+                .getBytes(StandardCharsets.UTF_8);
+        JsonProcessor processor = new FilterInclude(new BaseJsonProcessor(), new String[]{"name"});
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        assertEquals(new JsonLines.Summary(3, 1), JsonLines.process(processor, new ByteArrayInputStream(carriageReturns),
+                sequential, "Nieprawidłowy format JSON"));
+        assertEquals(new JsonLines.Summary(3, 1), JsonLines.process(processor, new ByteArrayInputStream(carriageReturns),
+                parallel, "Nieprawidłowy format JSON", ForkJoinPool.commonPool()));
+        assertEquals("{\"name\":\"Carol\"}\n{\"line\": 3, \"error\": \"Nieprawidłowy format JSON\"}\n{\"name\":\"Dan\"}\n",
+                sequential.toString(StandardCharsets.UTF_8));
+        assertEquals(sequential.toString(StandardCharsets.UTF_8), parallel.toString(StandardCharsets.UTF_8));
+    }
+    /**
+     * Testuje równoległe przetwarzanie NDJSON i dużej tablicy najwyższego poziomu.
+     * Sprawdza, czy po podziale wejścia na kilka bloków wynik (wraz z numerami linii błędnych rekordów)
+     * jest taki sam jak przy przetwarzaniu sekwencyjnym oraz czy tablica z niedopasowanymi nawiasami lub danymi
+     * po zamykającym nawiasie jest odrzucana.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testParallelProcessing() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        StringBuilder array = new StringBuilder("[\n");
+        for (int i = 0; i < 30000; i++) {
+            String record = "{ \"id\": " + i + ", \"name\": \"item, [" + i + "]\", \"tags\": [ \"a\", { \"b\": \"}\\\"\" } ] }";
+            lines.append(i % 1000 == 7 ? "{ broken" : record).append('\n');
+            array.append(i > 0 ? ",\n  " : "  ").append(record);
+        }
+        array.append("\n]");
+        assertTrue(array.length() > 2 * JsonArrays.CHUNK_SIZE);
+
+        JsonProcessor processor = new FilterExclude(new Minify(new BaseJsonProcessor()), new String[]{"tags[0]"});
+        byte[] input = lines.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        JsonLines.process(processor, new ByteArrayInputStream(input), sequential, "Nieprawidłowy format JSON");
+        JsonLines.Summary summary = JsonLines.process(processor, new ByteArrayInputStream(input), parallel,
+                "Nieprawidłowy format JSON", ForkJoinPool.commonPool());
+        assertEquals(sequential.toString(StandardCharsets.UTF_8), parallel.toString(StandardCharsets.UTF_8));
+        assertEquals(new JsonLines.Summary(30000, 30), summary);
+
+        ByteArrayOutputStream minified = new ByteArrayOutputStream();
+        JsonArrays.process(new Minify(new BaseJsonProcessor()),
+                new ByteArrayInputStream(array.toString().getBytes(StandardCharsets.UTF_8)), minified, ForkJoinPool.commonPool());
+        assertEquals(new Minify(new BaseJsonProcessor()).process(array.toString()), minified.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream small = new ByteArrayOutputStream();
+        JsonArrays.process(new Minify(new BaseJsonProcessor()),
+                new ByteArrayInputStream("[1, [2], {\"a\": 3}] \n".getBytes(StandardCharsets.UTF_8)), small, ForkJoinPool.commonPool());
+        assertEquals("[1,[2],{\"a\":3}]", small.toString(StandardCharsets.UTF_8));
+        for (String invalid : List.of("[1,2}", "[1,[2}]", "[{\"a\":1]}", "[1,2] garbage", "[1,2]]")) {
+            assertThrows(IOException.class, () -> JsonArrays.process(new Minify(new BaseJsonProcessor()),
+                    new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream(),
+                    ForkJoinPool.commonPool()), invalid);
+        }
+    }
+    /**
+     * Testuje globalną kontrolę przyjmowania żądań.
+     * Sprawdza, czy żądanie przekraczające wolny limit bajtów jest odrzucane kodem 503, żądanie większe
+     * niż cały limit - kodem 413, a rezerwacja jest zwalniana po obsłudze żądania.
+     *
+     * @throws Exception w przypadku problemów z obsługą żądania.
+     */
+    @Test
+    public void testAdmissionControl() throws Exception {
+        AdmissionControlFilter filter = new AdmissionControlFilter(100);
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+
+        MockHttpServletRequest first = new MockHttpServletRequest("POST", "/json/minify");
+        first.setContent(new byte[60]);
+        filter.doFilter(first, new MockHttpServletResponse(), (request, response) -> {
+            assertEquals(60, filter.getInFlightBytes());
+            MockHttpServletRequest second = new MockHttpServletRequest("POST", "/json/minify");
+            second.setContent(new byte[50]);
+            filter.doFilter(second, nested, new MockFilterChain());
+        });
+        assertEquals(503, nested.getStatus());
+        assertEquals("1", nested.getHeader("Retry-After"));
+        assertEquals(0, filter.getInFlightBytes());
+
+        MockHttpServletRequest large = new MockHttpServletRequest("POST", "/json/minify");
+        large.setContent(new byte[200]);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(large, rejected, new MockFilterChain());
+        assertEquals(413, rejected.getStatus());
+    }
+    /**
+     * Testuje limity treści żądań.
+     * Sprawdza, czy żądanie większe niż limit endpointu jest odrzucane kodem 413, czy odczyt treści przekraczającej
+     * limity głębokości, długości napisu i liczby jest przerywany, czy endpoint może mieć własny budżet
+     * i czy odrzucenia są liczone w metrykach.
+     *
+     * @throws Exception w przypadku problemów z obsługą żądania.
+     */
+    @Test
+    public void testRequestLimits() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RequestLimitFilter filter = new RequestLimitFilter("body=100,depth=3,string=10,number=5,tokens=20",
+                java.util.Map.of("minify/stream", "body=0,tokens=0"), registry);
+
+        MockHttpServletRequest large = new MockHttpServletRequest("POST", "/json/minify");
+        large.setContent(new byte[200]);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(large, rejected, new MockFilterChain());
+        assertEquals(413, rejected.getStatus());
+
+        String[][] cases = {{"[[[[1]]]]", "depth"}, {"{\"a\": \"01234567890\"}", "string"}, {"[123456]", "number"},
+                {"[" + "1,".repeat(30) + "1]", "tokens"}, {"[\"ab\\\"cd\", [[true]], -1.5]", null}};
+        for (String[] c : cases) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/json/minify");
+            request.setContent(c[0].getBytes(StandardCharsets.UTF_8));
+            request.addHeader("Transfer-Encoding", "chunked");
+            filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+                if (c[1] == null) {
+                    assertEquals(c[0], new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+                } else {
+                    JsonLimits.LimitExceededException e = assertThrows(JsonLimits.LimitExceededException.class,
+                            () -> req.getInputStream().readAllBytes());
+                    assertEquals(c[1], e.limit());
+                }
+            });
+        }
+
+        MockHttpServletRequest stream = new MockHttpServletRequest("POST", "/json/minify/stream");
+        stream.setContent(("[" + "\"x\",".repeat(20) + "1]").getBytes(StandardCharsets.UTF_8));
+        filter.doFilter(stream, new MockHttpServletResponse(),
+                (req, res) -> assertEquals(83, req.getInputStream().readAllBytes().length));
+
+        assertThrows(JsonLimits.LimitExceededException.class,
+                () -> filter.check("filter/include", "{\"a\": {\"b\": {\"c\": {}}}}"));
+        assertEquals(1, registry.get("transformer.limits.rejected").tags("endpoint", "default", "limit", "body")
+                .counter().count());
+        assertEquals(2, registry.get("transformer.limits.rejected").tags("limit", "depth").counter().count());
+        assertThrows(IllegalArgumentException.class, () -> JsonLimits.parse("size=1", JsonLimits.UNLIMITED));
+    }
+    /**
+     * Testuje pamięć podręczną wyników.
+     * Sprawdza, czy klucz zależy od operacji i treści, wpisy są usuwane według ostatniego użycia po przekroczeniu
+     * limitu rozmiaru, liczniki są aktualizowane, a nagłówek If-None-Match jest poprawnie dopasowywany.
+     */
+    @Test
+    public void testResultCache() {
+        String minifyKey = ResultCache.key("minify", "", "{ \"a\": 1 }");
+        assertEquals(minifyKey, ResultCache.key("minify", "", "{ \"a\": 1 }"));
+        assertNotEquals(minifyKey, ResultCache.key("prettify", "", "{ \"a\": 1 }"));
+        assertNotEquals(minifyKey, ResultCache.key("minify", "", "{ \"a\": 2 }"));
+
+        String value = "x".repeat(100);
+        ResultCache cache = new ResultCache(2 * (96 + 2 * (64 + 100)));
+        cache.put("a".repeat(64), value);
+        cache.put("b".repeat(64), value);
+        assertEquals(value, cache.get("a".repeat(64)));
+        cache.put("c".repeat(64), value);
+        assertNull(cache.get("b".repeat(64)));
+        assertEquals(value, cache.get("c".repeat(64)));
+        assertEquals(new ResultCache.Stats(2, 1, 1, 2, 2 * (96 + 2 * (64 + 100))), cache.stats());
+
+        String etag = "\"" + minifyKey + "\"";
+        assertTrue(ResultCache.matches("\"other\", W/" + etag, etag));
+        assertFalse(ResultCache.matches("*", etag));
+        assertFalse(ResultCache.matches("\"other\"", etag));
+        assertFalse(ResultCache.matches(null, etag));
+    }
+    /**
+     * Testuje łańcuch dekoratorów przetwarzany w jednym przebiegu na drzewie dokumentu.
+     * Sprawdza, czy złożenie filtrów i formatowania daje ten sam wynik co kolejne wywołania tekstowe.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testDecoratorChain() throws Exception {
+        String inputJson = """
+                {
+                    "name": "Alice",
+                    "age": 25,
+                    "location": "New York",
+                    "email": "alice@example.com"
+                }
+                """;
+
+        JsonProcessor processor = new Minify(new FilterExclude(
+                new FilterInclude(new BaseJsonProcessor(), new String[]{"name", "age", "email"}), new String[]{"age"}));
+        String result = processor.process(inputJson);
+
+        assertEquals("{\"name\":\"Alice\",\"email\":\"alice@example.com\"}", result);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        processor.process(new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)), output);
+        assertEquals(result, output.toString(StandardCharsets.UTF_8));
+    }
+    /**
+     * Testuje kompilację potoku operacji.
+     * Sprawdza kolejność operacji oraz ponowne użycie skompilowanego łańcucha dla tej samej specyfikacji.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testPipeline() throws Exception {
+        List<JsonPipeline.Step> steps = List.of(
+                new JsonPipeline.Step("include", List.of("name", "age")),
+                new JsonPipeline.Step("exclude", List.of("age")),
+                new JsonPipeline.Step("minify", null));
+
+        JsonTreeProcessor processor = JsonPipeline.compile(steps);
+        String result = processor.serialize(processor.process(objectMapper.readTree(
+                "{ \"name\": \"Alice\", \"age\": 25, \"location\": \"New York\" }")));
+
+        assertEquals("{\"name\":\"Alice\"}", result);
+        assertSame(processor, JsonPipeline.compile(List.copyOf(steps)));
+        assertThrows(IllegalArgumentException.class, () -> JsonPipeline.compile(List.of(new JsonPipeline.Step("sort", null))));
+    }
     /**
      * Testuje funkcję upiększania JSON.
      * Sprawdza, czy wynikowy JSON jest prawidłowo sformatowany z odpowiednimi wcięciami i nowymi liniami.
@@ -153,4 +632,526 @@ public class JsonTransformerControllerTest {
 
         assertEquals(objectMapper.readTree(expectedOutput), objectMapper.readTree(result));
     }
-}
\ No newline at end of file
+    /**
+     * Testuje strumieniowe upiększanie JSON.
+     * Sprawdza, czy wynik zapisany bezpośrednio do strumienia bajtów jest identyczny z wynikiem tekstowym.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testPrettifyStream() throws Exception {
+        String inputJson = "{\"name\":\"Zażółć\",\"tags\":[1,2],\"details\":{\"age\":25}}";
+
+        JsonProcessor processor = new Prettify(new BaseJsonProcessor());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        processor.process(new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)), output);
+
+        assertEquals(processor.process(inputJson), output.toString(StandardCharsets.UTF_8));
+    }
+    /**
+     * Testuje upiększanie z własnymi ustawieniami formatowania.
+     * Sprawdza wcięcie tabulatorem, sortowanie kluczy, zapis głębszych poddrzew i krótkich tablic w jednym wierszu
+     * oraz to, czy tryb strumieniowy i potok operacji dają ten sam wynik.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testPrettifyFormat() throws Exception {
+        String inputJson = "{\"tags\":[1,2,3],\"name\":\"Alice\",\"list\":[{\"x\":1}],\"details\":{\"b\":{\"c\":[1]},\"a\":true}}";
+        List<String> options = List.of("indent=tab", "sortKeys", "maxDepth=2", "lineWidth=40");
+
+        JsonProcessor processor = new Prettify(new BaseJsonProcessor(), PrettyFormat.parse(options));
+        String result = processor.process(inputJson);
+
+        String expectedOutput = """
+                {
+                \t"details": {
+                \t\t"a": true,
+                \t\t"b": {"c": [1]}
+                \t},
+                \t"list": [
+                \t\t{"x": 1}
+                \t],
+                \t"name": "Alice",
+                \t"tags": [1, 2, 3]
+                }""";
+        assertEquals(expectedOutput, result);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        processor.process(new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)), output);
+        assertEquals(expectedOutput, output.toString(StandardCharsets.UTF_8));
+        assertEquals(expectedOutput, JsonPipeline.compile(List.of(new JsonPipeline.Step("prettify", options))).process(inputJson));
+
+        assertEquals("{\n  \"tags\": [\n    1,\n    2\n  ]\n}",
+                new Prettify(new BaseJsonProcessor(), PrettyFormat.parse(List.of("lineWidth=5"))).process("{\"tags\":[1,2]}"));
+        assertThrows(IllegalArgumentException.class, () -> PrettyFormat.parse(List.of("indent=-1")));
+        assertThrows(IllegalArgumentException.class, () -> PrettyFormat.parse(List.of("width=80")));
+    }
+    /**
+     * Testuje metryki etapów przetwarzania.
+     * Sprawdza, czy łańcuch dekoratorów zgłasza jedno parsowanie, jedną serializację i czas transformacji
+     * każdego dekoratora osobno, a błędy są liczone według operacji i przyczyny.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        TransformerMetrics metrics = new TransformerMetrics(registry, new AdmissionControlFilter(100));
+        try {
+            JsonProcessor processor = new Minify(new FilterInclude(new BaseJsonProcessor(), new String[]{"name"}));
+            assertEquals("{\"name\":\"Alice\"}", processor.process("{\"name\": \"Alice\", \"age\": 25}"));
+
+            assertEquals(1, registry.get("transformer.parse").timer().count());
+            assertEquals(1, registry.get("transformer.serialize").timer().count());
+            assertEquals(1, registry.get("transformer.stage").tag("stage", "FilterInclude").timer().count());
+            assertEquals(1, registry.get("transformer.stage").tag("stage", "Minify").timer().count());
+
+            Exception error = assertThrows(Exception.class, () -> processor.process("{"));
+            metrics.error("minify", error);
+            assertEquals(1, registry.get("transformer.errors").tag("operation", "minify")
+                    .tag("cause", error.getClass().getSimpleName()).counter().count());
+            assertEquals(0, registry.get("transformer.admission.in.flight").gauge().value());
+        } finally {
+            metrics.close();
+        }
+    }
+    /**
+     * Testuje przetwarzanie i konwersję formatów binarnych.
+     * Sprawdza, czy filtr działa tak samo na dokumencie w formatach Smile, CBOR i MessagePack, a konwersja
+     * do formatu binarnego i z powrotem zachowuje dokument. Sprawdza też, czy dokument binarny jest filtrowany
+     * na tokenach parsera - procesor wewnętrzny, którego tryb drzewowy zgłasza wyjątek, nie jest używany.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testBinaryFormats() throws Exception {
+        String inputJson = "{\"name\":\"Zażółć\",\"age\":25,\"tags\":[1.5,true,null]}";
+        JsonProcessor processor = new FilterInclude(new BaseJsonProcessor(), new String[]{"name", "tags"});
+
+        for (DataFormat format : List.of(DataFormat.SMILE, DataFormat.CBOR, DataFormat.MSGPACK)) {
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            DataFormat.convert(DataFormat.JSON, new ByteArrayInputStream(inputJson.getBytes(StandardCharsets.UTF_8)),
+                    format, binary);
+
+            ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+            DataFormat.process(processor, format, new ByteArrayInputStream(binary.toByteArray()), format, filtered);
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            DataFormat.convert(format, new ByteArrayInputStream(filtered.toByteArray()), DataFormat.JSON, json);
+            assertEquals(processor.process(inputJson), json.toString(StandardCharsets.UTF_8), format.name());
+
+            ByteArrayOutputStream fromBinary = new ByteArrayOutputStream();
+            DataFormat.process(new Prettify(new BaseJsonProcessor()), format,
+                    new ByteArrayInputStream(binary.toByteArray()), DataFormat.JSON, fromBinary);
+            assertEquals(new Prettify(new BaseJsonProcessor()).process(inputJson),
+                    fromBinary.toString(StandardCharsets.UTF_8), format.name());
+
+            JsonProcessor streaming = new FilterExclude(new BaseJsonProcessor() {
+                @Override
+                public JsonNode process(JsonNode json) {
+                    throw new UnsupportedOperationException();
+                }
+            }, new String[]{"age"});
+            ByteArrayOutputStream excluded = new ByteArrayOutputStream();
+            DataFormat.process(streaming, format, new ByteArrayInputStream(binary.toByteArray()), DataFormat.JSON,
+                    excluded);
+            assertEquals("{\"name\":\"Zażółć\",\"tags\":[1.5,true,null]}", excluded.toString(StandardCharsets.UTF_8),
+                    format.name());
+        }
+        assertEquals(DataFormat.CBOR, DataFormat.of("Application/CBOR; charset=x").orElseThrow());
+        assertTrue(DataFormat.of("text/plain").isEmpty());
+    }
+    /**
+     * Testuje dekompresję żądań i kompresję odpowiedzi.
+     * Sprawdza, czy treść gzip jest rozpakowywana dla endpointu, odpowiedź powyżej progu jest kompresowana
+     * (ze słabym znacznikiem ETag), a krótka odpowiedź i nieobsługiwane kodowanie są obsługiwane bez kompresji.
+     * Sprawdza też, czy odpowiedź przerwana błędem nie jest domykana jak poprawna.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem żądania.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        CompressionFilter filter = new CompressionFilter(true, 64);
+        HttpServlet echo = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws java.io.IOException {
+                assertNull(request.getHeader("Content-Encoding"));
+                response.setHeader("ETag", "\"abc\"");
+                request.getInputStream().transferTo(response.getOutputStream());
+            }
+        };
+        String json = "[" + "{\"name\":\"Alice\",\"age\":25},".repeat(20) + "{}]";
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/json/minify/stream");
+        request.addHeader("Content-Encoding", "gzip");
+        request.addHeader("Accept-Encoding", "deflate;q=0.5, gzip, br");
+        request.setContent(compressed.toByteArray());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(echo));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("W/\"abc\"", response.getHeader("ETag"));
+        assertEquals(json, new String(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))
+                .readAllBytes(), StandardCharsets.UTF_8));
+
+        MockHttpServletRequest small = new MockHttpServletRequest("POST", "/json/minify/stream");
+        small.addHeader("Accept-Encoding", "zstd");
+        small.setContent("{}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse smallResponse = new MockHttpServletResponse();
+        filter.doFilter(small, smallResponse, new MockFilterChain(echo));
+        assertNull(smallResponse.getHeader("Content-Encoding"));
+        assertEquals("{}", smallResponse.getContentAsString());
+        assertEquals(2, smallResponse.getContentLength());
+
+        MockHttpServletRequest unsupported = new MockHttpServletRequest("POST", "/json/minify/stream");
+        unsupported.addHeader("Content-Encoding", "br");
+        MockHttpServletResponse unsupportedResponse = new MockHttpServletResponse();
+        filter.doFilter(unsupported, unsupportedResponse, new MockFilterChain(echo));
+        assertEquals(415, unsupportedResponse.getStatus());
+
+        for (String body : new String[]{json, "{}"}) {
+            HttpServlet failing = new HttpServlet() {
+                @Override
+                protected void service(HttpServletRequest request, HttpServletResponse response) throws java.io.IOException {
+                    response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+                    throw new java.io.IOException("Błąd przetwarzania");
+                }
+            };
+            MockHttpServletRequest failed = new MockHttpServletRequest("POST", "/json/minify/stream");
+            failed.addHeader("Accept-Encoding", "gzip");
+            MockHttpServletResponse failedResponse = new MockHttpServletResponse();
+            assertThrows(java.io.IOException.class, () -> filter.doFilter(failed, failedResponse, new MockFilterChain(failing)));
+            if (body.equals(json)) {
+                assertThrows(java.io.EOFException.class, () -> new GZIPInputStream(
+                        new ByteArrayInputStream(failedResponse.getContentAsByteArray())).readAllBytes());
+            } else {
+                assertEquals(0, failedResponse.getContentAsByteArray().length);
+                assertFalse(failedResponse.isCommitted());
+            }
+        }
+    }
+    /**
+     * Testuje wsadowe przetwarzanie plików z katalogu.
+     * Sprawdza, czy pliki JSON i NDJSON (także w podkatalogach) są przetwarzane potokiem operacji, a błędny plik
+     * jest zgłaszany w podsumowaniu bez pozostawiania niekompletnego wyniku.
+     *
+     * @param directory Katalog tymczasowy testu.
+     * @throws Exception w przypadku problemów z plikami.
+     */
+    @Test
+    public void testBatch(@TempDir Path directory) throws Exception {
+        Path input = Files.createDirectories(directory.resolve("in/nested"));
+        Files.writeString(directory.resolve("in/a.json"), "{ \"name\": \"Alice\", \"age\": 25 }");
+        Files.writeString(input.resolve("b.ndjson"), "{\"name\": \"Bob\", \"age\": 30}\n{\"age\": 1}\n");
+        Files.writeString(directory.resolve("in/broken.json"), "{\"name\": ");
+        Files.writeString(directory.resolve("in/notes.txt"), "pominięty");
+        Path output = directory.resolve("out");
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        int code = JsonTransformerBatch.run(new PrintStream(log, true, StandardCharsets.UTF_8),
+                "--threads", "2", directory.resolve("in").toString(), output.toString(), "include=name", "minify");
+
+        assertEquals(1, code);
+        assertEquals("{\"name\":\"Alice\"}", Files.readString(output.resolve("a.json")));
+        assertEquals("{\"name\":\"Bob\"}\n{}\n", Files.readString(output.resolve("nested/b.ndjson")));
+        assertFalse(Files.exists(output.resolve("broken.json")));
+        assertFalse(Files.exists(output.resolve("notes.txt")));
+        assertTrue(log.toString(StandardCharsets.UTF_8).contains("Przetworzono 3 plików (błędy: 1)"));
+        assertEquals(2, JsonTransformerBatch.run(new PrintStream(log, true, StandardCharsets.UTF_8), "a.json"));
+    }
+    /**
+     * Testuje porównywanie z zapisanym dokumentem wzorcowym.
+     * Sprawdza, czy różnice są takie same jak przy porównaniu dwóch przesłanych dokumentów, czy przesunięcie wzorca
+     * zwiększa jego wersję, czy wzorzec jest odtwarzany z dysku z wersji bazowej i zapisanych różnic oraz czy wzorzec
+     * trzymany tylko w pamięci nie jest przesuwany do dokumentu przekraczającego limit pamięci.
+     *
+     * @param directory Katalog tymczasowy testu.
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON lub plikami.
+     */
+    @Test
+    public void testReferenceStore(@TempDir Path directory) throws Exception {
+        JsonNode version1 = objectMapper.readTree("{\"name\":\"Alice\",\"tags\":[\"a\",\"b\"],\"address\":{\"city\":\"Poznań\"}}");
+        JsonNode version2 = objectMapper.readTree("{\"name\":\"Alice\",\"tags\":[\"a\",\"c\",\"b\"],\"address\":{\"city\":\"Kraków\"}}");
+        ReferenceStore store = new ReferenceStore(1 << 20, directory);
+        String id = store.add(version1).id();
+
+        ReferenceStore.Comparison comparison = store.compare(id, version2, false);
+        assertEquals(1, comparison.version());
+        assertEquals(JsonDiff.toPatch(JsonDiff.diff(version1, version2)), JsonDiff.toPatch(comparison.differences()));
+        assertEquals(new Compare(version2).report(version1), Compare.report(comparison.differences()));
+        assertEquals(version2, JsonDiff.apply(version1, JsonDiff.toPatch(comparison.differences())));
+
+        assertEquals(2, store.compare(id, version2, true).version());
+        ReferenceStore.Comparison unchanged = store.compare(id, version2, true);
+        assertEquals(2, unchanged.version());
+        assertEquals("Brak różnic.", Compare.report(unchanged.differences()));
+
+        ReferenceStore.Snapshot restored = new ReferenceStore(1 << 20, directory).get(id);
+        assertEquals(2, restored.version());
+        assertEquals(version2, restored.document());
+
+        assertThrows(IllegalArgumentException.class, () -> new ReferenceStore(16, null).add(version1));
+        ReferenceStore memory = new ReferenceStore(2048, null);
+        String memoryId = memory.add(version1).id();
+        JsonNode large = objectMapper.readTree("[0,1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19]");
+        assertEquals(1, memory.compare(memoryId, large, true).version());
+        assertEquals(version1, memory.get(memoryId).document());
+        assertEquals(1, memory.get(memoryId).version());
+        assertEquals(2, memory.compare(memoryId, version2, true).version());
+        assertTrue(store.remove(id));
+        assertThrows(NoSuchElementException.class, () -> store.get(id));
+        assertThrows(NoSuchElementException.class, () -> store.get("../" + id));
+    }
+    /**
+     * Testuje zwartą reprezentację dokumentu (taśmę tokenów) w pamięci i w pliku odwzorowanym w pamięci.
+     * Sprawdza, czy taśma odtwarza dokument (sekwencje ucieczki, znaki spoza ASCII, duże liczby), czy nazwy pól
+     * są zapisane raz, czy filtrowanie, upiększanie i strumieniowe porównanie na taśmie dają te same wyniki
+     * co na tekście oraz czy porównanie taśm ({@link Compare} na {@link JsonTapeDiff}) daje ten sam raport
+     * i JSON Patch co porównanie drzew (wyrównanie tablic, kolejność pól, liczby, kolizje skrótów).
+     *
+     * @param directory Katalog tymczasowy testu.
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON lub plikami.
+     */
+    @Test
+    public void testJsonTape(@TempDir Path directory) throws Exception {
+        String json1 = "{\"name\": \"Zażółć \\\"gęślą\\\" \\u0041\", \"age\": -25, \"big\": 123456789012345678901234567890,"
+                + " \"ratio\": 1.5e3, \"items\": [{\"id\": 1, \"price\": 9.99}, {\"id\": 2, \"price\": null}, [], {}],"
+                + " \"active\": true}";
+        String json2 = "{\"name\": \"Bob\", \"age\": -25, \"big\": 123456789012345678901234567890,"
+                + " \"ratio\": 1500.0, \"items\": [{\"id\": 1, \"price\": 9.99}], \"active\": false}";
+        Path file = directory.resolve("doc.json");
+        Files.writeString(file, json1);
+        JsonTape tape = JsonTape.map(file);
+        JsonTape tape2 = JsonTape.of(json2.getBytes(StandardCharsets.UTF_8));
+        assertEquals(8, tape.names());
+
+        JsonProcessor[] processors = {
+                new Minify(new BaseJsonProcessor()),
+                new Prettify(new BaseJsonProcessor()),
+                new FilterInclude(new BaseJsonProcessor(), new String[]{"name", "items[*].id"}),
+                new FilterExclude(new BaseJsonProcessor(), new String[]{"items", "big"})
+        };
+        for (JsonProcessor processor : processors) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            processor.process(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)), expected);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (com.fasterxml.jackson.core.JsonGenerator generator = objectMapper.getFactory().createGenerator(actual)) {
+                processor.process(tape.parser(), generator);
+            }
+            assertEquals(expected.toString(StandardCharsets.UTF_8), actual.toString(StandardCharsets.UTF_8));
+        }
+        assertEquals(objectMapper.readTree(json1), objectMapper.readTree(tape.parser()));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new StreamingCompare().compare(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(json2.getBytes(StandardCharsets.UTF_8)), expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingCompare().compare(tape.parser(), tape2.parser(), actual);
+        assertEquals(expected.toString(StandardCharsets.UTF_8), actual.toString(StandardCharsets.UTF_8));
+        assertEquals(5, objectMapper.readTree(actual.toByteArray()).size());
+
+        ByteArrayOutputStream excluded = new ByteArrayOutputStream();
+        tape.process(processors[3], excluded);
+        assertEquals(processors[3].process(json1), excluded.toString(StandardCharsets.UTF_8));
+
+        String[][] pairs = {
+                {json1, json2},
+                {json2, json1},
+                {"{\"b\": 1, \"a\": [1, 2, {\"x\": 2.0}]}", "{\"a\": [1, 2.0e0, {\"x\": 2.00}], \"b\": 1}"},
+                {"{\"items\": [1, 2, 3, 4, 5], \"c\": {\"d\": [\"p\", \"q\"]}}",
+                        "{\"items\": [0, 1, 2, 9, 4, 5, 6], \"c\": {\"d\": [\"q\"], \"e\": null}}"},
+                {"{\"a\": \"BB\", \"list\": [[\"BB\"], {\"Aa\": 1}]}", "{\"a\": \"Aa\", \"list\": [[\"Aa\"], {\"BB\": 1}]}"},
+                {"[1, \"a\\nb\", true, null]", "{\"a\": 1}"},
+                {"{\"same\": [1, {\"x\": [true]}]}", "{\"same\": [1, {\"x\": [true]}]}"}
+        };
+        for (String[] pair : pairs) {
+            JsonNode tree1 = objectMapper.readTree(pair[0]);
+            JsonNode tree2 = objectMapper.readTree(pair[1]);
+            JsonTape first = JsonTape.of(pair[0].getBytes(StandardCharsets.UTF_8));
+            JsonTape second = JsonTape.of(pair[1].getBytes(StandardCharsets.UTF_8));
+            assertEquals(new Compare(tree2).report(tree1), Compare.report(first, second), pair[0]);
+            ByteArrayOutputStream patch = new ByteArrayOutputStream();
+            Compare.patch(first, second, patch);
+            assertEquals(objectMapper.writeValueAsString(new Compare(tree2).patch(tree1)),
+                    patch.toString(StandardCharsets.UTF_8), pair[0]);
+            assertEquals(tree2, JsonDiff.apply(tree1, objectMapper.readTree(patch.toByteArray())), pair[0]);
+        }
+        assertThrows(java.io.IOException.class, () -> Compare.report(JsonTape.of(new byte[0]), tape2));
+    }
+    /**
+     * Testuje wspólną tablicę symboli nazw pól.
+     * Sprawdza, czy równe nazwy z różnych źródeł (parser JSON, parser MessagePack, tekst) są tym samym obiektem
+     * i czy po przepełnieniu tablicy nazwy są nadal poprawnie kanonizowane.
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testFieldNames() throws Exception {
+        String name = FieldNames.canonical(new String("customerIdentifier"));
+        assertSame(name, FieldNames.canonical(new String("customerIdentifier")));
+        assertSame(name, objectMapper.readTree("{\"customerIdentifier\": 1}").fieldNames().next());
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        DataFormat.convert(DataFormat.JSON, new ByteArrayInputStream("{\"customerIdentifier\": 1}".getBytes(StandardCharsets.UTF_8)),
+                DataFormat.MSGPACK, binary);
+        try (com.fasterxml.jackson.core.JsonParser parser = DataFormat.MSGPACK.createParser(new ByteArrayInputStream(binary.toByteArray()))) {
+            parser.nextToken();
+            assertSame(name, parser.nextFieldName());
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            assertEquals("field" + i, FieldNames.canonical("field" + i));
+        }
+        assertSame(FieldNames.canonical(new String("field1")), FieldNames.canonical(new String("field1")));
+        assertNull(FieldNames.canonical(null));
+    }
+    /**
+     * Testuje porównanie dokumentów, których poddrzewa mają kolidujące 32-bitowe skróty.
+     * Sprawdza, czy równość skrótów nie jest traktowana jako równość poddrzew (w raporcie, w JSON Patch
+     * i przy wyrównywaniu tablic).
+     *
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testHashCollisions() throws Exception {
+        String[][] pairs = {{"{\"a\": \"BB\"}", "{\"a\": \"Aa\"}"}, {"{\"BB\": 1}", "{\"Aa\": 1}"},
+                {"4294967297", "0"}, {"[\"BB\"]", "[\"Aa\"]"}, {"[1, [\"BB\"], 2]", "[1, [\"Aa\"], 2]"}};
+        for (String[] pair : pairs) {
+            JsonNode json1 = objectMapper.readTree(pair[0]);
+            JsonNode json2 = objectMapper.readTree(pair[1]);
+            Compare compare = new Compare(json2);
+            assertNotEquals("Brak różnic.", compare.report(json1));
+            JsonNode patch = compare.patch(json1);
+            assertTrue(patch.size() > 0);
+            assertEquals(json2, JsonDiff.apply(json1, patch));
+        }
+        JsonNode json1 = objectMapper.readTree("[\"Aa\", \"x\", \"BB\"]");
+        JsonNode json2 = objectMapper.readTree("[\"BB\", \"y\", \"Aa\", \"BB\"]");
+        assertEquals(json2, JsonDiff.apply(json1, new Compare(json2).patch(json1)));
+        assertEquals("Brak różnic.", new Compare(objectMapper.readTree("{\"a\": [\"BB\", {\"Aa\": 1}]}"))
+                .report(objectMapper.readTree("{\"a\": [\"BB\", {\"Aa\": 1}]}")));
+    }
+    /**
+     * Testuje zadania asynchroniczne z wynikami zapisywanymi na dysk.
+     * Sprawdza, czy wynik zadania i postęp są poprawne dla treści żądania i pliku lokalnego (także czytanych jako
+     * taśmy), czy błędny dokument kończy zadanie błędem, czy ścieżki spoza katalogu plików lokalnych i nadmiarowe
+     * zadania są odrzucane
+     * oraz czy zakończone zadania są usuwane po upływie czasu życia.
+     *
+     * @param directory Katalog tymczasowy na pliki zadań i pliki lokalne.
+     * @throws Exception w przypadku problemów z przetwarzaniem JSON.
+     */
+    @Test
+    public void testJsonJobs(@TempDir Path directory) throws Exception {
+        String json1 = "{\"a\": [1, 2], \"b\": \"x\"}";
+        String json2 = "{\"a\": [1, 3], \"c\": true}";
+        Path input = Files.createDirectory(directory.resolve("input"));
+        Files.writeString(input.resolve("json2.json"), json2);
+        Files.writeString(directory.resolve("outside.json"), json2);
+        List<String> failures = new ArrayList<>();
+        JsonJobs.Task minify = (inputs, output) -> new Minify(new BaseJsonProcessor()).process(inputs.get(0).stream(), output);
+
+        try (JsonJobs jobs = new JsonJobs(directory.resolve("jobs"), input, 1, 2, 60_000,
+                (operation, e) -> failures.add(operation))) {
+            JsonJobs.Status status = awaitJob(jobs, jobs.submit("minify",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)))),
+                    minify, "Nieprawidłowy format JSON"));
+            assertEquals(JsonJobs.State.DONE, status.state());
+            assertEquals(json1.length(), status.bytesTotal());
+            assertEquals(json1.length(), status.bytesProcessed());
+            try (java.io.InputStream result = jobs.result(status.id())) {
+                assertEquals("{\"a\":[1,2],\"b\":\"x\"}", new String(result.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            JsonJobs.Status compared = awaitJob(jobs, jobs.submit("compare",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8))),
+                            JsonJobs.Source.file("json2.json")),
+                    (inputs, output) -> new StreamingCompare().compare(inputs.get(0).stream(), inputs.get(1).stream(), output),
+                    "Błąd"));
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new StreamingCompare().compare(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayInputStream(json2.getBytes(StandardCharsets.UTF_8)), expected);
+            try (java.io.InputStream result = jobs.result(compared.id())) {
+                assertArrayEquals(expected.toByteArray(), result.readAllBytes());
+            }
+
+            JsonJobs.Status tapeCompared = awaitJob(jobs, jobs.submit("compare",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8))),
+                            JsonJobs.Source.file("json2.json")),
+                    (inputs, output) -> Compare.patch(inputs.get(0).tape(), inputs.get(1).tape(), output), "Błąd"));
+            assertEquals(JsonJobs.State.DONE, tapeCompared.state());
+            try (java.io.InputStream result = jobs.result(tapeCompared.id())) {
+                assertEquals(objectMapper.writeValueAsString(new Compare(objectMapper.readTree(json2))
+                        .patch(objectMapper.readTree(json1))), new String(result.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            JsonJobs.Status tapeFiltered = awaitJob(jobs, jobs.submit("filter/exclude",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)))),
+                    (inputs, output) -> inputs.get(0).tape().process(new FilterExclude(new BaseJsonProcessor(),
+                            new String[]{"b"}), output), "Błąd"));
+            assertEquals(json1.length(), tapeFiltered.bytesProcessed());
+            try (java.io.InputStream result = jobs.result(tapeFiltered.id())) {
+                assertEquals("{\"a\":[1,2]}", new String(result.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            JsonJobs.Status failed = awaitJob(jobs, jobs.submit("minify",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream("{\"a\": ".getBytes(StandardCharsets.UTF_8)))),
+                    minify, "Nieprawidłowy format JSON"));
+            assertEquals(JsonJobs.State.FAILED, failed.state());
+            assertEquals("Nieprawidłowy format JSON", failed.error());
+            assertEquals(List.of("minify"), failures);
+            assertThrows(IllegalStateException.class, () -> jobs.result(failed.id()));
+            assertThrows(IllegalArgumentException.class, () -> jobs.submit("minify",
+                    List.of(JsonJobs.Source.file("../outside.json")), minify, "Błąd"));
+            assertThrows(java.io.IOException.class, () -> jobs.submit("minify",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(new byte[0]))), minify, "Błąd"));
+
+            java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+            JsonJobs.Task blocked = (inputs, output) -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new java.io.InterruptedIOException();
+                }
+            };
+            String running = jobs.submit("wait", List.of(), blocked, "Błąd").id();
+            String queued = jobs.submit("wait", List.of(), blocked, "Błąd").id();
+            assertThrows(java.util.concurrent.RejectedExecutionException.class,
+                    () -> jobs.submit("wait", List.of(), blocked, "Błąd"));
+            assertTrue(jobs.remove(queued));
+            assertThrows(NoSuchElementException.class, () -> jobs.status(queued));
+            release.countDown();
+            assertEquals(JsonJobs.State.DONE, awaitJob(jobs, jobs.status(running)).state());
+            assertEquals(0, jobs.stats().pending());
+        }
+
+        try (JsonJobs jobs = new JsonJobs(null, null, 1, 1, 1, (operation, e) -> { })) {
+            JsonJobs.Status status = awaitJob(jobs, jobs.submit("minify",
+                    List.of(JsonJobs.Source.body(new ByteArrayInputStream(json1.getBytes(StandardCharsets.UTF_8)))),
+                    minify, "Błąd"));
+            assertThrows(IllegalArgumentException.class, () -> jobs.submit("minify",
+                    List.of(JsonJobs.Source.file("json2.json")), minify, "Błąd"));
+            Thread.sleep(5);
+            jobs.expire();
+            assertThrows(NoSuchElementException.class, () -> jobs.status(status.id()));
+        }
+    }
+
+    /**
+     * Czeka na zakończenie zadania.
+     *
+     * @param jobs Zadania asynchroniczne.
+     * @param status Stan zadania po przyjęciu.
+     * @return Stan zakończonego zadania.
+     * @throws InterruptedException jeśli oczekiwanie zostało przerwane.
+     */
+    private static JsonJobs.Status awaitJob(JsonJobs jobs, JsonJobs.Status status) throws InterruptedException {
+        for (int i = 0; i < 500 && (status.state() == JsonJobs.State.QUEUED || status.state() == JsonJobs.State.RUNNING); i++) {
+            Thread.sleep(10);
+            status = jobs.status(status.id());
+        }
+        return status;
+    }
+}